@@ -0,0 +1,95 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.cli;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wildfly.plugins.bootablejar.maven.common.BenchmarkSupport;
+
+/**
+ * Dispatch commands that don't require a connected server to the CLI. The
+ * provisioned server is provided with the {@code benchmark.jboss.home} system
+ * property, the CLI artifacts with the {@code benchmark.cli.classpath} system
+ * property (path separator separated list). jboss-modules.jar of the server is
+ * added to the class path.
+ *
+ * @author jdenise
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CLIWrapperBenchmark {
+
+    @Param({"echo-dmr /subsystem=logging/console-handler=CONSOLE:write-attribute(name=level,value=DEBUG)",
+        "echo-dmr /system-property=foo:add(value=bar)"})
+    public String command;
+
+    private URLClassLoader loader;
+    private CLIWrapper wrapper;
+
+    @Setup
+    public void setup() throws Exception {
+        Path jbossHome = BenchmarkSupport.getRequiredPath("benchmark.jboss.home");
+        List<Path> paths = BenchmarkSupport.getRequiredPaths("benchmark.cli.classpath");
+        paths.add(jbossHome.resolve("jboss-modules.jar"));
+        URL[] urls = new URL[paths.size()];
+        for (int i = 0; i < urls.length; i++) {
+            urls[i] = paths.get(i).toUri().toURL();
+        }
+        loader = new URLClassLoader(urls, CLIWrapperBenchmark.class.getClassLoader());
+    }
+
+    // The CLI output is buffered in memory, use a new wrapper for each iteration.
+    @Setup(Level.Iteration)
+    public void setupWrapper() throws Exception {
+        wrapper = new CLIWrapper(BenchmarkSupport.getRequiredPath("benchmark.jboss.home"), true, loader);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDownWrapper() throws Exception {
+        wrapper.close();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        loader.close();
+    }
+
+    @Benchmark
+    public void handle() throws Exception {
+        wrapper.handle(command);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.cli;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wildfly.plugins.bootablejar.maven.common.BenchmarkSupport;
+import org.wildfly.plugins.bootablejar.maven.common.Utils;
+
+/**
+ * Latency of forking a JVM with ForkedCLIUtil, the forked entry point does
+ * nothing.
+ *
+ * @author jdenise
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ForkedCLIUtilBenchmark {
+
+    /**
+     * Forked entry point.
+     */
+    public static class NoopMain {
+
+        public static void main(String[] args) {
+        }
+    }
+
+    private final Log log = new SystemStreamLog();
+    private Path dir;
+    private String[] classPath;
+
+    @Setup
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("bench-fork");
+        classPath = BenchmarkSupport.getClassPath();
+    }
+
+    @TearDown
+    public void tearDown() {
+        Utils.deleteDir(dir);
+    }
+
+    @Benchmark
+    public void fork() throws Exception {
+        ForkedCLIUtil.fork(log, classPath, NoopMain.class, dir, dir.resolve("output"));
+    }
+}
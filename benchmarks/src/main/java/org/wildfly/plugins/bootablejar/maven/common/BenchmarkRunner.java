@@ -0,0 +1,84 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.wildfly.plugins.bootablejar.maven.cli.CLIWrapperBenchmark;
+
+/**
+ * Run the benchmarks, accepts the JMH command line options. Benchmarks that
+ * read their inputs from system properties are skipped when these properties
+ * are not set, the properties are propagated to the forked JVMs otherwise.
+ *
+ * @author jdenise
+ */
+public class BenchmarkRunner {
+
+    private static final Map<String, List<String>> REQUIRED_PROPERTIES = new LinkedHashMap<>();
+
+    static {
+        REQUIRED_PROPERTIES.put(CLIWrapperBenchmark.class.getName(),
+                Arrays.asList("benchmark.jboss.home", "benchmark.cli.classpath"));
+        REQUIRED_PROPERTIES.put(GalleonConfigBuilderBenchmark.class.getName(),
+                Arrays.asList("benchmark.feature-packs", "maven.repo.local"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmdOptions = new CommandLineOptions(args);
+        if (cmdOptions.shouldHelp()) {
+            cmdOptions.showHelp();
+            return;
+        }
+        ChainedOptionsBuilder builder = new OptionsBuilder().parent(cmdOptions);
+        List<String> jvmArgs = new ArrayList<>(cmdOptions.getJvmArgsAppend().orElse(Collections.<String>emptyList()));
+        for (Map.Entry<String, List<String>> entry : REQUIRED_PROPERTIES.entrySet()) {
+            List<String> missing = new ArrayList<>();
+            for (String property : entry.getValue()) {
+                String value = System.getProperty(property);
+                if (value == null || value.isEmpty()) {
+                    missing.add(property);
+                } else {
+                    String arg = "-D" + property + "=" + value;
+                    if (!jvmArgs.contains(arg)) {
+                        jvmArgs.add(arg);
+                    }
+                }
+            }
+            if (!missing.isEmpty()) {
+                System.out.println("Skipping " + entry.getKey() + ", system properties " + missing + " are not set");
+                builder.exclude(Pattern.quote(entry.getKey()));
+            }
+        }
+        builder.jvmArgsAppend(jvmArgs.toArray(new String[0]));
+        Runner runner = new Runner(builder.build());
+        if (cmdOptions.shouldList()) {
+            runner.list();
+        } else {
+            runner.run();
+        }
+    }
+}
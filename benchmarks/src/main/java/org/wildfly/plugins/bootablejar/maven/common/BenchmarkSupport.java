@@ -0,0 +1,176 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.common;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Synthetic inputs shared by benchmarks.
+ *
+ * @author jdenise
+ */
+public class BenchmarkSupport {
+
+    /**
+     * Generate a string of JVM arguments, mixing plain, quoted and spaced
+     * values.
+     */
+    public static String generateArguments(int numArguments) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < numArguments; i++) {
+            if (i > 0) {
+                builder.append(i % 7 == 0 ? "\n" : " ");
+            }
+            switch (i % 4) {
+                case 0:
+                    builder.append("-Dbenchmark.prop").append(i).append("=value").append(i);
+                    break;
+                case 1:
+                    builder.append("-Dbenchmark.path").append(i).append("=\"C:\\Users\\bench user\\tmp").append(i).append('"');
+                    break;
+                case 2:
+                    builder.append("-Xmx").append(i).append('m');
+                    break;
+                default:
+                    builder.append("--agentlib:jdwp=transport=dt_socket,server=y,suspend=n,address=*:").append(5000 + i);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Write a feature-pack like artifact-versions.properties file.
+     */
+    public static Path generateArtifactVersions(Path dir, int numEntries) throws IOException {
+        Path file = dir.resolve("artifact-versions.properties");
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("#Generated for benchmarks");
+            writer.newLine();
+            for (int i = 0; i < numEntries; i++) {
+                String groupId = "org.benchmark.group" + (i % 50);
+                String artifactId = "artifact-" + i;
+                writer.write(groupId + ":" + artifactId + "=" + groupId + ":" + artifactId + ":1.0." + i + "::jar");
+                writer.newLine();
+            }
+        }
+        return file;
+    }
+
+    /**
+     * The class path of the benchmark JVM, used when forking.
+     */
+    public static String[] getClassPath() {
+        List<String> entries = new ArrayList<>();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            if (!entry.isEmpty()) {
+                entries.add(entry);
+            }
+        }
+        return entries.toArray(new String[0]);
+    }
+
+    /**
+     * Get a required path from a system property.
+     */
+    public static Path getRequiredPath(String property) {
+        String value = System.getProperty(property);
+        if (value == null) {
+            throw new IllegalStateException("System property " + property + " must be set to run this benchmark");
+        }
+        Path path = Paths.get(value);
+        if (Files.notExists(path)) {
+            throw new IllegalStateException(path + " doesn't exist");
+        }
+        return path;
+    }
+
+    /**
+     * Get a required list of paths, separated by the path separator, from a
+     * system property.
+     */
+    public static List<Path> getRequiredPaths(String property) {
+        String value = System.getProperty(property);
+        if (value == null) {
+            throw new IllegalStateException("System property " + property + " must be set to run this benchmark");
+        }
+        List<Path> paths = new ArrayList<>();
+        for (String entry : value.split(File.pathSeparator)) {
+            Path path = Paths.get(entry);
+            if (Files.notExists(path)) {
+                throw new IllegalStateException(path + " doesn't exist");
+            }
+            paths.add(path);
+        }
+        return paths;
+    }
+
+    /**
+     * A plugin context for a project located in the provided directory.
+     */
+    public static PluginContext newPluginContext(Path projectDir, Path jbossHome) {
+        MavenProject project = new MavenProject();
+        project.setFile(projectDir.resolve("pom.xml").toFile());
+        Log log = new SystemStreamLog();
+        return new PluginContext() {
+            @Override
+            public MavenProject getProject() {
+                return project;
+            }
+
+            @Override
+            public Path getJBossHome() {
+                return jbossHome;
+            }
+
+            @Override
+            public boolean isContextRoot() {
+                return false;
+            }
+
+            @Override
+            public boolean isHollow() {
+                return true;
+            }
+
+            @Override
+            public Log getLog() {
+                return log;
+            }
+
+            @Override
+            public boolean isDisplayCliScriptsOutputEnabled() {
+                return false;
+            }
+
+            @Override
+            public List<String> getExtraServerContentDirs() {
+                return new ArrayList<>();
+            }
+        };
+    }
+}
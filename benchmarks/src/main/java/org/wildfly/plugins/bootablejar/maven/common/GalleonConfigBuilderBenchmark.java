@@ -0,0 +1,96 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.common;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.jboss.galleon.ProvisioningManager;
+import org.jboss.galleon.config.ProvisioningConfig;
+import org.jboss.galleon.universe.maven.repo.SimplisticMavenRepoManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Build the Galleon configuration of a layers based server from local
+ * feature-packs. The feature-pack zip files are provided with the
+ * {@code benchmark.feature-packs} system property (path separator separated
+ * list), their dependencies are resolved from the {@code maven.repo.local}
+ * repository.
+ *
+ * @author jdenise
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class GalleonConfigBuilderBenchmark {
+
+    @Param({"jaxrs-server"})
+    public String layers;
+
+    private Path dir;
+    private ProvisioningManager pm;
+    private GalleonConfigBuilder builder;
+
+    @Setup
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("bench-galleon");
+        Path localRepo = BenchmarkSupport.getRequiredPath("maven.repo.local");
+        List<FeaturePack> featurePacks = new ArrayList<>();
+        for (Path path : BenchmarkSupport.getRequiredPaths("benchmark.feature-packs")) {
+            FeaturePack fp = new FeaturePack();
+            fp.setPath(path.toFile());
+            featurePacks.add(fp);
+        }
+        PluginContext ctx = BenchmarkSupport.newPluginContext(dir, dir.resolve("server"));
+        pm = ProvisioningManager.builder().
+                addArtifactResolver(SimplisticMavenRepoManager.getInstance(localRepo)).
+                setInstallationHome(dir.resolve("server")).build();
+        builder = new GalleonConfigBuilder(ctx, null, featurePacks, null, dir.resolve("provisioning.xml").toFile(),
+                Arrays.asList(layers.split(",")), Collections.emptySet(), Collections.emptyList(), false,
+                new HashMap<>(), true, false);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pm.close();
+        Utils.deleteDir(dir);
+    }
+
+    @Benchmark
+    public ProvisioningConfig buildGalleonConfig() throws Exception {
+        return builder.buildGalleonConfig(pm).buildConfig();
+    }
+}
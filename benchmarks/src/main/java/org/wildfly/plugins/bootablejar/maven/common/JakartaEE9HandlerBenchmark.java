@@ -0,0 +1,101 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.common;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.jboss.galleon.universe.maven.MavenArtifact;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import static org.wildfly.plugins.bootablejar.maven.common.Constants.JBOSS_MAVEN_DIST;
+import static org.wildfly.plugins.bootablejar.maven.common.Constants.JBOSS_PROVISIONING_MAVEN_REPO;
+
+/**
+ * Resolve artifacts of a thin EE-9 server from a synthetic local provisioning
+ * repository.
+ *
+ * @author jdenise
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JakartaEE9HandlerBenchmark {
+
+    private static final String SUFFIX = "-ee9";
+
+    @Param({"100"})
+    public int numArtifacts;
+
+    private Path dir;
+    private JakartaEE9Handler handler;
+    private int next;
+
+    @Setup
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("bench-ee9");
+        Path repo = Files.createDirectories(dir.resolve("repo"));
+        for (int i = 0; i < numArtifacts; i++) {
+            Path versionDir = Files.createDirectories(repo.resolve("org").resolve("benchmark").
+                    resolve("artifact-" + i).resolve("1.0" + SUFFIX));
+            Files.createFile(versionDir.resolve("artifact-" + i + "-1.0" + SUFFIX + ".jar"));
+        }
+        Path tasks = dir.resolve("wildfly-tasks.properties");
+        Files.write(tasks, ("jakarta.transform.artifacts.suffix=" + SUFFIX).getBytes(StandardCharsets.UTF_8));
+        Map<String, String> options = new HashMap<>();
+        options.put(JBOSS_MAVEN_DIST, "true");
+        options.put(JBOSS_PROVISIONING_MAVEN_REPO, repo.toString());
+        // No artifact is missing from the provisioning repository, no fallback resolver required.
+        handler = new JakartaEE9Handler(options, null);
+        handler.setup();
+        handler.lookupFeaturePack(tasks, dir.resolve("wildfly-jakarta-transform-excludes.txt"));
+    }
+
+    @TearDown
+    public void tearDown() {
+        handler.done();
+        Utils.deleteDir(dir);
+    }
+
+    @Benchmark
+    public Path resolve() throws Exception {
+        MavenArtifact artifact = new MavenArtifact();
+        artifact.setGroupId("org.benchmark");
+        artifact.setArtifactId("artifact-" + next);
+        artifact.setVersion("1.0");
+        artifact.setExtension("jar");
+        next = (next + 1) % numArtifacts;
+        handler.resolve(artifact);
+        return artifact.getPath();
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.common;
+
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parse a feature-pack like artifact-versions.properties file.
+ *
+ * @author jdenise
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadPropertiesBenchmark {
+
+    @Param({"100", "5000"})
+    public int numEntries;
+
+    private Path dir;
+    private Path propertiesFile;
+    private String lastKey;
+    private Path indexFile;
+    private ArtifactVersionsIndex index;
+
+    @Setup
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("bench-properties");
+        propertiesFile = BenchmarkSupport.generateArtifactVersions(dir, numEntries);
+        int last = numEntries - 1;
+        lastKey = "org.benchmark.group" + (last % 50) + ":artifact-" + last;
+        indexFile = dir.resolve("artifact-versions.idx");
+        index = ArtifactVersionsIndex.load(propertiesFile, indexFile);
+    }
+
+    @TearDown
+    public void tearDown() {
+        Utils.deleteDir(dir);
+    }
+
+    @Benchmark
+    public Map<String, String> readProperties() throws Exception {
+        Map<String, String> map = new HashMap<>();
+        Utils.readProperties(propertiesFile, map);
+        return map;
+    }
+
+    @Benchmark
+    public String lookup() throws Exception {
+        return PropertiesParser.lookup(propertiesFile, StandardCharsets.UTF_8,
+                PropertiesParser.Syntax.KEY_VALUE_LINES, lastKey);
+    }
+
+    @Benchmark
+    public String indexLookup() {
+        return index.lookup(lastKey);
+    }
+
+    @Benchmark
+    public Object indexGetArtifact() {
+        return index.getArtifact(lastKey);
+    }
+
+    @Benchmark
+    public Object getArtifact() throws Exception {
+        Map<String, String> map = new HashMap<>();
+        Utils.readProperties(propertiesFile, map);
+        return Utils.getArtifact(map.get(lastKey));
+    }
+
+    @Benchmark
+    public ArtifactVersionsIndex buildIndex() throws Exception {
+        return ArtifactVersionsIndex.build(propertiesFile);
+    }
+
+    @Benchmark
+    public Properties javaUtilProperties() throws Exception {
+        Properties props = new Properties();
+        try (Reader reader = Files.newBufferedReader(propertiesFile, StandardCharsets.UTF_8)) {
+            props.load(reader);
+        }
+        return props;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Split generated JVM arguments strings, compared with the regular expression
+ * based implementation previously used by Utils.
+ *
+ * @author jdenise
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SplitArgumentsBenchmark {
+
+    private static final Pattern WHITESPACE_IF_NOT_QUOTED = Pattern.compile("(\\S+\"[^\"]+\")|\\S+");
+
+    @Param({"10", "1000"})
+    public int numArguments;
+
+    private String arguments;
+    private final List<String> reused = new ArrayList<>();
+
+    @Setup
+    public void setup() {
+        arguments = BenchmarkSupport.generateArguments(numArguments);
+    }
+
+    @Benchmark
+    public List<String> splitArguments() {
+        return Utils.splitArguments(arguments);
+    }
+
+    @Benchmark
+    public List<String> splitArgumentsReusedList() {
+        reused.clear();
+        Utils.splitArguments(arguments, reused);
+        return reused;
+    }
+
+    @Benchmark
+    public List<String> regexSplitArguments() {
+        final List<String> args = new ArrayList<>();
+        final Matcher m = WHITESPACE_IF_NOT_QUOTED.matcher(arguments);
+        while (m.find()) {
+            final String value = m.group();
+            if (!value.isEmpty()) {
+                args.add(value);
+            }
+        }
+        return args;
+    }
+}
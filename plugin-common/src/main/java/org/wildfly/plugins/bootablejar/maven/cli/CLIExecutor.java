@@ -29,4 +29,11 @@ public interface CLIExecutor extends AutoCloseable {
     String getOutput() throws Exception;
 
     void execute(List<String> commands) throws Exception;
+
+    /**
+     * @return The execution time of the executed commands.
+     */
+    default CommandTimings getTimings() {
+        return new CommandTimings();
+    }
 }
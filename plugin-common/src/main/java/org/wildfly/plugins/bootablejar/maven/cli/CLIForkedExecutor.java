@@ -36,6 +36,8 @@ public class CLIForkedExecutor {
         Path systemProperties = Paths.get(args[2]);
         Path script = Paths.get(args[3]);
         Boolean resolveExpression = Boolean.parseBoolean(args[4]);
+        Path timingsFile = args.length > 5 ? Paths.get(args[5]) : null;
+        CommandTimings timings = new CommandTimings();
         Properties properties = new Properties();
         try (FileInputStream in = new FileInputStream(systemProperties.toFile())) {
             properties.load(in);
@@ -46,10 +48,18 @@ public class CLIForkedExecutor {
         try (CLIWrapper executor = new CLIWrapper(jbossHome, resolveExpression, CLIForkedExecutor.class.getClassLoader())) {
             try {
                 for (String command : Files.readAllLines(script)) {
-                    executor.handle(command);
+                    long start = System.nanoTime();
+                    try {
+                        executor.handle(command);
+                    } finally {
+                        timings.record(command, System.nanoTime() - start);
+                    }
                 }
             } finally {
                 Files.write(cliOutput, executor.getOutput().getBytes(StandardCharsets.UTF_8));
+                if (timingsFile != null) {
+                    timings.write(timingsFile);
+                }
             }
         }
     }
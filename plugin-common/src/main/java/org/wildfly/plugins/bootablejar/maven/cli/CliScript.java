@@ -0,0 +1,216 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.cli;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A parsed CLI script file. Comments and blank lines are removed, lines ending
+ * with a {@code \} are joined with the next line and each command is trimmed.
+ * The script is checked for unbalanced {@code batch} blocks and unterminated
+ * {@code ${...}} expressions. Parsed scripts are immutable and cached by path,
+ * a script is parsed again if its size or last modified time changed.
+ *
+ * @author jdenise
+ */
+public final class CliScript {
+
+    private static final Map<Path, CliScript> CACHE = new ConcurrentHashMap<>();
+
+    private final Path file;
+    private final long size;
+    private final long lastModified;
+    private final List<String> commands;
+    private final Set<String> expressions;
+
+    private CliScript(Path file, long size, long lastModified, List<String> commands, Set<String> expressions) {
+        this.file = file;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.commands = Collections.unmodifiableList(commands);
+        this.expressions = Collections.unmodifiableSet(expressions);
+    }
+
+    /**
+     * Get the parsed script, parsing it if not cached or modified.
+     *
+     * @param file The script file.
+     * @return The parsed script.
+     * @throws Exception If the file can't be read or contains a syntax error.
+     */
+    public static CliScript load(Path file) throws Exception {
+        Path key = file.toAbsolutePath().normalize();
+        if (Files.notExists(key)) {
+            throw new RuntimeException("Cli script file " + key + " doesn't exist");
+        }
+        long size = Files.size(key);
+        long lastModified = Files.getLastModifiedTime(key).toMillis();
+        CliScript script = CACHE.get(key);
+        if (script == null || script.size != size || script.lastModified != lastModified) {
+            script = parse(key, size, lastModified);
+            CACHE.put(key, script);
+        }
+        return script;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return The commands, in script order.
+     */
+    public List<String> getCommands() {
+        return commands;
+    }
+
+    /**
+     * @return The names of the {@code ${...}} expressions referenced by the
+     * commands that need a value. Expressions with a default value and
+     * expressions in operation parameter values, that the server can resolve,
+     * are not included.
+     */
+    public Set<String> getExpressions() {
+        return expressions;
+    }
+
+    private static CliScript parse(Path file, long size, long lastModified) throws Exception {
+        List<String> commands = new ArrayList<>();
+        Set<String> expressions = new LinkedHashSet<>();
+        int batchLine = -1;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            StringBuilder command = null;
+            int commandLine = 0;
+            int lineNumber = 0;
+            String line = reader.readLine();
+            while (line != null) {
+                lineNumber += 1;
+                String trimmed = line.trim();
+                if (command == null) {
+                    if (trimmed.isEmpty() || trimmed.charAt(0) == '#') {
+                        line = reader.readLine();
+                        continue;
+                    }
+                    command = new StringBuilder();
+                    commandLine = lineNumber;
+                }
+                if (trimmed.endsWith("\\")) {
+                    // Continued on the next line, the whitespace before the backslash is kept.
+                    command.append(ltrim(line.substring(0, line.lastIndexOf('\\'))));
+                    line = reader.readLine();
+                    continue;
+                }
+                command.append(trimmed);
+                String cmd = command.toString().trim();
+                command = null;
+                batchLine = checkCommand(file, commandLine, cmd, batchLine, expressions);
+                commands.add(cmd);
+                line = reader.readLine();
+            }
+            if (command != null) {
+                String cmd = command.toString().trim();
+                if (!cmd.isEmpty()) {
+                    batchLine = checkCommand(file, commandLine, cmd, batchLine, expressions);
+                    commands.add(cmd);
+                }
+            }
+        } catch (IOException ex) {
+            throw new Exception("Error reading CLI script " + file + ": " + ex.getLocalizedMessage(), ex);
+        }
+        if (batchLine >= 0) {
+            throw syntaxError(file, batchLine, "batch is not terminated by run-batch or discard-batch");
+        }
+        return new CliScript(file, size, lastModified, commands, expressions);
+    }
+
+    private static String ltrim(String s) {
+        int i = 0;
+        while (i < s.length() && Character.isWhitespace(s.charAt(i))) {
+            i++;
+        }
+        return s.substring(i);
+    }
+
+    private static int checkCommand(Path file, int line, String cmd, int batchLine, Set<String> expressions) throws Exception {
+        String name = getCommandName(cmd);
+        switch (name) {
+            case "batch":
+                if (batchLine >= 0) {
+                    throw syntaxError(file, line, "batch already started at line " + batchLine);
+                }
+                batchLine = line;
+                break;
+            case "run-batch":
+            case "discard-batch":
+                if (batchLine < 0) {
+                    throw syntaxError(file, line, name + " without batch");
+                }
+                batchLine = -1;
+                break;
+            default:
+                break;
+        }
+        // Parameter values of an operation, the server resolves the expressions they contain.
+        int values = isOperation(cmd) ? cmd.indexOf('(') : -1;
+        int index = cmd.indexOf("${");
+        while (index >= 0) {
+            int end = cmd.indexOf('}', index + 2);
+            if (end < 0) {
+                throw syntaxError(file, line, "unterminated expression " + cmd.substring(index));
+            }
+            String expression = cmd.substring(index + 2, end);
+            int colon = expression.indexOf(':');
+            String property = colon < 0 ? expression : expression.substring(0, colon);
+            if (property.isEmpty()) {
+                throw syntaxError(file, line, "empty expression " + cmd.substring(index, end + 1));
+            }
+            if (colon < 0 && (values < 0 || index < values)) {
+                expressions.add(property);
+            }
+            index = cmd.indexOf("${", end + 1);
+        }
+        return batchLine;
+    }
+
+    private static boolean isOperation(String cmd) {
+        char c = cmd.charAt(0);
+        return c == '/' || c == ':' || c == '.';
+    }
+
+    private static String getCommandName(String cmd) {
+        int i = 0;
+        while (i < cmd.length() && !Character.isWhitespace(cmd.charAt(i))) {
+            i++;
+        }
+        return cmd.substring(0, i);
+    }
+
+    private static Exception syntaxError(Path file, int line, String message) {
+        return new Exception("Invalid CLI script " + file + ", line " + line + ": " + message);
+    }
+}
@@ -16,16 +16,22 @@
  */
 package org.wildfly.plugins.bootablejar.maven.cli;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Objects;
 import java.util.Properties;
+import java.util.Set;
+import org.wildfly.plugins.bootablejar.maven.common.Instrumentation;
 import org.wildfly.plugins.bootablejar.maven.common.PluginContext;
+import org.wildfly.plugins.bootablejar.maven.common.PropertiesParser;
 import org.wildfly.plugins.bootablejar.maven.common.Utils;
 import org.wildfly.security.manager.WildFlySecurityManager;
 
@@ -35,9 +41,20 @@ import org.wildfly.security.manager.WildFlySecurityManager;
  */
 public class CliSession {
 
+    // Commands that need their own embedded server.
+    private static final List<String> SERVER_LIFECYCLE_COMMANDS = Arrays.asList("embed-server", "stop-embedded-server",
+            "embed-host-controller", "stop-embedded-host-controller", "connect", "reload", "shutdown");
+    private static final List<String> SERVER_LIFECYCLE_OPERATIONS = Arrays.asList("reload", "shutdown", "suspend", "resume");
+
+    private interface ExecutorFactory {
+
+        CLIExecutor create() throws Exception;
+    }
+
     private List<String> scriptFiles = Collections.emptyList();
     private String propertiesFile;
     boolean resolveExpressions = true;
+    private volatile List<String> commands;
 
     /**
      * Set the list of CLI script files to execute.
@@ -46,6 +63,7 @@ public class CliSession {
      */
     public void setScriptFiles(List<String> scriptFiles) {
         this.scriptFiles = scriptFiles;
+        this.commands = null;
     }
 
     /**
@@ -98,22 +116,69 @@ public class CliSession {
                 ", resolve-expressions="+this.resolveExpressions +", properties-file="+this.propertiesFile;
     }
 
-    public void execute(PluginContext ctx, boolean startEmbedded, boolean forkCli, List<Path> cliArtifacts) throws Exception {
+    /**
+     * Parse and check the script files, can be called ahead of the execution.
+     *
+     * @param ctx The plugin context.
+     * @return The commands.
+     * @throws Exception If a script doesn't exist or contains a syntax error.
+     */
+    public List<String> loadCommands(PluginContext ctx) throws Exception {
+        List<String> loaded = commands;
+        if (loaded == null) {
+            loaded = readCommands(ctx);
+            commands = loaded;
+        }
+        return loaded;
+    }
+
+    /**
+     * Parse and check the script files of a list of sessions.
+     *
+     * @param ctx The plugin context.
+     * @param sessions The CLI sessions.
+     * @throws Exception If a script doesn't exist or contains a syntax error.
+     */
+    public static void loadCommands(PluginContext ctx, List<CliSession> sessions) throws Exception {
+        for (CliSession s : sessions) {
+            s.loadCommands(ctx);
+        }
+    }
+
+    private List<String> readCommands(PluginContext ctx) throws Exception {
         List<String> commands = new ArrayList<>();
+        Set<String> expressions = new LinkedHashSet<>();
         for (String path : getScriptFiles()) {
             File f = new File(path);
-            Path filePath = Utils.resolvePath(ctx.getProject(), f.toPath());
-            if (Files.notExists(filePath)) {
-                throw new RuntimeException("Cli script file " + filePath + " doesn't exist");
+            CliScript script = CliScript.load(Utils.resolvePath(ctx.getProject(), f.toPath()));
+            commands.addAll(script.getCommands());
+            expressions.addAll(script.getExpressions());
+        }
+        if (resolveExpressions && !expressions.isEmpty()) {
+            warnUndefinedExpressions(ctx, expressions);
+        }
+        return Collections.unmodifiableList(commands);
+    }
+
+    private void warnUndefinedExpressions(PluginContext ctx, Set<String> expressions) throws Exception {
+        Set<String> defined = new HashSet<>();
+        if (propertiesFile != null) {
+            Path file = Utils.resolvePath(ctx.getProject(), new File(propertiesFile).toPath());
+            if (Files.exists(file)) {
+                PropertiesParser.parse(file, StandardCharsets.UTF_8, PropertiesParser.Syntax.PROPERTIES, (k, v) -> defined.add(k));
             }
-            try (BufferedReader reader = new BufferedReader(new FileReader(filePath.toFile()))) {
-                String line = reader.readLine();
-                while (line != null) {
-                    commands.add(line.trim());
-                    line = reader.readLine();
-                }
+        }
+        for (String expression : expressions) {
+            boolean isDefined = expression.startsWith("env.") ? System.getenv(expression.substring(4)) != null
+                    : defined.contains(expression) || WildFlySecurityManager.getPropertyPrivileged(expression, null) != null;
+            if (!isDefined) {
+                ctx.getLog().warn("CLI expression ${" + expression + "} has no value and no default in " + this);
             }
         }
+    }
+
+    public void execute(PluginContext ctx, boolean startEmbedded, boolean forkCli, List<Path> cliArtifacts) throws Exception {
+        List<String> commands = loadCommands(ctx);
         if (!commands.isEmpty()) {
             executeCliScript(ctx, commands, getPropertiesFile(),
                     getResolveExpression(), this.toString(), startEmbedded, forkCli, cliArtifacts);
@@ -122,11 +187,83 @@ public class CliSession {
 
     public static void execute(PluginContext ctx, List<CliSession> sessions,
             boolean startEmbedded, boolean forkCli, List<Path> cliArtifacts) throws Exception {
+        // All the scripts are checked before the first embedded server is started.
+        loadCommands(ctx, sessions);
+        if (startEmbedded && sessions.size() > 1 && ctx.isParallelCliSessionsEnabled()
+                && ParallelCliSessions.execute(ctx, sessions, cliArtifacts)) {
+            return;
+        }
+        if (startEmbedded && sessions.size() > 1 && ctx.isCliSessionsBootSharingEnabled()) {
+            for (List<CliSession> group : groupSessions(ctx, sessions)) {
+                if (group.size() == 1) {
+                    group.get(0).execute(ctx, true, forkCli, cliArtifacts);
+                } else {
+                    CliSession first = group.get(0);
+                    List<String> commands = new ArrayList<>();
+                    for (CliSession s : group) {
+                        commands.addAll(s.loadCommands(ctx));
+                    }
+                    executeCliScript(ctx, commands, first.getPropertiesFile(), first.getResolveExpression(),
+                            "CLI Sessions sharing the same embedded server " + group, true, forkCli, cliArtifacts);
+                }
+            }
+            return;
+        }
         for (CliSession s : sessions) {
             s.execute(ctx, startEmbedded, forkCli, cliArtifacts);
         }
     }
 
+    /**
+     * Group the consecutive sessions that can share an embedded server: they
+     * only update the configuration, don't control the server lifecycle and
+     * have the same properties file and expressions resolution.
+     */
+    static List<List<CliSession>> groupSessions(PluginContext ctx, List<CliSession> sessions) throws Exception {
+        List<List<CliSession>> groups = new ArrayList<>();
+        List<CliSession> current = null;
+        for (CliSession s : sessions) {
+            boolean shareable = !controlsServer(s.loadCommands(ctx));
+            if (current != null && shareable && current.get(0).canShareServer(s)) {
+                current.add(s);
+            } else {
+                current = new ArrayList<>();
+                current.add(s);
+                groups.add(current);
+                if (!shareable) {
+                    current = null;
+                }
+            }
+        }
+        return groups;
+    }
+
+    private boolean canShareServer(CliSession other) {
+        return resolveExpressions == other.resolveExpressions && Objects.equals(propertiesFile, other.propertiesFile);
+    }
+
+    static boolean controlsServer(List<String> commands) {
+        for (String cmd : commands) {
+            int end = 0;
+            while (end < cmd.length() && !Character.isWhitespace(cmd.charAt(end))) {
+                end++;
+            }
+            String name = cmd.substring(0, end);
+            if (SERVER_LIFECYCLE_COMMANDS.contains(name)) {
+                return true;
+            }
+            // An operation, /address:name(params) or :name
+            int paren = name.indexOf('(');
+            String operation = paren < 0 ? name : name.substring(0, paren);
+            int colon = operation.lastIndexOf(':');
+            if (colon >= 0 && (name.startsWith("/") || name.startsWith(":"))
+                    && SERVER_LIFECYCLE_OPERATIONS.contains(operation.substring(colon + 1))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public static void executeCliScript(PluginContext ctx, List<String> commands, String propertiesFile,
             boolean resolveExpression, String message, boolean startEmbedded, boolean forkCli, List<Path> cliArtifacts) throws Exception {
         ctx.getLog().info("Executing CLI, " + message);
@@ -135,7 +272,9 @@ public class CliSession {
             props = Utils.loadProperties(ctx, propertiesFile);
         }
         try {
-            processCLI(ctx, commands, resolveExpression, startEmbedded, forkCli, cliArtifacts);
+            processCLI(ctx, ctx.getJBossHome(), commands, message, startEmbedded,
+                    () -> forkCli ? new RemoteCLIExecutor(ctx, cliArtifacts, resolveExpression)
+                    : new LocalCLIExecutor(ctx, cliArtifacts, resolveExpression));
         } finally {
             if (props != null) {
                 for (String key : props.stringPropertyNames()) {
@@ -145,21 +284,45 @@ public class CliSession {
         }
     }
 
-    private static void processCLI(PluginContext ctx, List<String> commands,
-            boolean resolveExpression, boolean startEmbedded, boolean forkCli, List<Path> cliArtifacts) throws Exception {
+    /**
+     * Execute the session in a forked CLI against a given server, the session
+     * properties are only set in the forked process.
+     */
+    void execute(PluginContext ctx, Path jbossHome, List<Path> cliArtifacts) throws Exception {
+        List<String> commands = loadCommands(ctx);
+        if (commands.isEmpty()) {
+            return;
+        }
+        ctx.getLog().info("Executing CLI, " + this);
+        Properties props = null;
+        if (propertiesFile != null) {
+            Path file = Utils.resolvePath(ctx.getProject(), new File(propertiesFile).toPath());
+            if (Files.notExists(file)) {
+                throw new RuntimeException("Cli properties file " + file + " doesn't exist");
+            }
+            props = new Properties();
+            PropertiesParser.parse(file, StandardCharsets.UTF_8, PropertiesParser.Syntax.PROPERTIES, props::setProperty);
+        }
+        final Properties properties = props;
+        processCLI(ctx, jbossHome, commands, toString(), true,
+                () -> new RemoteCLIExecutor(ctx, jbossHome, cliArtifacts, resolveExpressions, properties));
+    }
+
+    private static void processCLI(PluginContext ctx, Path jbossHome, List<String> commands,
+            String message, boolean startEmbedded, ExecutorFactory executorFactory) throws Exception {
 
         List<String> allCommands = new ArrayList<>();
         if (startEmbedded) {
-            allCommands.add("embed-server --jboss-home=" + ctx.getJBossHome() + " --std-out=discard");
-        }
-        for (String line : commands) {
-            allCommands.add(line.trim());
+            allCommands.add("embed-server --jboss-home=" + jbossHome + " --std-out=discard");
         }
+        allCommands.addAll(commands);
         if (startEmbedded) {
             allCommands.add("stop-embedded-server");
         }
-        try (CLIExecutor executor = forkCli ? new RemoteCLIExecutor(ctx, cliArtifacts, resolveExpression)
-                : new LocalCLIExecutor(ctx, cliArtifacts, resolveExpression)) {
+        Instrumentation instrumentation = ctx.getInstrumentation();
+        instrumentation.increment("cli-commands", commands.size());
+        try (Instrumentation.Span span = instrumentation.start(Instrumentation.CLI);
+                CLIExecutor executor = executorFactory.create()) {
 
             try {
                 executor.execute(allCommands);
@@ -167,6 +330,8 @@ public class CliSession {
                 ctx.getLog().error("Error executing CLI script " + ex.getLocalizedMessage());
                 ctx.getLog().error(executor.getOutput());
                 throw ex;
+            } finally {
+                executor.getTimings().report(ctx, message);
             }
             if (ctx.isDisplayCliScriptsOutputEnabled()) {
                 ctx.getLog().info(executor.getOutput());
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.cli;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.wildfly.plugins.bootablejar.maven.common.PluginContext;
+
+/**
+ * Execution time of the commands of a CLI session. The embedded server boot
+ * ({@code embed-server}) and shutdown ({@code stop-embedded-server}) are
+ * reported apart from the script commands.
+ *
+ * @author jdenise
+ */
+public class CommandTimings {
+
+    private static final String EMBED_SERVER = "embed-server";
+    private static final String STOP_EMBEDDED_SERVER = "stop-embedded-server";
+    private static final int MAX_COMMAND_LENGTH = 120;
+
+    public static class Timing {
+
+        private final String command;
+        private final long nanos;
+
+        Timing(String command, long nanos) {
+            this.command = command;
+            this.nanos = nanos;
+        }
+
+        public String getCommand() {
+            return command;
+        }
+
+        public long getMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(nanos);
+        }
+    }
+
+    private final List<Timing> timings = new ArrayList<>();
+    private long bootNanos;
+    private long shutdownNanos;
+
+    /**
+     * Record the execution time of a command.
+     *
+     * @param command The command.
+     * @param nanos The execution time in nanoseconds.
+     */
+    public void record(String command, long nanos) {
+        if (command.isEmpty() || command.startsWith("#")) {
+            return;
+        }
+        if (command.startsWith(EMBED_SERVER)) {
+            bootNanos += nanos;
+        } else if (command.startsWith(STOP_EMBEDDED_SERVER)) {
+            shutdownNanos += nanos;
+        } else {
+            timings.add(new Timing(command, nanos));
+        }
+    }
+
+    public boolean isEmpty() {
+        return timings.isEmpty() && bootNanos == 0 && shutdownNanos == 0;
+    }
+
+    public long getBootMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(bootNanos);
+    }
+
+    public long getShutdownMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(shutdownNanos);
+    }
+
+    public int getCommandCount() {
+        return timings.size();
+    }
+
+    public long getCommandsMillis() {
+        long total = 0;
+        for (Timing t : timings) {
+            total += t.nanos;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(total);
+    }
+
+    /**
+     * Get the slowest commands.
+     *
+     * @param max The maximum number of commands.
+     * @return The commands, slowest first.
+     */
+    public List<Timing> getSlowest(int max) {
+        List<Timing> sorted = new ArrayList<>(timings);
+        sorted.sort((t1, t2) -> Long.compare(t2.nanos, t1.nanos));
+        return sorted.size() > max ? sorted.subList(0, max) : sorted;
+    }
+
+    /**
+     * Get the commands slower than a threshold, in execution order.
+     *
+     * @param thresholdMillis The threshold in milliseconds.
+     * @return The commands.
+     */
+    public List<Timing> getSlowerThan(long thresholdMillis) {
+        List<Timing> slow = Collections.emptyList();
+        for (Timing t : timings) {
+            if (t.getMillis() > thresholdMillis) {
+                if (slow.isEmpty()) {
+                    slow = new ArrayList<>();
+                }
+                slow.add(t);
+            }
+        }
+        return slow;
+    }
+
+    /**
+     * Log the boot, commands and shutdown times, the slowest commands and
+     * warn about the commands slower than the context threshold.
+     *
+     * @param ctx The plugin context.
+     * @param session The session description.
+     */
+    public void report(PluginContext ctx, String session) {
+        if (isEmpty()) {
+            return;
+        }
+        ctx.getLog().info("CLI execution times, boot " + getBootMillis() + "ms, " + getCommandCount() + " commands "
+                + getCommandsMillis() + "ms, shutdown " + getShutdownMillis() + "ms");
+        int reportSize = ctx.getCliSlowestCommandsReportSize();
+        if (reportSize > 0 && !timings.isEmpty()) {
+            ctx.getLog().info("Slowest CLI commands:");
+            for (Timing t : getSlowest(reportSize)) {
+                ctx.getLog().info("  " + t.getMillis() + "ms " + abbreviate(t.command));
+            }
+        }
+        long threshold = ctx.getCliSlowCommandThreshold();
+        if (threshold >= 0) {
+            for (Timing t : getSlowerThan(threshold)) {
+                ctx.getLog().warn("CLI command took " + t.getMillis() + "ms (threshold " + threshold + "ms) in "
+                        + session + ": " + abbreviate(t.command));
+            }
+        }
+    }
+
+    private static String abbreviate(String command) {
+        return command.length() > MAX_COMMAND_LENGTH ? command.substring(0, MAX_COMMAND_LENGTH) + "..." : command;
+    }
+
+    /**
+     * Write the timings, one {@code nanos command} line per command. Used to
+     * retrieve the timings of a forked CLI execution.
+     *
+     * @param file The file.
+     * @throws IOException
+     */
+    public void write(Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            if (bootNanos > 0) {
+                writer.write(bootNanos + " " + EMBED_SERVER);
+                writer.newLine();
+            }
+            for (Timing t : timings) {
+                writer.write(t.nanos + " " + t.command.replace('\n', ' '));
+                writer.newLine();
+            }
+            if (shutdownNanos > 0) {
+                writer.write(shutdownNanos + " " + STOP_EMBEDDED_SERVER);
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Read timings written by {@link #write(java.nio.file.Path)}.
+     *
+     * @param file The file.
+     * @return The timings, empty if the file doesn't exist.
+     * @throws IOException
+     */
+    public static CommandTimings read(Path file) throws IOException {
+        CommandTimings timings = new CommandTimings();
+        if (Files.notExists(file)) {
+            return timings;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            while (line != null) {
+                int i = line.indexOf(' ');
+                if (i > 0) {
+                    timings.record(line.substring(i + 1), Long.parseLong(line.substring(0, i)));
+                }
+                line = reader.readLine();
+            }
+        }
+        return timings;
+    }
+}
@@ -0,0 +1,490 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+import org.jboss.as.controller.client.ModelControllerClient;
+import org.jboss.as.controller.client.Operation;
+import org.jboss.as.controller.client.OperationBuilder;
+import org.jboss.as.controller.client.helpers.Operations;
+import org.jboss.dmr.ModelNode;
+import org.wildfly.plugins.bootablejar.maven.common.Deployment;
+import org.wildfly.plugins.bootablejar.maven.common.DeploymentStager;
+import org.wildfly.plugins.bootablejar.maven.common.PluginContext;
+import org.wildfly.plugins.bootablejar.maven.common.Utils;
+import org.wildfly.security.manager.WildFlySecurityManager;
+
+/**
+ * Keep a running server in sync with the project during development. The
+ * deployments, the CLI sessions scripts and the extra server content
+ * directories are polled, only what changed is pushed to the server: a
+ * changed archive is replaced, the changed files of an exploded deployment or
+ * of an extra content directory are copied, the sessions with a changed script
+ * are executed again.
+ *
+ * A change is applied once the files are stable for a poll interval, a
+ * deployment being written by the build is not pushed half written. A change
+ * that fails to apply is applied again at the next poll.
+ *
+ * @author jdenise
+ */
+public class DevModeSync {
+
+    /**
+     * The server changes are applied to.
+     */
+    public interface Target {
+
+        /**
+         * @return The server home, extra content files are copied there.
+         */
+        Path getJBossHome();
+
+        /**
+         * Deploy an archive, replacing the deployment with the same name.
+         */
+        void replaceDeployment(Deployment deployment) throws Exception;
+
+        /**
+         * Redeploy an exploded deployment, its files have been updated.
+         */
+        void redeploy(String name) throws Exception;
+
+        /**
+         * Execute the commands of a CLI session.
+         */
+        void execute(CliSession session, List<String> commands) throws Exception;
+    }
+
+    /**
+     * What a synchronization applied.
+     */
+    public static final class Result {
+
+        private final List<String> deployments = new ArrayList<>();
+        private final List<String> sessions = new ArrayList<>();
+        private int copiedFiles;
+        private int deletedFiles;
+
+        public List<String> getDeployments() {
+            return Collections.unmodifiableList(deployments);
+        }
+
+        public List<String> getSessions() {
+            return Collections.unmodifiableList(sessions);
+        }
+
+        public int getCopiedFiles() {
+            return copiedFiles;
+        }
+
+        public int getDeletedFiles() {
+            return deletedFiles;
+        }
+
+        public boolean isEmpty() {
+            return deployments.isEmpty() && sessions.isEmpty() && copiedFiles == 0 && deletedFiles == 0;
+        }
+
+        @Override
+        public String toString() {
+            return "redeployed " + deployments + ", executed " + sessions.size() + " CLI sessions, copied "
+                    + copiedFiles + " files, deleted " + deletedFiles + " files";
+        }
+    }
+
+    private static final class FileState {
+
+        private final long size;
+        private final long modified;
+
+        private FileState(long size, long modified) {
+            this.size = size;
+            this.modified = modified;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof FileState)) {
+                return false;
+            }
+            FileState other = (FileState) obj;
+            return size == other.size && modified == other.modified;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(size, modified);
+        }
+    }
+
+    /**
+     * A set of watched files and directories.
+     */
+    private static final class Watched {
+
+        private final List<Path> roots;
+        private Map<Path, FileState> applied;
+        private Map<Path, FileState> previous;
+        private Map<Path, FileState> failed;
+
+        private Watched(List<Path> roots) throws IOException {
+            this.roots = roots;
+            applied = scan();
+            previous = applied;
+        }
+
+        private Map<Path, FileState> scan() throws IOException {
+            Map<Path, FileState> state = new HashMap<>();
+            for (Path root : roots) {
+                if (Files.isDirectory(root)) {
+                    try (Stream<Path> stream = Files.walk(root)) {
+                        for (Path file : (Iterable<Path>) stream::iterator) {
+                            addState(state, file);
+                        }
+                    }
+                } else {
+                    addState(state, root);
+                }
+            }
+            return state;
+        }
+
+        private static void addState(Map<Path, FileState> state, Path file) {
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                if (attrs.isRegularFile()) {
+                    state.put(file, new FileState(attrs.size(), attrs.lastModifiedTime().toMillis()));
+                }
+            } catch (IOException ex) {
+                // Deleted while scanning.
+            }
+        }
+
+        /**
+         * @return The state to apply, or null if nothing changed since the
+         * last applied state or if the files are still changing.
+         */
+        private Map<Path, FileState> poll() throws IOException {
+            Map<Path, FileState> current = scan();
+            boolean stable = current.equals(previous);
+            previous = current;
+            return stable && !current.equals(applied) ? current : null;
+        }
+
+        private void applied(Map<Path, FileState> state) {
+            applied = state;
+            failed = null;
+        }
+
+        /**
+         * A state that failed to apply is applied again at the next poll.
+         *
+         * @return true if the state already failed.
+         */
+        private boolean failed(Map<Path, FileState> state) {
+            boolean again = state.equals(failed);
+            failed = state;
+            return again;
+        }
+    }
+
+    private final PluginContext ctx;
+    private final Target target;
+    private final Map<Deployment, Watched> deployments = new HashMap<>();
+    private final List<Deployment> sortedDeployments;
+    private final Map<CliSession, Watched> sessions = new HashMap<>();
+    private final List<CliSession> sessionList;
+    private final Map<Path, Watched> contentDirs = new HashMap<>();
+
+    /**
+     * The current state of the watched files is considered as deployed in the
+     * server.
+     *
+     * @param ctx The plugin context.
+     * @param deployments The deployments.
+     * @param sessions The CLI sessions.
+     * @param extraContentDirs The extra server content directories.
+     * @param target The running server.
+     * @throws Exception
+     */
+    public DevModeSync(PluginContext ctx, List<Deployment> deployments, List<CliSession> sessions,
+            List<String> extraContentDirs, Target target) throws Exception {
+        this.ctx = ctx;
+        this.target = target;
+        sortedDeployments = Deployment.sort(deployments);
+        for (Deployment deployment : sortedDeployments) {
+            this.deployments.put(deployment, new Watched(Collections.singletonList(deployment.getFile().toPath())));
+        }
+        sessionList = new ArrayList<>(sessions);
+        for (CliSession session : sessionList) {
+            List<Path> files = new ArrayList<>();
+            for (String script : session.getScriptFiles()) {
+                files.add(Utils.resolvePath(ctx.getProject(), Paths.get(script)));
+            }
+            if (session.getPropertiesFile() != null) {
+                files.add(Utils.resolvePath(ctx.getProject(), Paths.get(session.getPropertiesFile())));
+            }
+            this.sessions.put(session, new Watched(files));
+        }
+        for (String dir : extraContentDirs) {
+            Path path = Utils.resolvePath(ctx.getProject(), Paths.get(dir));
+            contentDirs.put(path, new Watched(Collections.singletonList(path)));
+        }
+    }
+
+    /**
+     * Synchronize the project deployments, the given CLI sessions and the
+     * extra server content directories.
+     *
+     * @param ctx The plugin context.
+     * @param sessions The CLI sessions.
+     * @param target The running server.
+     * @return The synchronization.
+     * @throws Exception
+     */
+    public static DevModeSync create(PluginContext ctx, List<CliSession> sessions, Target target) throws Exception {
+        return new DevModeSync(ctx, Utils.getDeployments(ctx), sessions, ctx.getExtraServerContentDirs(), target);
+    }
+
+    /**
+     * Apply the changes that happened since the previous synchronization. The
+     * extra content is copied first, then the CLI sessions are executed and
+     * the deployments are redeployed, in dependency order.
+     *
+     * @return What has been applied.
+     * @throws Exception
+     */
+    public Result sync() throws Exception {
+        Result result = new Result();
+        for (Map.Entry<Path, Watched> entry : contentDirs.entrySet()) {
+            Watched watched = entry.getValue();
+            Map<Path, FileState> state = watched.poll();
+            if (state != null) {
+                try {
+                    copyChanges(entry.getKey(), target.getJBossHome(), watched.applied, state, result);
+                    watched.applied(state);
+                } catch (Exception ex) {
+                    failed(watched, state, "Failed to copy extra content " + entry.getKey() + ": " + ex.getLocalizedMessage());
+                }
+            }
+        }
+        for (CliSession session : sessionList) {
+            Watched watched = sessions.get(session);
+            Map<Path, FileState> state = watched.poll();
+            if (state != null) {
+                try {
+                    // Scripts are parsed again.
+                    session.setScriptFiles(session.getScriptFiles());
+                    target.execute(session, session.loadCommands(ctx));
+                    result.sessions.add(session.toString());
+                    watched.applied(state);
+                } catch (Exception ex) {
+                    failed(watched, state, "Failed to execute " + session + ": " + ex.getLocalizedMessage());
+                }
+            }
+        }
+        for (Deployment deployment : sortedDeployments) {
+            Watched watched = deployments.get(deployment);
+            Map<Path, FileState> state = watched.poll();
+            if (state == null || state.isEmpty()) {
+                continue;
+            }
+            try {
+                Path file = deployment.getFile().toPath();
+                if (Files.isDirectory(file)) {
+                    Path exploded = target.getJBossHome().resolve("standalone").resolve(DeploymentStager.EXPLODED_DIR).
+                            resolve(deployment.getName());
+                    copyChanges(file, exploded, watched.applied, state, result);
+                    target.redeploy(deployment.getName());
+                } else {
+                    target.replaceDeployment(deployment);
+                }
+                result.deployments.add(deployment.getName());
+                watched.applied(state);
+            } catch (Exception ex) {
+                failed(watched, state, "Failed to redeploy " + deployment.getName() + ": " + ex.getLocalizedMessage());
+            }
+        }
+        return result;
+    }
+
+    // Retried at each poll, only logged as an error the first time.
+    private void failed(Watched watched, Map<Path, FileState> state, String message) {
+        if (watched.failed(state)) {
+            ctx.debug("%s", message);
+        } else {
+            ctx.getLog().error(message);
+        }
+    }
+
+    /**
+     * Synchronize until stopped.
+     *
+     * @param interval The poll interval in milliseconds.
+     * @param running Returns false to stop.
+     * @throws Exception
+     */
+    public void run(long interval, BooleanSupplier running) throws Exception {
+        while (running.getAsBoolean()) {
+            long start = System.currentTimeMillis();
+            Result result = sync();
+            if (!result.isEmpty()) {
+                ctx.getLog().info("Server synchronized in " + (System.currentTimeMillis() - start) + "ms, " + result);
+            }
+            Thread.sleep(interval);
+        }
+    }
+
+    private static void copyChanges(Path root, Path target, Map<Path, FileState> applied, Map<Path, FileState> state,
+            Result result) throws IOException {
+        for (Map.Entry<Path, FileState> entry : state.entrySet()) {
+            if (!entry.getValue().equals(applied.get(entry.getKey()))) {
+                Path targetFile = target.resolve(root.relativize(entry.getKey()).toString());
+                Files.createDirectories(targetFile.getParent());
+                // The server file can be a link to the project file, replaced, not updated.
+                Files.deleteIfExists(targetFile);
+                Files.copy(entry.getKey(), targetFile, StandardCopyOption.COPY_ATTRIBUTES);
+                result.copiedFiles += 1;
+            }
+        }
+        for (Path file : applied.keySet()) {
+            if (!state.containsKey(file)) {
+                if (Files.deleteIfExists(target.resolve(root.relativize(file).toString()))) {
+                    result.deletedFiles += 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * A running server, managed with a CLI connected to it.
+     */
+    public static class ServerTarget implements Target, AutoCloseable {
+
+        private final PluginContext ctx;
+        private final LocalCLIExecutor executor;
+        private final ModelControllerClient client;
+        private final Path jbossHome;
+
+        /**
+         * @param ctx The plugin context.
+         * @param cliArtifacts The CLI artifacts.
+         * @param controller The server management address, {@code host:port}.
+         * @throws Exception
+         */
+        public ServerTarget(PluginContext ctx, List<Path> cliArtifacts, String controller) throws Exception {
+            this.ctx = ctx;
+            executor = new LocalCLIExecutor(ctx, cliArtifacts, true);
+            try {
+                executor.handle("connect " + controller);
+                client = executor.getCLIWrapper().getModelControllerClient();
+                ModelNode op = Operations.createOperation("read-attribute", Operations.createAddress("core-service", "server-environment"));
+                op.get("name").set("home-dir");
+                jbossHome = Paths.get(execute(op).asString());
+            } catch (Exception ex) {
+                executor.close();
+                throw ex;
+            }
+        }
+
+        @Override
+        public Path getJBossHome() {
+            return jbossHome;
+        }
+
+        @Override
+        public void replaceDeployment(Deployment deployment) throws Exception {
+            ModelNode address = Operations.createAddress("deployment", deployment.getName());
+            boolean exists = Operations.isSuccessfulOutcome(client.execute(Operations.createOperation("read-resource", address)));
+            ModelNode op;
+            if (exists) {
+                op = Operations.createOperation("full-replace-deployment");
+                op.get("name").set(deployment.getName());
+            } else {
+                op = Operations.createAddOperation(address);
+            }
+            op.get("runtime-name").set(deployment.getRuntimeName());
+            op.get("enabled").set(true);
+            op.get("content").add().get("input-stream-index").set(0);
+            File file = deployment.getFile();
+            execute(new OperationBuilder(op).addFileAsAttachment(file).build(), "Deployment of " + file);
+        }
+
+        @Override
+        public void redeploy(String name) throws Exception {
+            execute(Operations.createOperation("redeploy", Operations.createAddress("deployment", name)));
+        }
+
+        @Override
+        public void execute(CliSession session, List<String> commands) throws Exception {
+            Properties props = null;
+            if (session.getPropertiesFile() != null) {
+                props = Utils.loadProperties(ctx, session.getPropertiesFile());
+            }
+            try {
+                executor.execute(commands);
+            } finally {
+                if (props != null) {
+                    for (String key : props.stringPropertyNames()) {
+                        WildFlySecurityManager.clearPropertyPrivileged(key);
+                    }
+                }
+            }
+            ModelNode op = Operations.createOperation("read-attribute", new ModelNode().setEmptyList());
+            op.get("name").set("server-state");
+            if ("reload-required".equals(execute(op).asString())) {
+                executor.handle("reload");
+            }
+        }
+
+        private ModelNode execute(ModelNode op) throws Exception {
+            ModelNode result = client.execute(op);
+            if (!Operations.isSuccessfulOutcome(result)) {
+                throw new Exception(Operations.getFailureDescription(result));
+            }
+            return Operations.readResult(result);
+        }
+
+        private void execute(Operation op, String message) throws Exception {
+            ModelNode result = client.execute(op);
+            if (!Operations.isSuccessfulOutcome(result)) {
+                throw new Exception(message + " failed: " + Operations.getFailureDescription(result));
+            }
+        }
+
+        @Override
+        public void close() throws Exception {
+            executor.close();
+        }
+    }
+}
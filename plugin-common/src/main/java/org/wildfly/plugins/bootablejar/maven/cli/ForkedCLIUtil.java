@@ -30,6 +30,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Properties;
 import org.apache.maven.plugin.logging.Log;
 import org.jboss.galleon.Errors;
 
@@ -54,6 +55,13 @@ public class ForkedCLIUtil {
     }
 
     public static void fork(Log log, String[] artifacts, Class<?> clazz, Path home, Path output, String... args) throws Exception {
+        fork(log, artifacts, clazz, home, output, null, args);
+    }
+
+    /**
+     * Fork with system properties that are only set in the forked process.
+     */
+    public static void fork(Log log, String[] artifacts, Class<?> clazz, Path home, Path output, Properties properties, String... args) throws Exception {
         // prepare the classpath
         final StringBuilder cp = new StringBuilder();
         for (String loc : artifacts) {
@@ -61,7 +69,7 @@ public class ForkedCLIUtil {
         }
         collectCpUrls(getJavaHome(), Thread.currentThread().getContextClassLoader(), cp);
 
-        Path properties = storeSystemProps();
+        Path propertiesFile = storeSystemProps(properties);
 
         final List<String> argsList = new ArrayList<>();
         argsList.add(getJavaCmd());
@@ -71,7 +79,7 @@ public class ForkedCLIUtil {
         argsList.add(clazz.getName());
         argsList.add(home.toString());
         argsList.add(output.toString());
-        argsList.add(properties.toString());
+        argsList.add(propertiesFile.toString());
         for (String s : args) {
             argsList.add(s);
         }
@@ -104,11 +112,11 @@ public class ForkedCLIUtil {
                 throw new Exception("CLI execution failed.");
             }
         } finally {
-            Files.deleteIfExists(properties);
+            Files.deleteIfExists(propertiesFile);
         }
     }
 
-    private static Path storeSystemProps() throws ProvisioningException {
+    private static Path storeSystemProps(Properties properties) throws ProvisioningException {
         final Path props;
         try {
             props = Files.createTempFile("wfbootablejar", "sysprops");
@@ -116,7 +124,13 @@ public class ForkedCLIUtil {
             throw new ProvisioningException("Failed to create a tmp file", e);
         }
         try (BufferedWriter writer = Files.newBufferedWriter(props)) {
-            System.getProperties().store(writer, "");
+            Properties toStore = System.getProperties();
+            if (properties != null) {
+                toStore = new Properties();
+                toStore.putAll(System.getProperties());
+                toStore.putAll(properties);
+            }
+            toStore.store(writer, "");
         } catch (IOException e) {
             throw new ProvisioningException(Errors.writeFile(props), e);
         }
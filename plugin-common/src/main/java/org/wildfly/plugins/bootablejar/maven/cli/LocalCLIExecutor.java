@@ -45,6 +45,7 @@ public class LocalCLIExecutor implements CLIExecutor {
     protected final PluginContext ctx;
     private CLIWrapper cliWrapper;
     protected final boolean resolveExpression;
+    private final CommandTimings timings = new CommandTimings();
 
     public LocalCLIExecutor(PluginContext ctx,  List<Path> cliArtifacts,
             boolean resolveExpression) throws Exception {
@@ -101,7 +102,17 @@ public class LocalCLIExecutor implements CLIExecutor {
     @Override
     public void execute(List<String> commands) throws Exception {
         for (String cmd : commands) {
-            handle(cmd);
+            long start = System.nanoTime();
+            try {
+                handle(cmd);
+            } finally {
+                timings.record(cmd, System.nanoTime() - start);
+            }
         }
     }
+
+    @Override
+    public CommandTimings getTimings() {
+        return timings;
+    }
 }
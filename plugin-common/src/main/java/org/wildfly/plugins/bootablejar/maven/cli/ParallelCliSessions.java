@@ -0,0 +1,274 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.cli;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import org.wildfly.plugins.bootablejar.maven.common.BuildPipeline;
+import org.wildfly.plugins.bootablejar.maven.common.PluginContext;
+import org.wildfly.plugins.bootablejar.maven.common.Utils;
+import static org.wildfly.plugins.bootablejar.maven.common.Constants.STANDALONE;
+import static org.wildfly.plugins.bootablejar.maven.common.Constants.STANDALONE_XML;
+
+/**
+ * Execute CLI sessions concurrently. Each session runs in a forked CLI
+ * against its own snapshot of the server: the server directories are
+ * symbolic links to the server, the standalone directory is copied. The
+ * changes done to the standalone directory (configuration, data) by the
+ * sessions are then merged into the server. Sessions that deploy or add modules change more
+ * than the configuration and are executed in sequence.
+ *
+ * @author jdenise
+ */
+final class ParallelCliSessions {
+
+    private static final String CONFIGURATION = "configuration";
+    private static final String HISTORY = "standalone_xml_history";
+    private static final List<String> NOT_COPIED = Arrays.asList("log", "tmp");
+    // Merged per element, or written by any boot of the server.
+    private static final List<String> NOT_MERGED = Arrays.asList(CONFIGURATION + "/" + STANDALONE_XML,
+            "data/kernel/process-uuid");
+    // Commands that change content outside of the configuration directory.
+    private static final List<String> SEQUENTIAL_COMMANDS = Arrays.asList("deploy", "undeploy",
+            "deployment", "/deployment", ":full-replace-deployment", "module", "patch");
+
+    private ParallelCliSessions() {
+    }
+
+    /**
+     * Execute the sessions concurrently.
+     *
+     * @return false if the sessions must be executed in sequence, nothing has
+     * been executed.
+     * @throws Exception
+     */
+    static boolean execute(PluginContext ctx, List<CliSession> sessions, List<Path> cliArtifacts) throws Exception {
+        for (CliSession session : sessions) {
+            for (String cmd : session.loadCommands(ctx)) {
+                for (String sequential : SEQUENTIAL_COMMANDS) {
+                    if (cmd.equals(sequential) || cmd.startsWith(sequential + " ") || cmd.startsWith(sequential + "=")
+                            || cmd.startsWith(sequential + "(")) {
+                        ctx.getLog().info("CLI sessions executed in sequence, " + session + " contains " + cmd);
+                        return false;
+                    }
+                }
+            }
+        }
+        Path jbossHome = ctx.getJBossHome().toAbsolutePath();
+        Path snapshotsDir = Files.createTempDirectory(jbossHome.getParent(), "cli-sessions");
+        try {
+            List<Path> snapshots = new ArrayList<>();
+            for (int i = 0; i < sessions.size(); i++) {
+                Path snapshot = snapshotsDir.resolve("session-" + i);
+                if (!createSnapshot(jbossHome, snapshot)) {
+                    ctx.getLog().info("CLI sessions executed in sequence, symbolic links are not supported in " + snapshotsDir);
+                    return false;
+                }
+                snapshots.add(snapshot);
+            }
+            ctx.getLog().info("Executing " + sessions.size() + " CLI sessions concurrently");
+            // Disabled once, the executors of the sessions would restore each others levels.
+            Level level = ctx.disableLog();
+            try (BuildPipeline pipeline = new BuildPipeline(ctx, Math.min(sessions.size(),
+                    Runtime.getRuntime().availableProcessors()))) {
+                for (int i = 0; i < sessions.size(); i++) {
+                    CliSession session = sessions.get(i);
+                    Path snapshot = snapshots.get(i);
+                    pipeline.stage("cli-session-" + i, () -> session.execute(ctx, snapshot, cliArtifacts));
+                }
+                pipeline.await();
+            } finally {
+                ctx.enableLog(level);
+            }
+            merge(ctx, jbossHome.resolve(STANDALONE), sessions, snapshots);
+        } finally {
+            Utils.deleteDir(snapshotsDir);
+        }
+        return true;
+    }
+
+    static boolean createSnapshot(Path jbossHome, Path snapshot) throws IOException {
+        Files.createDirectories(snapshot);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(jbossHome)) {
+            for (Path p : stream) {
+                Path target = snapshot.resolve(p.getFileName().toString());
+                if (STANDALONE.equals(p.getFileName().toString())) {
+                    copyStandalone(p, target);
+                } else {
+                    try {
+                        Files.createSymbolicLink(target, p);
+                    } catch (UnsupportedOperationException | IOException ex) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void copyStandalone(Path source, Path target) throws IOException {
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Path relative = source.relativize(dir);
+                if (relative.getNameCount() == 1 && NOT_COPIED.contains(relative.toString())
+                        || dir.getFileName().toString().equals(HISTORY)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                Files.createDirectories(target.resolve(relative.toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.copy(file, target.resolve(source.relativize(file).toString()), StandardCopyOption.COPY_ATTRIBUTES);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Merge the changes of the sessions into the server standalone directory.
+     * standalone.xml changes are merged per element, the other files (the
+     * configuration directory but also the data directory, credential stores,
+     * keystores, ...) are copied, a file changed differently by two sessions
+     * is a conflict.
+     */
+    static void merge(PluginContext ctx, Path standaloneDir, List<CliSession> sessions, List<Path> snapshots) throws Exception {
+        Path configDir = standaloneDir.resolve(CONFIGURATION);
+        StandaloneXmlMerger merger = new StandaloneXmlMerger(configDir.resolve(STANDALONE_XML));
+        // Relative path of the other files changed by a session, null if deleted.
+        Map<String, Path> changedFiles = new TreeMap<>();
+        Map<String, CliSession> changedBy = new HashMap<>();
+        Map<String, Path> original = listFiles(standaloneDir);
+        for (int i = 0; i < sessions.size(); i++) {
+            CliSession session = sessions.get(i);
+            Path sessionStandaloneDir = snapshots.get(i).resolve(STANDALONE);
+            int changed = merger.addSession(session.toString(), sessionStandaloneDir.resolve(CONFIGURATION).resolve(STANDALONE_XML));
+            ctx.debug("%s changed %s configuration elements", session, changed);
+            Map<String, Path> files = listFiles(sessionStandaloneDir);
+            List<String> all = new ArrayList<>(files.keySet());
+            for (String name : original.keySet()) {
+                if (!files.containsKey(name)) {
+                    all.add(name);
+                }
+            }
+            for (String name : all) {
+                Path content = files.get(name);
+                if (sameContent(content, original.get(name))) {
+                    continue;
+                }
+                CliSession previous = changedBy.putIfAbsent(name, session);
+                if (previous != null) {
+                    if (!sameContent(changedFiles.get(name), content)) {
+                        throw new Exception("CLI sessions conflict, file " + name + " is changed by both "
+                                + previous + " and " + session + ". Disable the parallel execution of CLI sessions or merge these sessions.");
+                    }
+                } else {
+                    changedFiles.put(name, content);
+                }
+            }
+        }
+        if (merger.hasChanges()) {
+            merger.write(configDir.resolve(STANDALONE_XML));
+        }
+        for (Map.Entry<String, Path> entry : changedFiles.entrySet()) {
+            Path target = standaloneDir.resolve(entry.getKey());
+            if (entry.getValue() == null) {
+                Files.deleteIfExists(target);
+            } else {
+                Files.createDirectories(target.getParent());
+                Files.copy(entry.getValue(), target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    // Files of the standalone directory, other than standalone.xml, its history, the logs, the temporary files
+    // and the files created by any server boot.
+    private static Map<String, Path> listFiles(Path standaloneDir) throws IOException {
+        Map<String, Path> files = new HashMap<>();
+        Files.walkFileTree(standaloneDir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                Path relative = standaloneDir.relativize(dir);
+                if (relative.getNameCount() == 1 && NOT_COPIED.contains(relative.toString())
+                        || dir.getFileName().toString().equals(HISTORY)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                String name = standaloneDir.relativize(file).toString().replace('\\', '/');
+                if (!NOT_MERGED.contains(name)) {
+                    files.put(name, file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return files;
+    }
+
+    private static boolean sameContent(Path file1, Path file2) throws IOException {
+        if (file1 == null || file2 == null) {
+            return file1 == file2;
+        }
+        if (Files.size(file1) != Files.size(file2)) {
+            return false;
+        }
+        byte[] buffer1 = new byte[8192];
+        byte[] buffer2 = new byte[8192];
+        try (InputStream in1 = Files.newInputStream(file1); InputStream in2 = Files.newInputStream(file2)) {
+            int read;
+            while ((read = readFully(in1, buffer1)) > 0) {
+                if (readFully(in2, buffer2) != read) {
+                    return false;
+                }
+                for (int i = 0; i < read; i++) {
+                    if (buffer1[i] != buffer2[i]) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+        int total = 0;
+        int read;
+        while (total < buffer.length && (read = in.read(buffer, total, buffer.length - total)) > 0) {
+            total += read;
+        }
+        return total;
+    }
+}
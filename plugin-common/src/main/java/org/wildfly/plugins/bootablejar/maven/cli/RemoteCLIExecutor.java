@@ -21,6 +21,7 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Properties;
 import java.util.logging.Level;
 import org.wildfly.plugins.bootablejar.maven.common.PluginContext;
 
@@ -37,12 +38,24 @@ public class RemoteCLIExecutor implements CLIExecutor {
     protected final Path jbossHome;
     protected final String[] cp;
     private final boolean resolveExpression;
+    private final Properties properties;
+    private CommandTimings timings = new CommandTimings();
 
     public RemoteCLIExecutor(PluginContext ctx, List<Path> cliArtifacts,
             boolean resolveExpression) throws Exception {
-        this.jbossHome = ctx.getJBossHome();
+        this(ctx, ctx.getJBossHome(), cliArtifacts, resolveExpression, null);
+    }
+
+    /**
+     * An executor for a given server, the properties are only set as system
+     * properties in the forked process.
+     */
+    public RemoteCLIExecutor(PluginContext ctx, Path jbossHome, List<Path> cliArtifacts,
+            boolean resolveExpression, Properties properties) throws Exception {
+        this.jbossHome = jbossHome;
         this.ctx = ctx;
         this.resolveExpression = resolveExpression;
+        this.properties = properties;
         level = ctx.disableLog();
         output = File.createTempFile("cli-script-output", null).toPath();
         Files.deleteIfExists(output);
@@ -68,6 +81,11 @@ public class RemoteCLIExecutor implements CLIExecutor {
         return out.toString();
     }
 
+    @Override
+    public CommandTimings getTimings() {
+        return timings;
+    }
+
     @Override
     public void close() throws Exception {
         try {
@@ -87,13 +105,21 @@ public class RemoteCLIExecutor implements CLIExecutor {
             cmds.append(cmd).append(System.lineSeparator());
         }
         Files.write(script, cmds.toString().getBytes(StandardCharsets.UTF_8));
-        String[] args = new String[2];
+        Path timingsFile = File.createTempFile("cli-script-timings", null).toPath();
+        Files.deleteIfExists(timingsFile);
+        String[] args = new String[3];
         args[0] = script.toString();
         args[1] = Boolean.toString(resolveExpression);
+        args[2] = timingsFile.toString();
         try {
-            ForkedCLIUtil.fork(ctx.getLog(), cp, CLIForkedExecutor.class, jbossHome, output, args);
+            ForkedCLIUtil.fork(ctx.getLog(), cp, CLIForkedExecutor.class, jbossHome, output, properties, args);
         } finally {
             Files.deleteIfExists(script);
+            try {
+                timings = CommandTimings.read(timingsFile);
+            } finally {
+                Files.deleteIfExists(timingsFile);
+            }
         }
     }
 }
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.cli;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Merge the server configurations updated by concurrent CLI sessions. The
+ * configuration is split in units: each extension, each subsystem of the
+ * profile and each other element of the server root element. The units
+ * changed by a session (added, modified or removed) are applied to the
+ * original configuration, in session order. Two sessions changing the same
+ * unit differently is a conflict. Whitespace and comments are ignored when
+ * comparing units.
+ *
+ * @author jdenise
+ */
+class StandaloneXmlMerger {
+
+    private static final String PROFILE = "profile";
+    private static final String EXTENSIONS = "extensions";
+
+    private static class Change {
+
+        private final String session;
+        private final Element element;
+        private final Element normalized;
+
+        Change(String session, Element element, Element normalized) {
+            this.session = session;
+            this.element = element;
+            this.normalized = normalized;
+        }
+
+        boolean isRemoval() {
+            return element == null;
+        }
+
+        boolean isSame(Change other) {
+            if (isRemoval() || other.isRemoval()) {
+                return isRemoval() && other.isRemoval();
+            }
+            return normalized.isEqualNode(other.normalized);
+        }
+    }
+
+    private final DocumentBuilder builder;
+    private final Document original;
+    private final Map<String, Element> originalUnits;
+    private final Map<String, Element> normalizedUnits = new HashMap<>();
+    private final Map<String, Change> changes = new LinkedHashMap<>();
+    // Units added by a session and the following units in the session configuration.
+    private final Map<String, List<String>> followingUnits = new HashMap<>();
+
+    StandaloneXmlMerger(Path originalConfig) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        builder = factory.newDocumentBuilder();
+        original = builder.parse(originalConfig.toFile());
+        originalUnits = getUnits(original);
+        for (Map.Entry<String, Element> entry : originalUnits.entrySet()) {
+            normalizedUnits.put(entry.getKey(), normalize(entry.getValue()));
+        }
+    }
+
+    /**
+     * Record the changes done by a session.
+     *
+     * @param session The session description.
+     * @param config The configuration updated by the session.
+     * @return The number of changed units.
+     * @throws Exception If a unit has already been changed differently by
+     * another session.
+     */
+    int addSession(String session, Path config) throws Exception {
+        Map<String, Element> units = getUnits(builder.parse(config.toFile()));
+        int count = 0;
+        List<String> keys = new ArrayList<>(units.keySet());
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.get(i);
+            Element element = units.get(key);
+            Element normalized = normalize(element);
+            Element originalUnit = normalizedUnits.get(key);
+            if (originalUnit != null && originalUnit.isEqualNode(normalized)) {
+                continue;
+            }
+            if (originalUnit == null) {
+                followingUnits.putIfAbsent(key, keys.subList(i + 1, keys.size()));
+            }
+            addChange(key, new Change(session, element, normalized));
+            count += 1;
+        }
+        for (String key : originalUnits.keySet()) {
+            if (!units.containsKey(key)) {
+                addChange(key, new Change(session, null, null));
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    private void addChange(String key, Change change) throws Exception {
+        Change previous = changes.get(key);
+        if (previous == null) {
+            changes.put(key, change);
+        } else if (!previous.isSame(change)) {
+            throw new Exception("CLI sessions conflict, " + key + " is changed by both " + previous.session
+                    + " and " + change.session + ". Disable the parallel execution of CLI sessions or merge these sessions.");
+        }
+    }
+
+    boolean hasChanges() {
+        return !changes.isEmpty();
+    }
+
+    /**
+     * Apply the changes to the original configuration and write it.
+     *
+     * @param target The file to write.
+     * @throws Exception
+     */
+    void write(Path target) throws Exception {
+        for (Map.Entry<String, Change> entry : changes.entrySet()) {
+            String key = entry.getKey();
+            Change change = entry.getValue();
+            Element current = originalUnits.get(key);
+            if (change.isRemoval()) {
+                current.getParentNode().removeChild(current);
+                originalUnits.remove(key);
+                continue;
+            }
+            Node imported = original.importNode(change.element, true);
+            if (current != null) {
+                current.getParentNode().replaceChild(imported, current);
+            } else {
+                insert(key, (Element) imported);
+            }
+            originalUnits.put(key, (Element) imported);
+        }
+        Transformer transformer = TransformerFactory.newInstance().newTransformer();
+        transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+        try (OutputStream out = Files.newOutputStream(target)) {
+            transformer.transform(new DOMSource(original), new StreamResult(out));
+        }
+    }
+
+    private void insert(String key, Element element) throws Exception {
+        // Keep the session order, schemas define the order of the server elements.
+        for (String following : followingUnits.get(key)) {
+            Element next = originalUnits.get(following);
+            if (next != null && getParentKey(following).equals(getParentKey(key))) {
+                next.getParentNode().insertBefore(element, next);
+                return;
+            }
+        }
+        Element root = original.getDocumentElement();
+        String parentKey = getParentKey(key);
+        Element parent = parentKey.isEmpty() ? root : getChild(root, parentKey);
+        if (parent == null) {
+            throw new Exception("Can't merge " + key + ", no " + parentKey + " element in the server configuration");
+        }
+        parent.appendChild(element);
+    }
+
+    private static String getParentKey(String key) {
+        int i = key.indexOf('/');
+        return i < 0 ? "" : key.substring(0, i);
+    }
+
+    private static Map<String, Element> getUnits(Document doc) {
+        Map<String, Element> units = new LinkedHashMap<>();
+        for (Element child : getChildren(doc.getDocumentElement())) {
+            String name = child.getLocalName();
+            if (PROFILE.equals(name)) {
+                for (Element subsystem : getChildren(child)) {
+                    units.put(PROFILE + "/" + subsystem.getLocalName() + "[" + subsystem.getNamespaceURI() + "]", subsystem);
+                }
+            } else if (EXTENSIONS.equals(name)) {
+                for (Element extension : getChildren(child)) {
+                    units.put(EXTENSIONS + "/" + extension.getLocalName() + "[" + extension.getAttribute("module") + "]", extension);
+                }
+            } else {
+                String id = child.getAttribute("name");
+                units.put(id.isEmpty() ? name : name + "[" + id + "]", child);
+            }
+        }
+        return units;
+    }
+
+    private static Element getChild(Element parent, String localName) {
+        for (Element child : getChildren(parent)) {
+            if (localName.equals(child.getLocalName())) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    private static List<Element> getChildren(Element parent) {
+        List<Element> children = new ArrayList<>();
+        for (Node n = parent.getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (n.getNodeType() == Node.ELEMENT_NODE) {
+                children.add((Element) n);
+            }
+        }
+        return children;
+    }
+
+    // A copy without comments and whitespace only text.
+    private static Element normalize(Element element) {
+        Element copy = (Element) element.cloneNode(true);
+        strip(copy);
+        return copy;
+    }
+
+    private static void strip(Node node) {
+        Node child = node.getFirstChild();
+        while (child != null) {
+            Node next = child.getNextSibling();
+            if (child.getNodeType() == Node.COMMENT_NODE
+                    || (child.getNodeType() == Node.TEXT_NODE && child.getNodeValue().trim().isEmpty())) {
+                node.removeChild(child);
+            } else if (child.getNodeType() == Node.ELEMENT_NODE) {
+                strip(child);
+            }
+            child = next;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.common;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.maven.artifact.Artifact;
+import org.jboss.galleon.ProvisioningException;
+import org.jboss.galleon.runtime.FeaturePackRuntime;
+
+/**
+ * Index of a feature-pack {@code artifact-versions.properties} file. Keys
+ * ({@code groupId:artifactId} optionally followed by {@code ::classifier}) and
+ * values are stored in a single string, entries are located with an open
+ * addressing table of offsets. The index is persisted in a binary file that
+ * is reused as long as the properties file size and last modified time are
+ * unchanged.
+ *
+ * @author jdenise
+ */
+public final class ArtifactVersionsIndex {
+
+    private static final int MAGIC = 0x57464a49;
+    private static final int FORMAT_VERSION = 1;
+    private static final Map<Path, ArtifactVersionsIndex> LOADED = new ConcurrentHashMap<>();
+
+    private final long sourceSize;
+    private final long sourceLastModified;
+    private final String table;
+    // For each entry: key start, value start (end of key) and value end in the table.
+    private final int[] offsets;
+    // Entry index + 1, 0 for an empty slot.
+    private final int[] slots;
+    private final Map<String, String> pool = new HashMap<>();
+
+    private ArtifactVersionsIndex(long sourceSize, long sourceLastModified, String table, int[] offsets, int[] slots) {
+        this.sourceSize = sourceSize;
+        this.sourceLastModified = sourceLastModified;
+        this.table = table;
+        this.offsets = offsets;
+        this.slots = slots;
+    }
+
+    /**
+     * Get the index of a feature-pack, persisted in the provided directory.
+     *
+     * @param fprt The feature-pack.
+     * @param indexDir The directory in which the index file is stored.
+     * @return The index or null if the feature-pack has no artifact versions.
+     * @throws ProvisioningException
+     * @throws IOException
+     */
+    public static ArtifactVersionsIndex load(FeaturePackRuntime fprt, Path indexDir) throws ProvisioningException, IOException {
+        Path propertiesFile = fprt.getResource(Constants.WILDFLY_ARTIFACT_VERSIONS_RESOURCE_PATH);
+        if (Files.notExists(propertiesFile)) {
+            return null;
+        }
+        return load(propertiesFile, indexDir.resolve(getIndexFileName(fprt.getFPID().toString())));
+    }
+
+    /**
+     * Get the index of a properties file. The index is loaded from the index
+     * file if up to date, otherwise it is built and the index file written.
+     *
+     * @param propertiesFile The artifact versions properties file.
+     * @param indexFile The index file.
+     * @return The index.
+     * @throws IOException
+     */
+    public static ArtifactVersionsIndex load(Path propertiesFile, Path indexFile) throws IOException {
+        long size = Files.size(propertiesFile);
+        long lastModified = Files.getLastModifiedTime(propertiesFile).toMillis();
+        Path key = indexFile.toAbsolutePath();
+        ArtifactVersionsIndex index = LOADED.get(key);
+        if (index != null && index.isUpToDate(size, lastModified)) {
+            return index;
+        }
+        index = read(indexFile);
+        if (index == null || !index.isUpToDate(size, lastModified)) {
+            index = build(propertiesFile, size, lastModified);
+            write(index, indexFile);
+        }
+        LOADED.put(key, index);
+        return index;
+    }
+
+    /**
+     * Forget the loaded index of an index file, the next load reads the file.
+     */
+    static void unload(Path indexFile) {
+        LOADED.remove(indexFile.toAbsolutePath());
+    }
+
+    /**
+     * Build an index without persisting it.
+     *
+     * @param propertiesFile The artifact versions properties file.
+     * @return The index.
+     * @throws IOException
+     */
+    public static ArtifactVersionsIndex build(Path propertiesFile) throws IOException {
+        return build(propertiesFile, Files.size(propertiesFile), Files.getLastModifiedTime(propertiesFile).toMillis());
+    }
+
+    static String getIndexFileName(String fpid) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < fpid.length(); i++) {
+            char c = fpid.charAt(i);
+            builder.append(Character.isLetterOrDigit(c) || c == '.' || c == '-' || c == '_' ? c : '_');
+        }
+        return builder.append(".idx").toString();
+    }
+
+    public int size() {
+        return offsets.length / 3;
+    }
+
+    /**
+     * Lookup the value of a key.
+     *
+     * @param key The key, {@code groupId:artifactId[::classifier]}.
+     * @return The value, {@code groupId:artifactId:version:classifier:extension}
+     * or null if the key is not present.
+     */
+    public String lookup(String key) {
+        int entry = find(key);
+        return entry < 0 ? null : table.substring(offsets[entry + 1], offsets[entry + 2]);
+    }
+
+    /**
+     * Get the artifact of a key. The groupId, version and extension strings
+     * are shared between the artifacts created by this index.
+     *
+     * @param key The key, {@code groupId:artifactId[::classifier]}.
+     * @return A new artifact or null if the key is not present.
+     */
+    public Artifact getArtifact(String key) {
+        int entry = find(key);
+        if (entry < 0) {
+            return null;
+        }
+        synchronized (pool) {
+            return Utils.getArtifact(table, offsets[entry + 1], offsets[entry + 2], pool);
+        }
+    }
+
+    public Artifact getArtifact(String groupId, String artifactId) {
+        return getArtifact(groupId + ":" + artifactId);
+    }
+
+    private boolean isUpToDate(long size, long lastModified) {
+        return sourceSize == size && sourceLastModified == lastModified;
+    }
+
+    private int find(String key) {
+        int mask = slots.length - 1;
+        int i = mix(key.hashCode()) & mask;
+        int len = key.length();
+        int slot;
+        while ((slot = slots[i]) != 0) {
+            int entry = (slot - 1) * 3;
+            int start = offsets[entry];
+            if (offsets[entry + 1] - start == len && table.regionMatches(start, key, 0, len)) {
+                return entry;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    private static int mix(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    private static ArtifactVersionsIndex build(Path propertiesFile, long size, long lastModified) throws IOException {
+        StringBuilder table = new StringBuilder();
+        List<int[]> entries = new ArrayList<>();
+        Map<String, Integer> positions = new HashMap<>();
+        PropertiesParser.parse(propertiesFile, StandardCharsets.UTF_8, PropertiesParser.Syntax.KEY_VALUE_LINES, (k, v) -> {
+            int[] entry = {table.length(), table.length() + k.length(), table.length() + k.length() + v.length()};
+            table.append(k).append(v);
+            Integer previous = positions.get(k);
+            if (previous == null) {
+                positions.put(k, entries.size());
+                entries.add(entry);
+            } else {
+                // Last definition wins, as with java.util.Properties.
+                entries.set(previous, entry);
+            }
+        });
+        int[] offsets = new int[entries.size() * 3];
+        for (int i = 0; i < entries.size(); i++) {
+            System.arraycopy(entries.get(i), 0, offsets, i * 3, 3);
+        }
+        int capacity = Integer.highestOneBit(Math.max(entries.size(), 1) * 2 - 1) << 1;
+        int[] slots = new int[capacity];
+        String content = table.toString();
+        for (int i = 0; i < entries.size(); i++) {
+            int start = offsets[i * 3];
+            int slot = mix(content.substring(start, offsets[i * 3 + 1]).hashCode()) & (capacity - 1);
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            slots[slot] = i + 1;
+        }
+        return new ArtifactVersionsIndex(size, lastModified, content, offsets, slots);
+    }
+
+    private static ArtifactVersionsIndex read(Path indexFile) {
+        if (Files.notExists(indexFile)) {
+            return null;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(indexFile));
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                return null;
+            }
+            long size = buffer.getLong();
+            long lastModified = buffer.getLong();
+            byte[] tableBytes = new byte[buffer.getInt()];
+            buffer.get(tableBytes);
+            int[] offsets = new int[buffer.getInt()];
+            buffer.asIntBuffer().get(offsets);
+            buffer.position(buffer.position() + offsets.length * 4);
+            int[] slots = new int[buffer.getInt()];
+            buffer.asIntBuffer().get(slots);
+            return new ArtifactVersionsIndex(size, lastModified, new String(tableBytes, StandardCharsets.UTF_8), offsets, slots);
+        } catch (IOException | RuntimeException ex) {
+            // Corrupted or truncated, will be rebuilt.
+            return null;
+        }
+    }
+
+    private static void write(ArtifactVersionsIndex index, Path indexFile) throws IOException {
+        byte[] tableBytes = index.table.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(36 + tableBytes.length + (index.offsets.length + index.slots.length) * 4);
+        buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(index.sourceSize).putLong(index.sourceLastModified);
+        buffer.putInt(tableBytes.length).put(tableBytes);
+        buffer.putInt(index.offsets.length);
+        buffer.asIntBuffer().put(index.offsets);
+        buffer.position(buffer.position() + index.offsets.length * 4);
+        buffer.putInt(index.slots.length);
+        buffer.asIntBuffer().put(index.slots);
+        Path dir = indexFile.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, indexFile.getFileName().toString(), ".tmp");
+        try {
+            Files.write(tmp, buffer.array());
+            try {
+                Files.move(tmp, indexFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
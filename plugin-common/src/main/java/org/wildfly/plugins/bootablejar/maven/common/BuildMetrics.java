@@ -0,0 +1,192 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.common;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.plugin.logging.Log;
+import org.jboss.dmr.ModelNode;
+
+/**
+ * An {@link Instrumentation} that aggregates the recorded values. The values
+ * are exported as a JSON report and logged as a summary.
+ *
+ * @author jdenise
+ */
+public class BuildMetrics implements Instrumentation {
+
+    public static final String REPORT_FILE = "bootable-jar-build-metrics.json";
+
+    static class Phase {
+
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+        private long files;
+        private long bytes;
+
+        long getCount() {
+            return count;
+        }
+
+        long getTotalMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(totalNanos);
+        }
+
+        long getMaxMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(maxNanos);
+        }
+
+        long getFiles() {
+            return files;
+        }
+
+        long getBytes() {
+            return bytes;
+        }
+    }
+
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Phase> phases = new LinkedHashMap<>();
+    private final Map<String, Long> counters = new LinkedHashMap<>();
+
+    @Override
+    public Span start(String phase) {
+        long start = System.nanoTime();
+        synchronized (this) {
+            getPhase(phase);
+        }
+        return () -> {
+            long duration = System.nanoTime() - start;
+            synchronized (BuildMetrics.this) {
+                Phase p = getPhase(phase);
+                p.count += 1;
+                p.totalNanos += duration;
+                p.maxNanos = Math.max(p.maxNanos, duration);
+            }
+        };
+    }
+
+    @Override
+    public synchronized void increment(String counter, long delta) {
+        counters.merge(counter, delta, Long::sum);
+    }
+
+    @Override
+    public synchronized void processed(String phase, long files, long bytes) {
+        Phase p = getPhase(phase);
+        p.files += files;
+        p.bytes += bytes;
+    }
+
+    synchronized Phase getPhase(String phase) {
+        return phases.computeIfAbsent(phase, k -> new Phase());
+    }
+
+    synchronized Long getCounter(String counter) {
+        return counters.get(counter);
+    }
+
+    /**
+     * Build the JSON report.
+     *
+     * @return The report.
+     */
+    public synchronized ModelNode toModelNode() {
+        ModelNode report = new ModelNode();
+        report.get("duration-ms").set(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        ModelNode phasesNode = report.get("phases").setEmptyObject();
+        for (Map.Entry<String, Phase> entry : phases.entrySet()) {
+            Phase p = entry.getValue();
+            ModelNode phase = phasesNode.get(entry.getKey());
+            phase.get("count").set(p.count);
+            phase.get("total-ms").set(p.getTotalMillis());
+            phase.get("max-ms").set(p.getMaxMillis());
+            phase.get("files").set(p.files);
+            phase.get("bytes").set(p.bytes);
+            if (p.totalNanos > 0) {
+                phase.get("bytes-per-second").set(p.bytes * TimeUnit.SECONDS.toNanos(1) / p.totalNanos);
+            }
+        }
+        ModelNode countersNode = report.get("counters").setEmptyObject();
+        for (Map.Entry<String, Long> entry : counters.entrySet()) {
+            countersNode.get(entry.getKey()).set(entry.getValue());
+        }
+        return report;
+    }
+
+    /**
+     * Write the JSON report.
+     *
+     * @param file The report file.
+     * @throws IOException
+     */
+    public void writeReport(Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Files.write(file, toModelNode().toJSONString(false).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Log a summary, the phases are ordered by decreasing time spent.
+     *
+     * @param log The Maven log.
+     */
+    public synchronized void logSummary(Log log) {
+        log.info("Build metrics, total " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) + "ms");
+        List<Map.Entry<String, Phase>> sorted = new ArrayList<>(phases.entrySet());
+        sorted.sort((e1, e2) -> Long.compare(e2.getValue().totalNanos, e1.getValue().totalNanos));
+        for (Map.Entry<String, Phase> entry : sorted) {
+            Phase p = entry.getValue();
+            StringBuilder builder = new StringBuilder();
+            builder.append("  ").append(entry.getKey()).append(": ").append(p.getTotalMillis()).append("ms");
+            if (p.count > 1) {
+                builder.append(" (").append(p.count).append(" runs, max ").append(p.getMaxMillis()).append("ms)");
+            }
+            if (p.files > 0 || p.bytes > 0) {
+                builder.append(", ").append(p.files).append(" files, ").append(p.bytes / 1024).append("KB");
+            }
+            log.info(builder.toString());
+        }
+        for (Map.Entry<String, Long> entry : counters.entrySet()) {
+            log.info("  " + entry.getKey() + ": " + entry.getValue());
+        }
+    }
+
+    /**
+     * Write the JSON report in the project build directory and log the
+     * summary.
+     *
+     * @param ctx The plugin context.
+     * @return The report file.
+     * @throws IOException
+     */
+    public Path report(PluginContext ctx) throws IOException {
+        Path file = Paths.get(ctx.getProject().getBuild().getDirectory()).resolve(REPORT_FILE);
+        writeReport(file);
+        logSummary(ctx.getLog());
+        ctx.getLog().info("Build metrics report written to " + file);
+        return file;
+    }
+}
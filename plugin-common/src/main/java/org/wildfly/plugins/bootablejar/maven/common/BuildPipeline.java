@@ -0,0 +1,227 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the build stages as a dependency graph. A stage starts as soon as the
+ * stages it depends on are done, independent stages run concurrently, for
+ * example the CLI scripts can be loaded while the server is provisioned. The
+ * CLI artifacts are resolved once the feature-pack has been looked up by the
+ * provisioning, the transformed versions of a thin server depend on it:
+ *
+ * <pre>
+ * try (BuildPipeline pipeline = new BuildPipeline(ctx)) {
+ *     Stage&lt;Void&gt; scripts = pipeline.stage("cli-scripts", () -&gt; CliSession.loadCommands(ctx, sessions));
+ *     Stage&lt;Void&gt; provisioning = pipeline.stage("provisioning", () -&gt; provision(handler));
+ *     Stage&lt;List&lt;Path&gt;&gt; artifacts = pipeline.stage("cli-artifacts", () -&gt; Utils.resolveCLIArtifacts(ctx, handler, cliArtifacts), provisioning);
+ *     pipeline.stage("cli", () -&gt; executeCli(artifacts.get()), artifacts, scripts);
+ *     pipeline.await();
+ * }
+ * </pre>
+ *
+ * A stage fails if one of its dependencies fails, without being executed.
+ * Stages run with the context class loader of the thread that created the
+ * pipeline. Each stage is recorded as a phase of the context
+ * {@link Instrumentation}.
+ *
+ * @author jdenise
+ */
+public class BuildPipeline implements AutoCloseable {
+
+    /**
+     * A stage task.
+     */
+    public interface Task<T> {
+
+        T call() throws Exception;
+    }
+
+    /**
+     * A stage task without result.
+     */
+    public interface VoidTask {
+
+        void run() throws Exception;
+    }
+
+    /**
+     * A scheduled stage.
+     */
+    public static final class Stage<T> {
+
+        private final String name;
+        private final CompletableFuture<T> future;
+
+        private Stage(String name, CompletableFuture<T> future) {
+            this.name = name;
+            this.future = future;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isDone() {
+            return future.isDone();
+        }
+
+        /**
+         * Wait for the stage to complete.
+         *
+         * @return The stage result.
+         * @throws Exception The exception thrown by the stage or by the failed
+         * dependency.
+         */
+        public T get() throws Exception {
+            try {
+                return future.get();
+            } catch (ExecutionException ex) {
+                throw unwrap(ex.getCause());
+            } catch (CancellationException ex) {
+                throw new Exception("Stage " + name + " has been cancelled", ex);
+            }
+        }
+    }
+
+    private static final AtomicInteger POOL_COUNTER = new AtomicInteger();
+
+    private final PluginContext ctx;
+    private final ExecutorService executor;
+    private final List<Stage<?>> stages = new ArrayList<>();
+
+    public BuildPipeline(PluginContext ctx) {
+        this(ctx, Math.max(2, Runtime.getRuntime().availableProcessors()));
+    }
+
+    public BuildPipeline(PluginContext ctx, int threads) {
+        this.ctx = ctx;
+        final ClassLoader cl = Thread.currentThread().getContextClassLoader();
+        final int pool = POOL_COUNTER.incrementAndGet();
+        final AtomicInteger counter = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "bootable-jar-pipeline-" + pool + "-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            t.setContextClassLoader(cl);
+            return t;
+        });
+    }
+
+    /**
+     * Schedule a stage.
+     *
+     * @param name The stage name.
+     * @param task The stage task.
+     * @param dependencies The stages that must be complete before this stage
+     * starts.
+     * @return The stage.
+     */
+    public synchronized <T> Stage<T> stage(String name, Task<T> task, Stage<?>... dependencies) {
+        Objects.requireNonNull(task);
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[dependencies.length];
+        for (int i = 0; i < dependencies.length; i++) {
+            futures[i] = dependencies[i].future;
+        }
+        CompletableFuture<T> future = CompletableFuture.allOf(futures).thenApplyAsync(v -> {
+            ctx.debug("Starting build stage %s", name);
+            try (Instrumentation.Span span = ctx.getInstrumentation().start(name)) {
+                return task.call();
+            } catch (RuntimeException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                throw new CompletionException(ex);
+            }
+        }, executor);
+        Stage<T> stage = new Stage<>(name, future);
+        stages.add(stage);
+        return stage;
+    }
+
+    /**
+     * Schedule a stage without result.
+     *
+     * @param name The stage name.
+     * @param task The stage task.
+     * @param dependencies The stages that must be complete before this stage
+     * starts.
+     * @return The stage.
+     */
+    public Stage<Void> stage(String name, VoidTask task, Stage<?>... dependencies) {
+        Objects.requireNonNull(task);
+        return stage(name, () -> {
+            task.run();
+            return null;
+        }, dependencies);
+    }
+
+    /**
+     * Wait for all the scheduled stages. If stages failed, the exception of
+     * the first scheduled failed stage is thrown once all stages are done.
+     *
+     * @throws Exception
+     */
+    public void await() throws Exception {
+        List<Stage<?>> scheduled;
+        synchronized (this) {
+            scheduled = new ArrayList<>(stages);
+        }
+        Exception failure = null;
+        for (Stage<?> stage : scheduled) {
+            try {
+                stage.get();
+            } catch (Exception ex) {
+                if (failure == null) {
+                    failure = ex;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Stop the pipeline threads, the running stages are interrupted.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private static Exception unwrap(Throwable t) {
+        while (t instanceof CompletionException && t.getCause() != null) {
+            t = t.getCause();
+        }
+        if (t instanceof Exception) {
+            return (Exception) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return new Exception(t);
+    }
+}
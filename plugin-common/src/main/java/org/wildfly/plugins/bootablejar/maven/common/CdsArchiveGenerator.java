@@ -0,0 +1,264 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.common;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generate a dynamic CDS archive of the classes loaded when the bootable jar
+ * starts. The packaged bootable jar is started once with the local JVM and the
+ * launch command used at runtime, {@code java -jar <jar>} from the jar
+ * directory, bound to the loopback interface, and stopped as soon as the
+ * server is started. The JVM dumps the archive when exiting.
+ *
+ * The JVM only uses the archive with the class path it was created for (same
+ * jar path, size and modification time), the archive can't be packaged in the
+ * jar. It is written next to the jar with an argument file of the JVM options
+ * that use it, the bootable jar is launched from its directory:
+ *
+ * <pre>
+ * java @app-bootable-cds.options -jar app-bootable.jar
+ * </pre>
+ *
+ * Archives are cached by the fingerprint of the jar and of the JVM, the
+ * training boot only happens when one of them changes. The modification time
+ * of the jar is set to {@link PluginContext#getArchiveTimestamp()}, a jar
+ * repackaged with the same content keeps the same fingerprint and the cached
+ * archive stays valid for the JVM.
+ *
+ * @author jdenise
+ */
+public class CdsArchiveGenerator {
+
+    public static final String ARCHIVE_EXTENSION = ".jsa";
+    public static final String JVM_OPTIONS_SUFFIX = "-cds.options";
+    // First Java version that supports -XX:ArchiveClassesAtExit.
+    public static final int MIN_JAVA_VERSION = 13;
+
+    private static final int TRAINING_PORT_OFFSET = 30000;
+    private static final String STARTED = "WFLYSRV0025";
+    private static final String STARTED_WITH_ERRORS = "WFLYSRV0026";
+    private static final int MAX_TRACES = 50;
+
+    private final PluginContext ctx;
+    private final Path jar;
+    private final Path cacheDir;
+    private final String javaCmd;
+
+    public CdsArchiveGenerator(PluginContext ctx, Path jar, Path cacheDir) {
+        this.ctx = ctx;
+        this.jar = jar.toAbsolutePath();
+        this.cacheDir = cacheDir;
+        javaCmd = Paths.get(System.getProperty("java.home")).resolve("bin").resolve("java").toString();
+    }
+
+    /**
+     * @return The feature version of the running JVM.
+     */
+    public static int getJavaVersion() {
+        String version = System.getProperty("java.specification.version");
+        if (version.startsWith("1.")) {
+            version = version.substring(2);
+        }
+        return Integer.parseInt(version);
+    }
+
+    /**
+     * @param jar The bootable jar.
+     * @return The CDS archive of the bootable jar, in the jar directory.
+     */
+    public static Path getArchive(Path jar) {
+        return jar.resolveSibling(getBaseName(jar) + ARCHIVE_EXTENSION);
+    }
+
+    /**
+     * @param jar The bootable jar.
+     * @return The argument file of the JVM options that use the CDS archive,
+     * in the jar directory.
+     */
+    public static Path getJvmOptionsFile(Path jar) {
+        return jar.resolveSibling(getBaseName(jar) + JVM_OPTIONS_SUFFIX);
+    }
+
+    private static String getBaseName(Path jar) {
+        String name = jar.getFileName().toString();
+        return name.endsWith(".jar") ? name.substring(0, name.length() - 4) : name;
+    }
+
+    /**
+     * Add the CDS archive next to the bootable jar, doing a training boot if
+     * no archive exists for the jar.
+     *
+     * @param timeout Maximum time in seconds for the server to start and stop.
+     * @return true if a training boot happened, false if the archive was
+     * cached.
+     * @throws Exception
+     */
+    public boolean generate(long timeout) throws Exception {
+        Path archive = getArchive(jar);
+        Path options = getJvmOptionsFile(jar);
+        Files.deleteIfExists(archive);
+        Files.deleteIfExists(options);
+        Files.setLastModifiedTime(jar, FileTime.fromMillis(ctx.getArchiveTimestamp()));
+        String fingerprint = fingerprint(jar, getJvmIdentity());
+        Path cached = cacheDir.resolve(fingerprint + ARCHIVE_EXTENSION);
+        boolean trained = false;
+        if (Files.notExists(cached)) {
+            Files.createDirectories(cacheDir);
+            Path tmp = cacheDir.resolve(fingerprint + ARCHIVE_EXTENSION + ".tmp");
+            Files.deleteIfExists(tmp);
+            try {
+                train(tmp, timeout);
+                if (Files.notExists(tmp)) {
+                    throw new Exception("The training boot didn't produce the CDS archive " + tmp);
+                }
+                Files.move(tmp, cached, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            trained = true;
+        } else {
+            ctx.debug("Using cached CDS archive %s", cached);
+        }
+        Files.copy(cached, archive);
+        Files.write(options, getJvmOptions(jar), StandardCharsets.UTF_8);
+        return trained;
+    }
+
+    /**
+     * The JVM options that use the archive. As the jar path given to
+     * {@code -jar}, the archive path is relative to the jar directory, the
+     * working directory of the launched JVM. If the archive doesn't match the
+     * JVM or the jar, it is ignored.
+     */
+    static List<String> getJvmOptions(Path jar) {
+        List<String> options = new ArrayList<>();
+        options.add("-XX:SharedArchiveFile=" + getArchive(jar).getFileName());
+        options.add("-Xshare:auto");
+        return options;
+    }
+
+    /**
+     * An archive can only be used by the JVM that produced it.
+     */
+    static String getJvmIdentity() {
+        return System.getProperty("java.home") + "|" + System.getProperty("java.vm.vendor") + "|"
+                + System.getProperty("java.vm.version") + "|" + System.getProperty("os.arch");
+    }
+
+    /**
+     * Compute the fingerprint of the bootable jar. The JVM checks the name,
+     * size and modification time of the jar, they are part of the fingerprint
+     * with the jar content.
+     */
+    static String fingerprint(Path jar, String jvmIdentity) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-1");
+        digest.update(jvmIdentity.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update((jar.getFileName() + "|" + Files.size(jar) + "|" + Files.getLastModifiedTime(jar).toMillis()).
+                getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        byte[] buffer = new byte[8192];
+        try (InputStream in = Files.newInputStream(jar)) {
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        StringBuilder builder = new StringBuilder();
+        for (byte b : digest.digest()) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    private void train(Path archive, long timeout) throws Exception {
+        // Same class path as at runtime, the server is installed by the bootable jar in a temporary directory.
+        List<String> command = new ArrayList<>();
+        command.add(javaCmd);
+        command.add("-XX:ArchiveClassesAtExit=" + archive.toAbsolutePath());
+        command.add("-jar");
+        command.add(jar.getFileName().toString());
+        command.add("-Djboss.bind.address=127.0.0.1");
+        command.add("-Djboss.bind.address.management=127.0.0.1");
+        command.add("-Djboss.socket.binding.port-offset=" + TRAINING_PORT_OFFSET);
+        ctx.debug("CDS training boot %s", command);
+        Process process = new ProcessBuilder(command).directory(jar.getParent().toFile()).redirectErrorStream(true).start();
+        Deque<String> traces = new ArrayDeque<>();
+        CountDownLatch started = new CountDownLatch(1);
+        Thread reader = new Thread(() -> {
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    synchronized (traces) {
+                        traces.add(line);
+                        if (traces.size() > MAX_TRACES) {
+                            traces.removeFirst();
+                        }
+                    }
+                    if (line.contains(STARTED) || line.contains(STARTED_WITH_ERRORS)) {
+                        started.countDown();
+                    }
+                }
+            } catch (IOException ex) {
+                // The process has been destroyed.
+            } finally {
+                started.countDown();
+            }
+        }, "cds-training-output");
+        reader.setDaemon(true);
+        reader.start();
+        try {
+            if (!started.await(timeout, TimeUnit.SECONDS) || !process.isAlive()) {
+                throw new Exception("CDS training boot failed" + getTraces(traces));
+            }
+            // The archive is dumped by the JVM shutdown.
+            process.destroy();
+            if (!process.waitFor(timeout, TimeUnit.SECONDS)) {
+                throw new Exception("CDS training server didn't stop" + getTraces(traces));
+            }
+        } finally {
+            if (process.isAlive()) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    private static String getTraces(Deque<String> traces) {
+        List<String> lines;
+        synchronized (traces) {
+            lines = new ArrayList<>(traces);
+        }
+        return lines.isEmpty() ? "" : ":" + System.lineSeparator() + String.join(System.lineSeparator(), lines);
+    }
+}
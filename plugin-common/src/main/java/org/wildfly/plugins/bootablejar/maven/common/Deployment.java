@@ -0,0 +1,139 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.common;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A deployment added to the server. The deployment name defaults to the file
+ * name and the runtime name to the deployment name. A deployment can depend
+ * on other deployments, identified by their name, it is then deployed after
+ * them.
+ *
+ * @author jdenise
+ */
+public class Deployment {
+
+    private File file;
+    private String name;
+    private String runtimeName;
+    private List<String> dependencies = Collections.emptyList();
+
+    public Deployment() {
+    }
+
+    Deployment(File file, String name, String runtimeName) {
+        this.file = file;
+        this.name = name;
+        this.runtimeName = runtimeName;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public void setFile(File file) {
+        this.file = file;
+    }
+
+    public String getName() {
+        return name == null ? file.getName() : name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getRuntimeName() {
+        return runtimeName == null ? getName() : runtimeName;
+    }
+
+    public void setRuntimeName(String runtimeName) {
+        this.runtimeName = runtimeName;
+    }
+
+    public List<String> getDependencies() {
+        return dependencies;
+    }
+
+    public void setDependencies(List<String> dependencies) {
+        this.dependencies = dependencies == null ? Collections.emptyList() : dependencies;
+    }
+
+    /**
+     * Order deployments so that each deployment follows its dependencies.
+     * Independent deployments keep their relative order.
+     *
+     * @param deployments The deployments.
+     * @return The ordered deployments.
+     * @throws IllegalArgumentException If a name is duplicated, a dependency
+     * is unknown or dependencies are cyclic.
+     */
+    public static List<Deployment> sort(List<Deployment> deployments) {
+        Map<String, Deployment> byName = new HashMap<>();
+        for (Deployment d : deployments) {
+            if (byName.put(d.getName(), d) != null) {
+                throw new IllegalArgumentException("Deployment " + d.getName() + " is defined more than once");
+            }
+        }
+        for (Deployment d : deployments) {
+            for (String dep : d.getDependencies()) {
+                if (!byName.containsKey(dep)) {
+                    throw new IllegalArgumentException("Deployment " + d.getName() + " depends on unknown deployment " + dep);
+                }
+            }
+        }
+        List<Deployment> sorted = new ArrayList<>(deployments.size());
+        List<Deployment> remaining = new ArrayList<>(deployments);
+        while (!remaining.isEmpty()) {
+            Deployment next = null;
+            for (Deployment d : remaining) {
+                boolean ready = true;
+                for (String dep : d.getDependencies()) {
+                    if (!sorted.contains(byName.get(dep))) {
+                        ready = false;
+                        break;
+                    }
+                }
+                if (ready) {
+                    next = d;
+                    break;
+                }
+            }
+            if (next == null) {
+                List<String> names = new ArrayList<>();
+                for (Deployment d : remaining) {
+                    names.add(d.getName());
+                }
+                throw new IllegalArgumentException("Cyclic dependencies between deployments " + names);
+            }
+            remaining.remove(next);
+            sorted.add(next);
+        }
+        return sorted;
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+}
@@ -0,0 +1,409 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.common;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Add Jandex annotation indexes ({@code META-INF/jandex.idx}) to a deployment
+ * and to its jars, the server then doesn't scan the classes when deploying.
+ * The Jandex library of the provisioned server is used, the indexes format is
+ * the one the server reads.
+ *
+ * The classes of a web archive ({@code WEB-INF/classes}) are indexed in
+ * {@code WEB-INF/classes/META-INF/jandex.idx}, the jars are indexed
+ * concurrently. Indexed deployments and jars are cached by content hash and
+ * by the hash of the Jandex library, unchanged archives are not indexed again
+ * by the same Jandex version. Jars that already contain an index are kept as
+ * is.
+ *
+ * @author jdenise
+ */
+public class DeploymentIndexer implements AutoCloseable {
+
+    public static final String INDEX = "META-INF/jandex.idx";
+
+    private static final String JANDEX_MODULE = "org/jboss/jandex/main";
+    private static final String WEB_INF_CLASSES = "WEB-INF/classes/";
+    private static final String CLASS = ".class";
+
+    private final PluginContext ctx;
+    private final Path cacheDir;
+    private final URLClassLoader loader;
+    private final Constructor<?> indexerConstructor;
+    private final Method indexMethod;
+    private final Method completeMethod;
+    private final Constructor<?> writerConstructor;
+    private final Method writeMethod;
+
+    private DeploymentIndexer(PluginContext ctx, Path cacheDir, Path jandexJar) throws Exception {
+        this.ctx = ctx;
+        this.cacheDir = cacheDir;
+        loader = new URLClassLoader(new URL[]{jandexJar.toUri().toURL()}, null);
+        Class<?> indexer = loader.loadClass("org.jboss.jandex.Indexer");
+        Class<?> index = loader.loadClass("org.jboss.jandex.Index");
+        Class<?> writer = loader.loadClass("org.jboss.jandex.IndexWriter");
+        indexerConstructor = indexer.getConstructor();
+        indexMethod = indexer.getMethod("index", InputStream.class);
+        completeMethod = indexer.getMethod("complete");
+        writerConstructor = writer.getConstructor(OutputStream.class);
+        writeMethod = writer.getMethod("write", index);
+    }
+
+    /**
+     * Create an indexer with the Jandex library of a server.
+     *
+     * @param ctx The plugin context.
+     * @param jbossHome The server.
+     * @param cacheDir The indexed archives cache.
+     * @return The indexer or null if the server has no Jandex module.
+     * @throws Exception
+     */
+    public static DeploymentIndexer create(PluginContext ctx, Path jbossHome, Path cacheDir) throws Exception {
+        Path jar = findJandexJar(jbossHome);
+        if (jar == null) {
+            return null;
+        }
+        // Indexes written by another Jandex version are not reused.
+        return new DeploymentIndexer(ctx, cacheDir.resolve(DeploymentStager.computeHash(jar)), jar);
+    }
+
+    static Path findJandexJar(Path jbossHome) throws IOException {
+        Path modules = jbossHome.resolve("modules");
+        if (Files.notExists(modules)) {
+            return null;
+        }
+        List<Path> found = new ArrayList<>();
+        Files.walkFileTree(modules, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (dir.toString().replace('\\', '/').endsWith(JANDEX_MODULE)) {
+                    try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.jar")) {
+                        for (Path jar : stream) {
+                            found.add(jar);
+                            return FileVisitResult.TERMINATE;
+                        }
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    /**
+     * Index a deployment archive.
+     *
+     * @param archive The deployment.
+     * @return The indexed deployment, in the cache.
+     * @throws Exception
+     */
+    public Path index(Path archive) throws Exception {
+        String hash = DeploymentStager.computeHash(archive);
+        String name = archive.getFileName().toString();
+        Path indexed = cacheDir.resolve(hash).resolve(name);
+        if (Files.exists(indexed)) {
+            ctx.debug("Using cached indexed deployment %s", indexed);
+            return indexed;
+        }
+        Files.createDirectories(indexed.getParent());
+        Map<String, Path> jars = new HashMap<>();
+        byte[] rootIndex;
+        try (ZipFile zip = new ZipFile(archive.toFile())) {
+            try (BuildPipeline pipeline = new BuildPipeline(ctx)) {
+                Map<String, BuildPipeline.Stage<Path>> stages = new HashMap<>();
+                Enumeration<? extends ZipEntry> entries = zip.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    if (!entry.isDirectory() && entry.getName().endsWith(".jar")) {
+                        stages.put(entry.getName(), pipeline.stage("jandex-index", () -> indexJar(zip, entry)));
+                    }
+                }
+                rootIndex = indexRoot(zip, name.endsWith(".war") ? WEB_INF_CLASSES : "");
+                pipeline.await();
+                for (Map.Entry<String, BuildPipeline.Stage<Path>> stage : stages.entrySet()) {
+                    jars.put(stage.getKey(), stage.getValue().get());
+                }
+            }
+            Path tmp = Files.createTempFile(indexed.getParent(), name, ".tmp");
+            try {
+                String rootIndexName = (name.endsWith(".war") ? WEB_INF_CLASSES : "") + INDEX;
+                try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(tmp))) {
+                    Enumeration<? extends ZipEntry> entries = zip.entries();
+                    while (entries.hasMoreElements()) {
+                        ZipEntry entry = entries.nextElement();
+                        out.putNextEntry(new ZipEntry(entry.getName()));
+                        Path jar = jars.get(entry.getName());
+                        if (jar != null) {
+                            Files.copy(jar, out);
+                        } else {
+                            try (InputStream in = zip.getInputStream(entry)) {
+                                copy(in, out);
+                            }
+                        }
+                        out.closeEntry();
+                    }
+                    if (rootIndex != null) {
+                        out.putNextEntry(new ZipEntry(rootIndexName));
+                        out.write(rootIndex);
+                        out.closeEntry();
+                    }
+                }
+                move(tmp, indexed);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        }
+        return indexed;
+    }
+
+    /**
+     * Index the classes of an exploded deployment and replace its jars with
+     * indexed jars.
+     *
+     * @param dir The exploded deployment, updated in place.
+     * @throws Exception
+     */
+    public void indexExploded(Path dir) throws Exception {
+        Path classes = dir.getFileName().toString().endsWith(".war") ? dir.resolve(WEB_INF_CLASSES) : dir;
+        List<Path> jars = new ArrayList<>();
+        List<Path> classFiles = new ArrayList<>();
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                String fileName = file.getFileName().toString();
+                if (fileName.endsWith(".jar")) {
+                    jars.add(file);
+                } else if (fileName.endsWith(CLASS) && file.startsWith(classes)) {
+                    classFiles.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        try (BuildPipeline pipeline = new BuildPipeline(ctx)) {
+            for (Path jar : jars) {
+                pipeline.stage("jandex-index", () -> {
+                    Path indexed;
+                    try (ZipFile zip = new ZipFile(jar.toFile())) {
+                        indexed = indexJar(zip, null);
+                    }
+                    if (indexed != null) {
+                        // The exploded deployment files can be links, the file is replaced, not updated.
+                        Files.delete(jar);
+                        Files.copy(indexed, jar);
+                    }
+                });
+            }
+            Path index = classes.resolve(INDEX);
+            if (!classFiles.isEmpty() && Files.notExists(index)) {
+                Object indexer = indexerConstructor.newInstance();
+                for (Path classFile : classFiles) {
+                    try (InputStream in = new BufferedInputStream(Files.newInputStream(classFile))) {
+                        invoke(indexMethod, indexer, in);
+                    }
+                }
+                Files.createDirectories(index.getParent());
+                Files.write(index, writeIndex(indexer));
+            }
+            pipeline.await();
+        }
+    }
+
+    /**
+     * Index the classes located in an archive directory.
+     *
+     * @return The index or null if the directory has no classes or is already
+     * indexed.
+     */
+    private byte[] indexRoot(ZipFile zip, String prefix) throws Exception {
+        if (zip.getEntry(prefix + INDEX) != null) {
+            return null;
+        }
+        Object indexer = indexerConstructor.newInstance();
+        boolean hasClasses = false;
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            if (entry.getName().startsWith(prefix) && entry.getName().endsWith(CLASS)) {
+                try (InputStream in = zip.getInputStream(entry)) {
+                    invoke(indexMethod, indexer, in);
+                }
+                hasClasses = true;
+            }
+        }
+        return hasClasses ? writeIndex(indexer) : null;
+    }
+
+    /**
+     * Index a jar located in an archive, or the jar itself if the entry is
+     * null.
+     *
+     * @return The cached indexed jar or null if the jar doesn't need to be
+     * changed.
+     */
+    private Path indexJar(ZipFile zip, ZipEntry entry) throws Exception {
+        byte[] content;
+        if (entry == null) {
+            content = Files.readAllBytes(Paths.get(zip.getName()));
+        } else {
+            try (InputStream in = zip.getInputStream(entry)) {
+                content = readAll(in);
+            }
+        }
+        MessageDigest digest = MessageDigest.getInstance("SHA-1");
+        String hash = toHex(digest.digest(content));
+        Path cached = cacheDir.resolve("jars").resolve(hash + ".jar");
+        Path unchanged = cacheDir.resolve("jars").resolve(hash + ".unchanged");
+        if (Files.exists(cached)) {
+            return cached;
+        }
+        if (Files.exists(unchanged)) {
+            return null;
+        }
+        Files.createDirectories(cached.getParent());
+        Object indexer = indexerConstructor.newInstance();
+        boolean hasClasses = false;
+        ByteArrayOutputStream rewritten = new ByteArrayOutputStream(content.length + 1024);
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(content));
+                ZipOutputStream out = new ZipOutputStream(rewritten)) {
+            ZipEntry jarEntry;
+            while ((jarEntry = in.getNextEntry()) != null) {
+                if (jarEntry.getName().equals(INDEX)) {
+                    markUnchanged(unchanged);
+                    return null;
+                }
+                out.putNextEntry(new ZipEntry(jarEntry.getName()));
+                if (jarEntry.getName().endsWith(CLASS)) {
+                    byte[] classContent = readAll(in);
+                    invoke(indexMethod, indexer, new ByteArrayInputStream(classContent));
+                    out.write(classContent);
+                    hasClasses = true;
+                } else {
+                    copy(in, out);
+                }
+                out.closeEntry();
+            }
+            if (!hasClasses) {
+                markUnchanged(unchanged);
+                return null;
+            }
+            out.putNextEntry(new ZipEntry(INDEX));
+            out.write(writeIndex(indexer));
+            out.closeEntry();
+        }
+        Path tmp = Files.createTempFile(cached.getParent(), hash, ".tmp");
+        try {
+            Files.write(tmp, rewritten.toByteArray());
+            move(tmp, cached);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return cached;
+    }
+
+    private static void markUnchanged(Path marker) throws IOException {
+        try {
+            Files.createFile(marker);
+        } catch (FileAlreadyExistsException ex) {
+            // The same jar has been checked concurrently.
+        }
+    }
+
+    private byte[] writeIndex(Object indexer) throws Exception {
+        Object index = invoke(completeMethod, indexer);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        invoke(writeMethod, writerConstructor.newInstance(out), index);
+        return out.toByteArray();
+    }
+
+    private static Object invoke(Method method, Object target, Object... args) throws Exception {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw ex;
+        }
+    }
+
+    private static void move(Path tmp, Path target) throws IOException {
+        try {
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        copy(in, out);
+        return out.toByteArray();
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        loader.close();
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.common;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Stage deployments in the server content repository. The content is
+ * identified by its SHA-1, as computed by the server, and placed in the
+ * {@code standalone/data/content/<2 first hex digits>/<other hex digits>/content}
+ * layout. The deployment is then added with a reference to the content hash,
+ * the server doesn't copy the archive.
+ *
+ * A copy of the content is kept in a cache directory, it is hard linked in
+ * the server when possible. The hash of a deployment is stored with its size
+ * and last modified time in a stamp file named after the deployment path, an
+ * unchanged archive is not hashed again.
+ *
+ * @author jdenise
+ */
+public class DeploymentStager {
+
+    /**
+     * The server directory, relative to the server base directory, in which
+     * exploded deployments are placed.
+     */
+    public static final String EXPLODED_DIR = "exploded-deployments";
+    public static final String EXPLODED_RELATIVE_TO = "jboss.server.base.dir";
+
+    private static final String STAMP_SUFFIX = ".sha1";
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final Path cacheDir;
+
+    public DeploymentStager(Path cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * Get the SHA-1 of a deployment, computed if the deployment changed since
+     * the last call.
+     *
+     * @param deployment The deployment archive.
+     * @return The hexadecimal SHA-1.
+     * @throws IOException
+     */
+    public String getHash(Path deployment) throws IOException {
+        String stamp = getStamp(deployment);
+        // Deployments with the same file name can be located in different directories.
+        Path stampFile = cacheDir.resolve(hash(deployment.toAbsolutePath().normalize().toString()) + STAMP_SUFFIX);
+        if (Files.exists(stampFile)) {
+            String[] content = new String(Files.readAllBytes(stampFile), StandardCharsets.UTF_8).trim().split(" ");
+            if (content.length == 2 && content[0].equals(stamp)) {
+                return content[1];
+            }
+        }
+        String hash = computeHash(deployment);
+        Files.createDirectories(cacheDir);
+        // Hashes are computed concurrently, a stamp file is never read partially written.
+        Path tmp = Files.createTempFile(cacheDir, stampFile.getFileName().toString(), ".tmp");
+        try {
+            Files.write(tmp, (stamp + " " + hash).getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.move(tmp, stampFile, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp, stampFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return hash;
+    }
+
+    private static String hash(String value) throws IOException {
+        try {
+            return toHex(MessageDigest.getInstance("SHA-1").digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    private static String getStamp(Path file) throws IOException {
+        return Files.size(file) + ":" + Files.getLastModifiedTime(file).toMillis();
+    }
+
+    static String computeHash(Path file) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException(ex);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Get the location of a content in a content repository.
+     *
+     * @param contentRoot The content repository root directory.
+     * @param hash The content hash.
+     * @return The content file.
+     */
+    public static Path getContentPath(Path contentRoot, String hash) {
+        return contentRoot.resolve(hash.substring(0, 2)).resolve(hash.substring(2)).resolve("content");
+    }
+
+    /**
+     * Place the deployment content in the server content repository.
+     *
+     * @param deployment The deployment archive.
+     * @param hash The deployment hash.
+     * @param jbossHome The server.
+     * @return true if the content has been placed, false if the server
+     * already contains the content.
+     * @throws IOException
+     */
+    public boolean stage(Path deployment, String hash, Path jbossHome) throws IOException {
+        Path target = getContentPath(jbossHome.resolve(Constants.STANDALONE).resolve("data").resolve("content"), hash);
+        if (Files.exists(target)) {
+            return false;
+        }
+        Path cached = getContentPath(cacheDir.resolve("content"), hash);
+        if (Files.notExists(cached)) {
+            Files.createDirectories(cached.getParent());
+            Path tmp = Files.createTempFile(cached.getParent(), "content", ".tmp");
+            try {
+                Files.copy(deployment, tmp, StandardCopyOption.REPLACE_EXISTING);
+                try {
+                    Files.move(tmp, cached, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException ex) {
+                    Files.move(tmp, cached, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        }
+        Files.createDirectories(target.getParent());
+        try {
+            Files.createLink(target, cached);
+        } catch (FileAlreadyExistsException ex) {
+            // Same content staged concurrently for another deployment.
+            return false;
+        } catch (IOException | UnsupportedOperationException ex) {
+            // Cache and server on different file systems.
+            Files.copy(cached, target);
+        }
+        return true;
+    }
+
+    /**
+     * Get the hash of a deployment in the server configuration.
+     *
+     * @param jbossHome The server.
+     * @param name The deployment name.
+     * @return The hexadecimal hash, an empty string for unmanaged content or
+     * null if the deployment is not present.
+     * @throws Exception
+     */
+    public static String getDeployedHash(Path jbossHome, String name) throws Exception {
+        Element deployment = getDeployment(jbossHome, name);
+        if (deployment == null) {
+            return null;
+        }
+        for (Node n = deployment.getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (n.getNodeType() == Node.ELEMENT_NODE && "content".equals(n.getLocalName())) {
+                return ((Element) n).getAttribute("sha1");
+            }
+        }
+        return "";
+    }
+
+    private static Element getDeployment(Path jbossHome, String name) throws Exception {
+        Path config = jbossHome.resolve(Constants.STANDALONE).resolve("configuration").resolve(Constants.STANDALONE_XML);
+        if (Files.notExists(config)) {
+            return null;
+        }
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        Document doc = factory.newDocumentBuilder().parse(config.toFile());
+        NodeList deployments = doc.getElementsByTagNameNS("*", "deployment");
+        for (int i = 0; i < deployments.getLength(); i++) {
+            Element deployment = (Element) deployments.item(i);
+            if (name.equals(deployment.getAttribute("name"))
+                    && "deployments".equals(deployment.getParentNode().getLocalName())) {
+                return deployment;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Place an exploded deployment in the server, files are hard linked when
+     * possible. The previous content of the target directory is removed.
+     *
+     * @param explodedDir The exploded deployment.
+     * @param jbossHome The server.
+     * @param name The deployment name.
+     * @return The exploded deployment path, relative to
+     * {@link #EXPLODED_RELATIVE_TO}.
+     * @throws IOException
+     */
+    public static String stageExploded(Path explodedDir, Path jbossHome, String name) throws IOException {
+        String path = EXPLODED_DIR + "/" + name;
+        Path target = jbossHome.resolve(Constants.STANDALONE).resolve(EXPLODED_DIR).resolve(name);
+        Utils.deleteDir(target);
+        Files.walkFileTree(explodedDir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(target.resolve(explodedDir.relativize(dir).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Path linked = target.resolve(explodedDir.relativize(file).toString());
+                try {
+                    Files.createLink(linked, file);
+                } catch (IOException | UnsupportedOperationException ex) {
+                    Files.copy(file, linked, StandardCopyOption.COPY_ATTRIBUTES);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return path;
+    }
+
+    /**
+     * Get the CLI command that adds or replaces an exploded unmanaged
+     * deployment.
+     *
+     * @param name The deployment name.
+     * @param runtimeName The deployment runtime name.
+     * @param path The exploded deployment path, relative to
+     * {@link #EXPLODED_RELATIVE_TO}.
+     * @param replace true to replace an existing deployment of the same name.
+     * @return The command.
+     */
+    public static String getExplodedDeployCommand(String name, String runtimeName, String path, boolean replace) {
+        return getContentDeployCommand(name, runtimeName, "path=\"" + path + "\",relative-to=" + EXPLODED_RELATIVE_TO + ",archive=false", replace);
+    }
+
+    /**
+     * Get the CLI command that adds or replaces a deployment with staged
+     * content.
+     *
+     * @param name The deployment name.
+     * @param runtimeName The deployment runtime name.
+     * @param hash The content hash.
+     * @param replace true to replace an existing deployment of the same name.
+     * @return The command.
+     */
+    public static String getDeployCommand(String name, String runtimeName, String hash, boolean replace) {
+        StringBuilder bytes = new StringBuilder("bytes{");
+        for (int i = 0; i < hash.length(); i += 2) {
+            if (i > 0) {
+                bytes.append(',');
+            }
+            bytes.append("0x").append(hash, i, i + 2);
+        }
+        bytes.append('}');
+        return getContentDeployCommand(name, runtimeName, "hash=" + bytes, replace);
+    }
+
+    private static String getContentDeployCommand(String name, String runtimeName, String contentItem, boolean replace) {
+        String content = "content=[{" + contentItem + "}]";
+        if (replace) {
+            return ":full-replace-deployment(name=\"" + name + "\",runtime-name=\"" + runtimeName + "\"," + content + ",enabled=true)";
+        }
+        return "/deployment=\"" + name + "\":add(runtime-name=\"" + runtimeName + "\"," + content + ",enabled=true)";
+    }
+}
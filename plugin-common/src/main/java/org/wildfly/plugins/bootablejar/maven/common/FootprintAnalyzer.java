@@ -0,0 +1,491 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.common;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.apache.maven.plugin.logging.Log;
+import org.jboss.dmr.ModelNode;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Analyze the footprint of a provisioned server. The modules are read from
+ * their module.xml descriptor, the on-disk size of each module is computed
+ * and attributed to the layers. WildFly feature-packs packages are named after
+ * the module they provision, a layer owns the modules of the packages it
+ * depends on and their module dependencies. The bytes of the modules that are
+ * only owned by a layer are its exclusive bytes.
+ *
+ * Modules that no module depends on and that are not referenced by a server
+ * configuration (extensions, JDBC drivers, ...) are reported as unreferenced, they are
+ * candidates for removal (deployments can still depend on them).
+ *
+ * @author jdenise
+ */
+public final class FootprintAnalyzer {
+
+    public static final String REPORT_FILE = "bootable-jar-footprint.json";
+
+    private static final String MODULES = "modules";
+    private static final String MODULE_XML = "module.xml";
+    private static final String MAIN_SLOT = "main";
+    // The module started by jboss-modules.
+    private static final String BOOT_MODULE = "org.jboss.as.standalone:main";
+    // Extensions, JDBC drivers, logging handlers, Elytron custom components...
+    private static final Pattern MODULE_ATTRIBUTE = Pattern.compile("\\smodule\\s*=\\s*\"([^\"]+)\"");
+    // ee global modules.
+    private static final Pattern MODULE_ELEMENT = Pattern.compile("<module\\s([^>]*)>");
+    private static final Pattern NAME_ATTRIBUTE = Pattern.compile("\\sname\\s*=\\s*\"([^\"]+)\"");
+    private static final Pattern SLOT_ATTRIBUTE = Pattern.compile("\\sslot\\s*=\\s*\"([^\"]+)\"");
+
+    /**
+     * A JBoss module.
+     */
+    public static final class Module {
+
+        private final String id;
+        private final Path dir;
+        private final Set<String> dependencies = new LinkedHashSet<>();
+        private final Set<String> dependents = new TreeSet<>();
+        private long bytes;
+        private int files;
+
+        private Module(String id, Path dir) {
+            this.id = id;
+            this.dir = dir;
+        }
+
+        /**
+         * The module name and slot, {@code name:slot}.
+         */
+        public String getId() {
+            return id;
+        }
+
+        public Path getDir() {
+            return dir;
+        }
+
+        public Set<String> getDependencies() {
+            return Collections.unmodifiableSet(dependencies);
+        }
+
+        public Set<String> getDependents() {
+            return Collections.unmodifiableSet(dependents);
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public int getFiles() {
+            return files;
+        }
+    }
+
+    /**
+     * The footprint of a layer.
+     */
+    public static final class LayerFootprint {
+
+        private final String name;
+        private final Set<String> modules;
+        private final long bytes;
+        private final long exclusiveBytes;
+
+        private LayerFootprint(String name, Set<String> modules, long bytes, long exclusiveBytes) {
+            this.name = name;
+            this.modules = modules;
+            this.bytes = bytes;
+            this.exclusiveBytes = exclusiveBytes;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Set<String> getModules() {
+            return modules;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getExclusiveBytes() {
+            return exclusiveBytes;
+        }
+    }
+
+    /**
+     * The analysis result.
+     */
+    public static final class Report {
+
+        private final long totalBytes;
+        private final long totalFiles;
+        private final Map<String, Long> directories;
+        private final Map<String, Module> modules;
+        private final Set<String> unreferenced;
+        private final Map<String, LayerFootprint> layers;
+
+        private Report(long totalBytes, long totalFiles, Map<String, Long> directories, Map<String, Module> modules,
+                Set<String> unreferenced, Map<String, LayerFootprint> layers) {
+            this.totalBytes = totalBytes;
+            this.totalFiles = totalFiles;
+            this.directories = directories;
+            this.modules = modules;
+            this.unreferenced = unreferenced;
+            this.layers = layers;
+        }
+
+        public long getTotalBytes() {
+            return totalBytes;
+        }
+
+        public long getTotalFiles() {
+            return totalFiles;
+        }
+
+        /**
+         * Bytes of each server root directory entry.
+         */
+        public Map<String, Long> getDirectories() {
+            return directories;
+        }
+
+        public Map<String, Module> getModules() {
+            return modules;
+        }
+
+        public Set<String> getUnreferencedModules() {
+            return unreferenced;
+        }
+
+        public Map<String, LayerFootprint> getLayers() {
+            return layers;
+        }
+
+        public ModelNode toModelNode() {
+            ModelNode report = new ModelNode();
+            report.get("total-bytes").set(totalBytes);
+            report.get("total-files").set(totalFiles);
+            report.get("module-count").set(modules.size());
+            ModelNode dirsNode = report.get("directories").setEmptyObject();
+            for (Map.Entry<String, Long> entry : directories.entrySet()) {
+                dirsNode.get(entry.getKey()).set(entry.getValue());
+            }
+            ModelNode modulesNode = report.get("modules").setEmptyObject();
+            for (Module module : modules.values()) {
+                ModelNode moduleNode = modulesNode.get(module.id);
+                moduleNode.get("bytes").set(module.bytes);
+                moduleNode.get("files").set(module.files);
+                moduleNode.get("dependencies").set(module.dependencies.size());
+                moduleNode.get("dependents").set(module.dependents.size());
+            }
+            ModelNode unreferencedNode = report.get("unreferenced-modules").setEmptyList();
+            for (String id : unreferenced) {
+                unreferencedNode.add(id);
+            }
+            ModelNode layersNode = report.get("layers").setEmptyObject();
+            for (LayerFootprint layer : layers.values()) {
+                ModelNode layerNode = layersNode.get(layer.name);
+                layerNode.get("modules").set(layer.modules.size());
+                layerNode.get("bytes").set(layer.bytes);
+                layerNode.get("exclusive-bytes").set(layer.exclusiveBytes);
+            }
+            return report;
+        }
+
+        public void writeReport(Path file) throws IOException {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            Files.write(file, toModelNode().toJSONString(false).getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Log the server size, the largest layers and modules.
+         *
+         * @param log The Maven log.
+         * @param max The maximum number of layers and modules logged.
+         */
+        public void log(Log log, int max) {
+            log.info("Server size " + totalBytes / 1024 + "KB, " + totalFiles + " files, " + modules.size() + " modules, "
+                    + unreferenced.size() + " unreferenced modules");
+            List<LayerFootprint> sortedLayers = new ArrayList<>(layers.values());
+            sortedLayers.sort((l1, l2) -> Long.compare(l2.exclusiveBytes, l1.exclusiveBytes));
+            for (LayerFootprint layer : sortedLayers.subList(0, Math.min(max, sortedLayers.size()))) {
+                log.info("  layer " + layer.name + ": " + layer.exclusiveBytes / 1024 + "KB exclusive, "
+                        + layer.bytes / 1024 + "KB in " + layer.modules.size() + " modules");
+            }
+            List<Module> sortedModules = new ArrayList<>(modules.values());
+            sortedModules.sort((m1, m2) -> Long.compare(m2.bytes, m1.bytes));
+            for (Module module : sortedModules.subList(0, Math.min(max, sortedModules.size()))) {
+                log.info("  module " + module.id + ": " + module.bytes / 1024 + "KB");
+            }
+        }
+    }
+
+    private FootprintAnalyzer() {
+    }
+
+    /**
+     * Analyze a server.
+     *
+     * @param jbossHome The server.
+     * @param layers The provisioned layers, with their dependencies.
+     * @param layerPackages The packages each layer depends on.
+     * @return The report.
+     * @throws Exception
+     */
+    public static Report analyze(Path jbossHome, Collection<String> layers, Map<String, Set<String>> layerPackages) throws Exception {
+        Map<String, Module> modules = scanModules(jbossHome);
+        Map<String, Long> directories = new TreeMap<>();
+        long totalBytes = 0;
+        long totalFiles = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(jbossHome)) {
+            for (Path p : stream) {
+                long[] content = Utils.countContent(p);
+                directories.put(p.getFileName().toString(), content[1]);
+                totalFiles += content[0];
+                totalBytes += content[1];
+            }
+        }
+        Set<String> roots = getReferencedModules(jbossHome);
+        Set<String> unreferenced = new TreeSet<>();
+        for (Module module : modules.values()) {
+            if (module.dependents.isEmpty() && !roots.contains(module.id)) {
+                unreferenced.add(module.id);
+            }
+        }
+        Map<String, Set<String>> owned = new TreeMap<>();
+        Map<String, Integer> owners = new HashMap<>();
+        for (String layer : layers) {
+            Set<String> layerModules = new TreeSet<>();
+            for (String pkg : layerPackages.getOrDefault(layer, Collections.emptySet())) {
+                String id = pkg + ":" + MAIN_SLOT;
+                if (modules.containsKey(id)) {
+                    layerModules.addAll(getModuleClosure(id, modules));
+                }
+            }
+            owned.put(layer, layerModules);
+            for (String id : layerModules) {
+                owners.merge(id, 1, Integer::sum);
+            }
+        }
+        Map<String, LayerFootprint> layersFootprint = new TreeMap<>();
+        for (Map.Entry<String, Set<String>> entry : owned.entrySet()) {
+            long bytes = 0;
+            long exclusiveBytes = 0;
+            for (String id : entry.getValue()) {
+                long moduleBytes = modules.get(id).bytes;
+                bytes += moduleBytes;
+                if (owners.get(id) == 1) {
+                    exclusiveBytes += moduleBytes;
+                }
+            }
+            layersFootprint.put(entry.getKey(), new LayerFootprint(entry.getKey(),
+                    Collections.unmodifiableSet(entry.getValue()), bytes, exclusiveBytes));
+        }
+        return new Report(totalBytes, totalFiles, Collections.unmodifiableMap(directories), Collections.unmodifiableMap(modules),
+                Collections.unmodifiableSet(unreferenced), Collections.unmodifiableMap(layersFootprint));
+    }
+
+    /**
+     * Read the server modules, the module dependencies are resolved and the
+     * module sizes computed.
+     *
+     * @param jbossHome The server.
+     * @return The modules by id.
+     * @throws Exception
+     */
+    public static Map<String, Module> scanModules(Path jbossHome) throws Exception {
+        Map<String, Module> modules = new TreeMap<>();
+        Path modulesDir = jbossHome.resolve(MODULES);
+        if (Files.notExists(modulesDir)) {
+            return modules;
+        }
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        DocumentBuilder builder = factory.newDocumentBuilder();
+        List<Path> descriptors = new ArrayList<>();
+        Files.walkFileTree(modulesDir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (file.getFileName().toString().equals(MODULE_XML)) {
+                    descriptors.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        for (Path descriptor : descriptors) {
+            Element root = builder.parse(descriptor.toFile()).getDocumentElement();
+            String id = getId(root.getAttribute("name"), root.getAttribute("slot"));
+            Module module = modules.get(id);
+            if (module == null) {
+                // A module in a patch or add-on layer overrides the base one, both are on disk.
+                module = new Module(id, descriptor.getParent());
+                modules.put(id, module);
+            }
+            if ("module-alias".equals(root.getLocalName())) {
+                module.dependencies.add(getId(root.getAttribute("target-name"), root.getAttribute("target-slot")));
+            } else {
+                for (Node n = root.getFirstChild(); n != null; n = n.getNextSibling()) {
+                    if (n.getNodeType() == Node.ELEMENT_NODE && "dependencies".equals(n.getLocalName())) {
+                        for (Node d = n.getFirstChild(); d != null; d = d.getNextSibling()) {
+                            if (d.getNodeType() == Node.ELEMENT_NODE && "module".equals(d.getLocalName())) {
+                                Element dep = (Element) d;
+                                module.dependencies.add(getId(dep.getAttribute("name"), dep.getAttribute("slot")));
+                            }
+                        }
+                    }
+                }
+            }
+            long[] content = countModuleContent(descriptor.getParent());
+            module.files += content[0];
+            module.bytes += content[1];
+        }
+        for (Module module : modules.values()) {
+            for (String dep : module.dependencies) {
+                Module target = modules.get(dep);
+                if (target != null) {
+                    target.dependents.add(module.id);
+                }
+            }
+        }
+        return modules;
+    }
+
+    private static String getId(String name, String slot) {
+        return name + ":" + (slot == null || slot.isEmpty() ? MAIN_SLOT : slot);
+    }
+
+    /**
+     * Count the files of a module directory, without the modules nested in
+     * its sub directories.
+     */
+    private static long[] countModuleContent(Path moduleDir) throws IOException {
+        long[] content = new long[2];
+        Files.walkFileTree(moduleDir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (!dir.equals(moduleDir) && Files.exists(dir.resolve(MODULE_XML))) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                content[0] += 1;
+                content[1] += attrs.size();
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return content;
+    }
+
+    /**
+     * The modules referenced from outside of the modules: the boot module
+     * and the modules named by the server configurations, extensions but also
+     * subsystems resources (JDBC drivers, ee global modules, custom logging
+     * handlers, Elytron custom components).
+     */
+    static Set<String> getReferencedModules(Path jbossHome) throws IOException {
+        Set<String> referenced = new HashSet<>();
+        referenced.add(BOOT_MODULE);
+        Path configDir = jbossHome.resolve(Constants.STANDALONE).resolve("configuration");
+        if (Files.isDirectory(configDir)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(configDir, "*.xml")) {
+                for (Path config : stream) {
+                    referenced.addAll(getConfigurationModules(new String(Files.readAllBytes(config), StandardCharsets.UTF_8)));
+                }
+            }
+        }
+        return referenced;
+    }
+
+    /**
+     * Every {@code module="..."} attribute and {@code <module name="..."/>}
+     * element of a configuration. A module attribute can contain the slot,
+     * {@code name:slot}. Expressions can't be resolved and are ignored.
+     */
+    static Set<String> getConfigurationModules(String config) {
+        Set<String> modules = new HashSet<>();
+        Matcher matcher = MODULE_ATTRIBUTE.matcher(config);
+        while (matcher.find()) {
+            String value = matcher.group(1).trim();
+            if (value.isEmpty() || value.contains("${")) {
+                continue;
+            }
+            int colon = value.indexOf(':');
+            modules.add(colon < 0 ? getId(value, null) : getId(value.substring(0, colon), value.substring(colon + 1)));
+        }
+        matcher = MODULE_ELEMENT.matcher(config);
+        while (matcher.find()) {
+            String attributes = " " + matcher.group(1);
+            Matcher name = NAME_ATTRIBUTE.matcher(attributes);
+            if (name.find() && !name.group(1).contains("${")) {
+                Matcher slot = SLOT_ATTRIBUTE.matcher(attributes);
+                modules.add(getId(name.group(1).trim(), slot.find() ? slot.group(1).trim() : null));
+            }
+        }
+        return modules;
+    }
+
+    /**
+     * A module and its dependencies.
+     */
+    static Set<String> getModuleClosure(String id, Map<String, Module> modules) {
+        Set<String> closure = new LinkedHashSet<>();
+        Deque<String> toProcess = new ArrayDeque<>();
+        toProcess.add(id);
+        while (!toProcess.isEmpty()) {
+            String current = toProcess.pollFirst();
+            Module module = modules.get(current);
+            if (module != null && closure.add(current)) {
+                toProcess.addAll(module.dependencies);
+            }
+        }
+        return closure;
+    }
+}
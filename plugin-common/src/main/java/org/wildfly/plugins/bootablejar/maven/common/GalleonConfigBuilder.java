@@ -22,6 +22,8 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -79,31 +81,6 @@ public class GalleonConfigBuilder {
         AbstractGalleonConfig(ConfigModel.Builder configBuilder) throws ProvisioningException {
             Objects.requireNonNull(configBuilder);
             this.configBuilder = configBuilder;
-            setupPluginOptions();
-        }
-
-        private void setupPluginOptions() throws ProvisioningException {
-            // passive+ in all cases
-            // For included default config not based on layers, default packages
-            // must be included.
-            if (pluginOptions.isEmpty()) {
-                pluginOptions = Collections.
-                        singletonMap(org.jboss.galleon.Constants.OPTIONAL_PACKAGES, org.jboss.galleon.Constants.PASSIVE_PLUS);
-            } else {
-                if (!pluginOptions.containsKey(org.jboss.galleon.Constants.OPTIONAL_PACKAGES)) {
-                    pluginOptions.put(org.jboss.galleon.Constants.OPTIONAL_PACKAGES, org.jboss.galleon.Constants.PASSIVE_PLUS);
-                }
-                if (pluginOptions.containsKey(MAVEN_REPO_PLUGIN_OPTION)) {
-                    String val = pluginOptions.get(MAVEN_REPO_PLUGIN_OPTION);
-                    if (val != null) {
-                        Path path = Paths.get(val);
-                        if (!path.isAbsolute()) {
-                            path = Utils.resolvePath(ctx.getProject(), path);
-                            pluginOptions.put(MAVEN_REPO_PLUGIN_OPTION, path.toString());
-                        }
-                    }
-                }
-            }
         }
 
         protected abstract ProvisioningConfig.Builder buildState() throws ProvisioningException;
@@ -209,16 +186,16 @@ public class GalleonConfigBuilder {
         }
 
     }
+    // The builder state is immutable, it is shared by the variants builders.
     private final DefaultConfigProvider defaultConfigProvider;
     private final PluginContext ctx;
-    private List<FeaturePack> featurePacks;
+    private final List<FeaturePack> featurePacks;
     private final File provisioningFile;
-    private final String featurePackLocation;
     private final List<String> layers;
     private final Set<String> extraLayers;
     private final List<String> excludedLayers;
     private final boolean logTime;
-    private Map<String, String> pluginOptions;
+    private final Map<String, String> pluginOptions;
     private final boolean offline;
     private final boolean recordState;
 
@@ -236,33 +213,85 @@ public class GalleonConfigBuilder {
             boolean recordState) throws MojoExecutionException {
         this.ctx = ctx;
         this.defaultConfigProvider = defaultConfigProvider == null ? () -> null : defaultConfigProvider;
-        this.featurePacks = featurePacks;
-        this.featurePackLocation = featurePackLocation;
+        this.featurePacks = normalizeFeaturePackList(featurePacks, featurePackLocation);
         this.provisioningFile = provisioningFile;
-        this.layers = layers;
-        this.extraLayers = extraLayers == null ? Collections.emptySet() : extraLayers;
-        this.excludedLayers = excludedLayers;
+        this.layers = layers == null ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(layers));
+        this.extraLayers = extraLayers == null ? Collections.emptySet() : Collections.unmodifiableSet(new LinkedHashSet<>(extraLayers));
+        this.excludedLayers = excludedLayers == null ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(excludedLayers));
         this.logTime = logTime;
-        this.pluginOptions = pluginOptions;
+        this.pluginOptions = normalizePluginOptions(ctx, pluginOptions);
         this.offline = offline;
         this.recordState = recordState;
-        normalizeFeaturePackList();
+    }
+
+    private GalleonConfigBuilder(GalleonConfigBuilder base, List<String> layers, Set<String> extraLayers, List<String> excludedLayers) {
+        this.ctx = base.ctx;
+        this.defaultConfigProvider = base.defaultConfigProvider;
+        this.featurePacks = base.featurePacks;
+        this.provisioningFile = base.provisioningFile;
+        this.layers = Collections.unmodifiableList(new ArrayList<>(layers));
+        this.extraLayers = Collections.unmodifiableSet(new LinkedHashSet<>(extraLayers));
+        this.excludedLayers = Collections.unmodifiableList(new ArrayList<>(excludedLayers));
+        this.logTime = base.logTime;
+        this.pluginOptions = base.pluginOptions;
+        this.offline = base.offline;
+        this.recordState = base.recordState;
+    }
+
+    /**
+     * Get a builder for a variant, the variant layers deltas are applied to
+     * this builder layers. The feature-packs and plugin options are shared.
+     *
+     * @param variant The variant.
+     * @return The variant builder.
+     */
+    public GalleonConfigBuilder forVariant(ServerVariants.Variant variant) {
+        Set<String> variantExtraLayers = new LinkedHashSet<>(extraLayers);
+        variantExtraLayers.addAll(variant.getExtraLayers());
+        List<String> variantExcludedLayers = new ArrayList<>(excludedLayers);
+        for (String layer : variant.getExcludedLayers()) {
+            if (!variantExcludedLayers.contains(layer)) {
+                variantExcludedLayers.add(layer);
+            }
+        }
+        return new GalleonConfigBuilder(this, layers, variantExtraLayers, variantExcludedLayers);
+    }
+
+    /**
+     * Get a builder that provisions other layers, for example the layers
+     * inferred from the deployment.
+     *
+     * @param layers The layers.
+     * @return The builder.
+     */
+    public GalleonConfigBuilder withLayers(List<String> layers) {
+        return new GalleonConfigBuilder(this, layers, extraLayers, excludedLayers);
+    }
+
+    public List<String> getLayers() {
+        return layers;
     }
 
     public List<FeaturePack> getFeaturePacks() {
         return featurePacks;
     }
 
-    private void normalizeFeaturePackList() throws MojoExecutionException {
+    public Map<String, String> getPluginOptions() {
+        return pluginOptions;
+    }
+
+    private static List<FeaturePack> normalizeFeaturePackList(List<FeaturePack> featurePacks, String featurePackLocation) throws MojoExecutionException {
+        if (featurePacks == null) {
+            featurePacks = Collections.emptyList();
+        }
         if (featurePackLocation != null && !featurePacks.isEmpty()) {
             throw new MojoExecutionException("feature-pack-location can't be used with a list of feature-packs");
         }
 
         if (featurePackLocation != null) {
-            featurePacks = new ArrayList<>();
             FeaturePack fp = new FeaturePack();
             fp.setLocation(featurePackLocation);
-            featurePacks.add(fp);
+            return Collections.singletonList(fp);
         } else {
             for (FeaturePack fp : featurePacks) {
                 if (fp.getLocation() == null) {
@@ -271,10 +300,54 @@ public class GalleonConfigBuilder {
                     }
                 }
             }
+            return Collections.unmodifiableList(new ArrayList<>(featurePacks));
+        }
+    }
+
+    /**
+     * Copy the plugin options. passive+ in all cases, for included default
+     * config not based on layers, default packages must be included. A
+     * relative maven repository path is resolved against the project.
+     */
+    private static Map<String, String> normalizePluginOptions(PluginContext ctx, Map<String, String> pluginOptions) {
+        Map<String, String> options = new HashMap<>();
+        if (pluginOptions != null) {
+            options.putAll(pluginOptions);
+        }
+        if (!options.containsKey(org.jboss.galleon.Constants.OPTIONAL_PACKAGES)) {
+            options.put(org.jboss.galleon.Constants.OPTIONAL_PACKAGES, org.jboss.galleon.Constants.PASSIVE_PLUS);
+        }
+        String val = options.get(MAVEN_REPO_PLUGIN_OPTION);
+        if (val != null) {
+            Path path = Paths.get(val);
+            if (!path.isAbsolute()) {
+                path = Utils.resolvePath(ctx.getProject(), path);
+                options.put(MAVEN_REPO_PLUGIN_OPTION, path.toString());
+            }
         }
+        return Collections.unmodifiableMap(options);
     }
 
     public GalleonConfig buildGalleonConfig(ProvisioningManager pm) throws ProvisioningException, MojoExecutionException {
+        return buildGalleonConfig(new LayoutSession(pm));
+    }
+
+    /**
+     * Build the configuration, feature-packs are resolved with a session
+     * shared with the layers discovery.
+     */
+    public GalleonConfig buildGalleonConfig(LayoutSession session) throws ProvisioningException, MojoExecutionException {
+        long start = System.currentTimeMillis();
+        try (Instrumentation.Span span = ctx.getInstrumentation().start(Instrumentation.CONFIG_BUILD)) {
+            return doBuildGalleonConfig(session);
+        } finally {
+            if (logTime) {
+                ctx.getLog().info("Galleon configuration built in " + (System.currentTimeMillis() - start) + "ms");
+            }
+        }
+    }
+
+    private GalleonConfig doBuildGalleonConfig(LayoutSession session) throws ProvisioningException, MojoExecutionException {
         boolean isLayerBasedConfig = !layers.isEmpty();
         boolean hasFeaturePack = !featurePacks.isEmpty();
         boolean hasProvisioningFile = Files.exists(getProvisioningFile());
@@ -291,13 +364,13 @@ public class GalleonConfigBuilder {
             if (!hasFeaturePack) {
                 throw new ProvisioningException("No server feature-pack location to provision layers, you must set a feature-pack-location");
             }
-            return buildFeaturePacksConfig(pm, true);
+            return buildFeaturePacksConfig(session, true);
         }
 
         // Based on default config
         if (!featurePacks.isEmpty()) {
             ctx.getLog().info("Provisioning server using feature-packs");
-            return buildFeaturePacksConfig(pm, isLayerBasedConfig);
+            return buildFeaturePacksConfig(session, isLayerBasedConfig);
         }
 
         if (hasProvisioningFile) {
@@ -307,7 +380,7 @@ public class GalleonConfigBuilder {
         throw new ProvisioningException("Invalid Galleon configuration");
     }
 
-    private GalleonConfig buildFeaturePacksConfig(ProvisioningManager pm, boolean hasLayers) throws ProvisioningException, MojoExecutionException {
+    private GalleonConfig buildFeaturePacksConfig(LayoutSession session, boolean hasLayers) throws ProvisioningException, MojoExecutionException {
         ProvisioningConfig.Builder state = ProvisioningConfig.builder();
         ConfigId provisionedConfigId = null;
         for (FeaturePack fp : featurePacks) {
@@ -317,15 +390,7 @@ public class GalleonConfigBuilder {
                 throw new MojoExecutionException("Feature-pack location, Maven GAV or feature pack path is missing");
             }
 
-            final FeaturePackLocation fpl;
-            if (fp.getNormalizedPath() != null) {
-                fpl = pm.getLayoutFactory().addLocal(fp.getNormalizedPath(), false);
-            } else if (fp.getGroupId() != null && fp.getArtifactId() != null) {
-                String coords = fp.getMavenCoords();
-                fpl = FeaturePackLocation.fromString(coords);
-            } else {
-                fpl = FeaturePackLocation.fromString(fp.getLocation());
-            }
+            final FeaturePackLocation fpl = session.resolveLocation(fp);
 
             final FeaturePackConfig.Builder fpConfig = FeaturePackConfig.builder(fpl);
             fpConfig.setInheritConfigs(false);
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.common;
+
+/**
+ * Records the time spent in the build phases, counters and the number of
+ * files and bytes processed by a phase. Retrieved from
+ * {@link PluginContext#getInstrumentation()}, the default instance records
+ * nothing.
+ *
+ * @author jdenise
+ */
+public interface Instrumentation {
+
+    String LAYER_DISCOVERY = "layer-discovery";
+    String LAYER_INFERENCE = "layer-inference";
+    String CONFIG_BUILD = "config-build";
+    String ARTIFACT_RESOLUTION = "artifact-resolution";
+    String PROVISIONING = "provisioning";
+    String EXTRA_CONTENT = "extra-content";
+    String CLI = "cli";
+    String CLEANUP_SERVER = "cleanup-server";
+    String MODULE_PRUNING = "module-pruning";
+    String CDS_TRAINING = "cds-training";
+
+    /**
+     * A started phase, closing it records its duration.
+     */
+    interface Span extends AutoCloseable {
+
+        @Override
+        void close();
+    }
+
+    Span NOOP_SPAN = () -> {
+    };
+
+    Instrumentation NOOP = new Instrumentation() {
+        @Override
+        public Span start(String phase) {
+            return NOOP_SPAN;
+        }
+
+        @Override
+        public void increment(String counter, long delta) {
+        }
+
+        @Override
+        public void processed(String phase, long files, long bytes) {
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+    };
+
+    /**
+     * Start a phase. Phases with the same name are aggregated.
+     *
+     * @param phase The phase name.
+     * @return The span to close when the phase is done.
+     */
+    Span start(String phase);
+
+    /**
+     * Add a value to a counter.
+     *
+     * @param counter The counter name.
+     * @param delta The value to add.
+     */
+    void increment(String counter, long delta);
+
+    /**
+     * Record files and bytes processed by a phase.
+     *
+     * @param phase The phase name.
+     * @param files The number of files.
+     * @param bytes The number of bytes.
+     */
+    void processed(String phase, long files, long bytes);
+
+    /**
+     * @return true if values are recorded, callers can skip computing values
+     * that are only needed for instrumentation.
+     */
+    default boolean isEnabled() {
+        return true;
+    }
+}
@@ -23,7 +23,6 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -49,8 +48,10 @@ import static org.wildfly.plugins.bootablejar.maven.common.Constants.MAVEN_REPO_
 public class JakartaEE9Handler {
 
     private Path provisioningMavenRepo;
-    private String jakartaTransformSuffix;
-    private Set<String> transformExcluded = new HashSet<>();
+    // Set by the feature-pack lookup, read by the stages that resolve artifacts.
+    private volatile String jakartaTransformSuffix;
+    private volatile Set<String> transformExcluded = new HashSet<>();
+    private volatile boolean featurePackLookedUp;
     String originalLocalRepo = null;
     private final Map<String, String> pluginOptions;
     private final MavenRepoManager artifactResolver;
@@ -94,7 +95,16 @@ public class JakartaEE9Handler {
         }
     }
 
+    /**
+     * Resolve an artifact. For a thin server provisioned from a Maven
+     * repository, the transformed versions are only known once the
+     * feature-pack has been looked up, the artifacts must be resolved after
+     * {@link #lookupFeaturePack(FeaturePackRuntime)}.
+     */
     public void resolve(MavenArtifact artifact) throws MavenUniverseException, IOException {
+        if (provisioningMavenRepo != null && !featurePackLookedUp) {
+            throw new IOException("Can't resolve " + artifact + ", the feature-pack of the provisioned server has not been looked up");
+        }
         if (provisioningMavenRepo == null) {
             artifactResolver.resolve(artifact);
         } else {
@@ -119,7 +129,7 @@ public class JakartaEE9Handler {
 
     private String getTransformedVersion(MavenArtifact artifact) {
         boolean transformed = !isExcludedFromTransformation(artifact);
-        return artifact.getVersion() + (transformed ? jakartaTransformSuffix : "");
+        return artifact.getVersion() + (transformed && jakartaTransformSuffix != null ? jakartaTransformSuffix : "");
     }
 
     private boolean isExcludedFromTransformation(MavenArtifact artifact) {
@@ -142,26 +152,34 @@ public class JakartaEE9Handler {
     }
 
     public void lookupFeaturePack(FeaturePackRuntime fprt) throws MojoExecutionException, ProvisioningDescriptionException, ProvisioningException {
+        lookupFeaturePack(fprt.getResource("wildfly/wildfly-tasks.properties"),
+                fprt.getResource("wildfly-jakarta-transform-excludes.txt"));
+    }
+
+    void lookupFeaturePack(Path tasksProps, Path excludedArtifacts) throws MojoExecutionException, ProvisioningException {
         // Lookup to retrieve ee-9 suffix.
-        Path tasksProps = fprt.getResource("wildfly/wildfly-tasks.properties");
-        final Map<String, String> tasksMap = new HashMap<>();
+        // Only the suffix is needed, other tasks properties are not retained.
+        String suffix;
         try {
-            Utils.readProperties(tasksProps, tasksMap);
+            suffix = PropertiesParser.lookup(tasksProps, StandardCharsets.UTF_8,
+                    PropertiesParser.Syntax.KEY_VALUE_LINES, "jakarta.transform.artifacts.suffix");
         } catch (Exception ex) {
             throw new MojoExecutionException("Error reading artifact versions", ex);
         }
-        jakartaTransformSuffix = tasksMap.get("jakarta.transform.artifacts.suffix");
-        final Path excludedArtifacts = fprt.getResource("wildfly-jakarta-transform-excludes.txt");
+        Set<String> excluded = transformExcluded;
         if (Files.exists(excludedArtifacts)) {
             try (BufferedReader reader = Files.newBufferedReader(excludedArtifacts, StandardCharsets.UTF_8)) {
                 String line = reader.readLine();
                 while (line != null) {
-                    transformExcluded = CollectionUtils.add(transformExcluded, line);
+                    excluded = CollectionUtils.add(excluded, line);
                     line = reader.readLine();
                 }
             } catch (IOException e) {
                 throw new ProvisioningException(Errors.readFile(excludedArtifacts), e);
             }
         }
+        jakartaTransformSuffix = suffix;
+        transformExcluded = excluded;
+        featurePackLookedUp = true;
     }
 }
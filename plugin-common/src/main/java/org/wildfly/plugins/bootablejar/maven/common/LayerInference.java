@@ -0,0 +1,456 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.common;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import org.apache.maven.plugin.logging.Log;
+import org.jboss.dmr.ModelNode;
+
+/**
+ * Infer the Galleon layers a deployment requires from its content. Classes
+ * are scanned for references to the EE and MicroProfile APIs (class names,
+ * annotation and method descriptors in the constant pool), descriptors
+ * (beans.xml, persistence.xml, ...) are matched by name. The libraries of a
+ * web archive ({@code WEB-INF/lib}) and of an enterprise archive ({@code lib})
+ * are scanned too, JAX-RS resources, EJBs or JPA entities are commonly located
+ * in a module jar of the application.
+ *
+ * The proposed layers are the configured layers minus the layers the
+ * inference knows about and that are not used. Aggregate layers (layers that
+ * only depend on other layers) whose dependencies contain unused layers are
+ * replaced by their dependencies. Layers that are required by another
+ * proposed layer are removed. Layers the inference doesn't know about
+ * (management, logging, ...) are kept.
+ *
+ * @author jdenise
+ */
+public final class LayerInference {
+
+    public enum Mode {
+        DISABLED,
+        /**
+         * Log and write the proposed layers, the configured layers are
+         * provisioned.
+         */
+        REPORT,
+        /**
+         * Provision the proposed layers, not supported with CLI sessions.
+         */
+        APPLY
+    }
+
+    public static final String REPORT_FILE = "bootable-jar-layer-inference.json";
+
+    private static final String WEB_INF = "WEB-INF/";
+    private static final String SERVLET = "servlet";
+
+    // Layer to API packages, in the class file internal form.
+    private static final Map<String, List<String>> CLASS_RULES = new LinkedHashMap<>();
+    // Layer to descriptors file name, a name starting with '-' is a suffix.
+    private static final Map<String, List<String>> DESCRIPTOR_RULES = new LinkedHashMap<>();
+
+    static {
+        classes(SERVLET, "javax/servlet/", "jakarta/servlet/");
+        classes("jaxrs", "javax/ws/rs/", "jakarta/ws/rs/");
+        classes("cdi", "javax/inject/", "javax/enterprise/", "jakarta/inject/", "jakarta/enterprise/");
+        classes("jpa", "javax/persistence/", "jakarta/persistence/");
+        classes("ejb-lite", "javax/ejb/", "jakarta/ejb/");
+        classes("bean-validation", "javax/validation/", "jakarta/validation/");
+        classes("transactions", "javax/transaction/", "jakarta/transaction/");
+        classes("jsonb", "javax/json/bind/", "jakarta/json/bind/");
+        classes("jsonp", "javax/json/", "jakarta/json/");
+        classes("jsf", "javax/faces/", "jakarta/faces/");
+        classes("mail", "javax/mail/", "jakarta/mail/");
+        classes("messaging-activemq", "javax/jms/", "jakarta/jms/");
+        classes("batch-jberet", "javax/batch/", "jakarta/batch/");
+        classes("web-services", "javax/jws/", "javax/xml/ws/", "jakarta/jws/", "jakarta/xml/ws/");
+        classes("datasources", "javax/annotation/sql/", "jakarta/annotation/sql/");
+        classes("microprofile-config", "org/eclipse/microprofile/config/");
+        classes("microprofile-health", "org/eclipse/microprofile/health/");
+        classes("microprofile-metrics", "org/eclipse/microprofile/metrics/");
+        classes("microprofile-openapi", "org/eclipse/microprofile/openapi/");
+        classes("microprofile-fault-tolerance", "org/eclipse/microprofile/faulttolerance/");
+        classes("microprofile-jwt", "org/eclipse/microprofile/jwt/");
+        classes("microprofile-opentracing", "org/eclipse/microprofile/opentracing/");
+        classes("microprofile-rest-client", "org/eclipse/microprofile/rest/client/");
+
+        descriptors(SERVLET, "web.xml", "jboss-web.xml");
+        descriptors("cdi", "beans.xml");
+        descriptors("jpa", "persistence.xml");
+        descriptors("ejb-lite", "ejb-jar.xml", "jboss-ejb3.xml");
+        descriptors("jsf", "faces-config.xml");
+        descriptors("datasources", "-ds.xml");
+        descriptors("messaging-activemq", "-jms.xml");
+        descriptors("batch-jberet", "batch.xml");
+        descriptors("microprofile-config", "microprofile-config.properties");
+    }
+
+    private static void classes(String layer, String... packages) {
+        CLASS_RULES.put(layer, Arrays.asList(packages));
+    }
+
+    private static void descriptors(String layer, String... names) {
+        DESCRIPTOR_RULES.put(layer, Arrays.asList(names));
+    }
+
+    /**
+     * The inferred layers compared with the configured ones.
+     */
+    public static final class Result {
+
+        private final List<String> configured;
+        private final List<String> proposed;
+        private final Map<String, String> evidence;
+        private final Set<String> added;
+        private final Set<String> removed;
+        private final int configuredClosure;
+        private final int proposedClosure;
+
+        private Result(List<String> configured, List<String> proposed, Map<String, String> evidence,
+                Set<String> added, Set<String> removed, int configuredClosure, int proposedClosure) {
+            this.configured = configured;
+            this.proposed = proposed;
+            this.evidence = evidence;
+            this.added = added;
+            this.removed = removed;
+            this.configuredClosure = configuredClosure;
+            this.proposedClosure = proposedClosure;
+        }
+
+        public List<String> getProposedLayers() {
+            return proposed;
+        }
+
+        /**
+         * The used layers, with the deployment content that requires them.
+         */
+        public Map<String, String> getEvidence() {
+            return evidence;
+        }
+
+        /**
+         * Used layers that the configured layers don't provision.
+         */
+        public Set<String> getAddedLayers() {
+            return added;
+        }
+
+        /**
+         * Layers provisioned by the configured layers and not by the proposed
+         * layers.
+         */
+        public Set<String> getRemovedLayers() {
+            return removed;
+        }
+
+        public ModelNode toModelNode() {
+            ModelNode report = new ModelNode();
+            ModelNode configuredNode = report.get("configured-layers").setEmptyList();
+            for (String layer : configured) {
+                configuredNode.add(layer);
+            }
+            ModelNode proposedNode = report.get("proposed-layers").setEmptyList();
+            for (String layer : proposed) {
+                proposedNode.add(layer);
+            }
+            ModelNode evidenceNode = report.get("evidence").setEmptyObject();
+            for (Map.Entry<String, String> entry : evidence.entrySet()) {
+                evidenceNode.get(entry.getKey()).set(entry.getValue());
+            }
+            ModelNode addedNode = report.get("added-layers").setEmptyList();
+            for (String layer : added) {
+                addedNode.add(layer);
+            }
+            ModelNode removedNode = report.get("removed-layers").setEmptyList();
+            for (String layer : removed) {
+                removedNode.add(layer);
+            }
+            report.get("configured-layers-closure").set(configuredClosure);
+            report.get("proposed-layers-closure").set(proposedClosure);
+            return report;
+        }
+
+        public void writeReport(Path file) throws IOException {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            Files.write(file, toModelNode().toJSONString(false).getBytes(StandardCharsets.UTF_8));
+        }
+
+        public void log(Log log) {
+            log.info("Layers inferred from the deployments: " + proposed + ", configured layers: " + configured);
+            log.info("  provisioned layers, including dependencies: " + proposedClosure + " instead of " + configuredClosure);
+            if (!removed.isEmpty()) {
+                log.info("  layers not provisioned anymore: " + removed);
+            }
+            for (String layer : added) {
+                log.warn("  layer " + layer + " is required by " + evidence.get(layer) + " but is not provisioned by the configured layers");
+            }
+        }
+    }
+
+    private LayerInference() {
+    }
+
+    /**
+     * Scan a deployment archive or exploded deployment.
+     *
+     * @param deployment The deployment.
+     * @return The used layers, with the first deployment content that
+     * requires them.
+     * @throws IOException
+     */
+    public static Map<String, String> scan(Path deployment) throws IOException {
+        Map<String, String> evidence = new TreeMap<>();
+        String name = deployment.getFileName().toString();
+        if (Files.isDirectory(deployment)) {
+            Files.walkFileTree(deployment, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+                        scanEntry(name, deployment.relativize(file).toString().replace('\\', '/'), in, evidence, true);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } else {
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(deployment))) {
+                scanArchive(name, in, evidence, true);
+            }
+        }
+        return evidence;
+    }
+
+    /**
+     * Scan the deployments of a server.
+     *
+     * @param deployments The deployment archives or exploded deployments.
+     * @return The used layers, with the first deployment content that
+     * requires them.
+     * @throws IOException
+     */
+    public static Map<String, String> scan(Collection<Path> deployments) throws IOException {
+        Map<String, String> evidence = new TreeMap<>();
+        for (Path deployment : deployments) {
+            for (Map.Entry<String, String> entry : scan(deployment).entrySet()) {
+                evidence.putIfAbsent(entry.getKey(), entry.getValue());
+            }
+        }
+        return evidence;
+    }
+
+    private static void scanArchive(String archive, InputStream in, Map<String, String> evidence, boolean application) throws IOException {
+        // Not closed, a nested archive is read from the enclosing archive stream.
+        ZipInputStream zip = new ZipInputStream(in);
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            if (!entry.isDirectory()) {
+                scanEntry(archive, entry.getName(), zip, evidence, application);
+            }
+        }
+    }
+
+    private static void scanEntry(String archive, String name, InputStream in, Map<String, String> evidence, boolean application) throws IOException {
+        String location = archive + "!/" + name;
+        if (application && name.startsWith(WEB_INF)) {
+            evidence.putIfAbsent(SERVLET, archive);
+        }
+        if (name.endsWith(".class")) {
+            scanClass(location, in, evidence);
+            return;
+        }
+        if (name.endsWith(".jar") || name.endsWith(".war") || name.endsWith(".rar")) {
+            boolean library = name.startsWith(WEB_INF + "lib/") || name.startsWith("lib/");
+            scanArchive(location, in, evidence, application && !library);
+            return;
+        }
+        String fileName = name.substring(name.lastIndexOf('/') + 1);
+        for (Map.Entry<String, List<String>> rule : DESCRIPTOR_RULES.entrySet()) {
+            for (String descriptor : rule.getValue()) {
+                if (fileName.equals(descriptor) || (descriptor.charAt(0) == '-' && fileName.endsWith(descriptor))) {
+                    evidence.putIfAbsent(rule.getKey(), location);
+                }
+            }
+        }
+    }
+
+    /**
+     * Match the constant pool UTF-8 entries, they contain the referenced
+     * class names and the descriptors of the annotations, fields and methods.
+     */
+    private static void scanClass(String location, InputStream in, Map<String, String> evidence) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != 0xCAFEBABE) {
+            return;
+        }
+        data.readUnsignedShort();
+        data.readUnsignedShort();
+        int count = data.readUnsignedShort();
+        for (int i = 1; i < count; i++) {
+            int tag = data.readUnsignedByte();
+            switch (tag) {
+                case 1: // Utf8
+                    String value = data.readUTF();
+                    if (value.indexOf('/') >= 0) {
+                        match(location, value, evidence);
+                    }
+                    break;
+                case 3: // Integer
+                case 4: // Float
+                case 9: // Fieldref
+                case 10: // Methodref
+                case 11: // InterfaceMethodref
+                case 12: // NameAndType
+                case 17: // Dynamic
+                case 18: // InvokeDynamic
+                    data.readInt();
+                    break;
+                case 5: // Long
+                case 6: // Double
+                    data.readLong();
+                    i++;
+                    break;
+                case 7: // Class
+                case 8: // String
+                case 16: // MethodType
+                case 19: // Module
+                case 20: // Package
+                    data.readUnsignedShort();
+                    break;
+                case 15: // MethodHandle
+                    data.readUnsignedByte();
+                    data.readUnsignedShort();
+                    break;
+                default:
+                    // Unknown constant, the rest of the pool can't be read.
+                    return;
+            }
+        }
+    }
+
+    private static void match(String location, String value, Map<String, String> evidence) {
+        for (Map.Entry<String, List<String>> rule : CLASS_RULES.entrySet()) {
+            if (evidence.containsKey(rule.getKey())) {
+                continue;
+            }
+            for (String pkg : rule.getValue()) {
+                if (value.contains(pkg)) {
+                    evidence.put(rule.getKey(), location);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Compute the layers to provision.
+     *
+     * @param evidence The used layers, as returned by {@link #scan(Path)}.
+     * @param configured The configured layers.
+     * @param dependencies The required dependencies of the available layers.
+     * @param aggregates The layers without content of their own.
+     * @return The result.
+     */
+    public static Result infer(Map<String, String> evidence, List<String> configured,
+            Map<String, Set<String>> dependencies, Set<String> aggregates) {
+        Map<String, String> used = new TreeMap<>();
+        for (Map.Entry<String, String> entry : evidence.entrySet()) {
+            if (dependencies.containsKey(entry.getKey())) {
+                used.put(entry.getKey(), entry.getValue());
+            }
+        }
+        // The known layers that are not required by the used layers.
+        Set<String> unused = new HashSet<>(CLASS_RULES.keySet());
+        unused.addAll(DESCRIPTOR_RULES.keySet());
+        unused.retainAll(dependencies.keySet());
+        unused.removeAll(closure(used.keySet(), dependencies));
+
+        Set<String> candidates = new LinkedHashSet<>();
+        Deque<String> toProcess = new ArrayDeque<>(configured);
+        Set<String> seen = new HashSet<>();
+        while (!toProcess.isEmpty()) {
+            String layer = toProcess.pollFirst();
+            if (!seen.add(layer) || unused.contains(layer)) {
+                continue;
+            }
+            if (aggregates.contains(layer) && !Collections.disjoint(closure(Collections.singleton(layer), dependencies), unused)) {
+                List<String> deps = new ArrayList<>(dependencies.get(layer));
+                Collections.sort(deps);
+                for (int i = deps.size() - 1; i >= 0; i--) {
+                    toProcess.addFirst(deps.get(i));
+                }
+                continue;
+            }
+            candidates.add(layer);
+        }
+        candidates.addAll(used.keySet());
+        List<String> proposed = new ArrayList<>();
+        for (String layer : candidates) {
+            Set<String> others = new HashSet<>(candidates);
+            others.remove(layer);
+            if (!closure(others, dependencies).contains(layer)) {
+                proposed.add(layer);
+            }
+        }
+        Set<String> configuredClosure = closure(configured, dependencies);
+        Set<String> proposedClosure = closure(proposed, dependencies);
+        Set<String> added = new LinkedHashSet<>(used.keySet());
+        added.removeAll(configuredClosure);
+        Set<String> removed = new LinkedHashSet<>(configuredClosure);
+        removed.removeAll(proposedClosure);
+        return new Result(Collections.unmodifiableList(new ArrayList<>(configured)), Collections.unmodifiableList(proposed),
+                Collections.unmodifiableMap(used), Collections.unmodifiableSet(added), Collections.unmodifiableSet(removed),
+                configuredClosure.size(), proposedClosure.size());
+    }
+
+    /**
+     * The layers and their required dependencies.
+     */
+    static Set<String> closure(Collection<String> layers, Map<String, Set<String>> dependencies) {
+        Set<String> closure = new LinkedHashSet<>();
+        Deque<String> toProcess = new ArrayDeque<>(layers);
+        while (!toProcess.isEmpty()) {
+            String layer = toProcess.pollFirst();
+            if (closure.add(layer)) {
+                toProcess.addAll(dependencies.getOrDefault(layer, Collections.emptySet()));
+            }
+        }
+        return closure;
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.common;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.jboss.galleon.ProvisioningException;
+import org.jboss.galleon.ProvisioningManager;
+import org.jboss.galleon.config.ConfigId;
+import org.jboss.galleon.config.FeaturePackConfig;
+import org.jboss.galleon.config.ProvisioningConfig;
+import org.jboss.galleon.layout.FeaturePackLayout;
+import org.jboss.galleon.layout.ProvisioningLayout;
+import org.jboss.galleon.spec.ConfigLayerDependency;
+import org.jboss.galleon.spec.ConfigLayerSpec;
+import org.jboss.galleon.spec.PackageDependencySpec;
+import org.jboss.galleon.universe.FeaturePackLocation;
+
+/**
+ * Feature-pack resolution shared by the layers discovery and the Galleon
+ * configuration building of a build. A local feature-pack is installed in
+ * the provisioning manager universe once and the layers of a feature-pack,
+ * with their dependencies, are loaded once.
+ *
+ * @author jdenise
+ */
+public class LayoutSession {
+
+    private final ProvisioningManager pm;
+    private final Map<Path, FeaturePackLocation> localLocations = new HashMap<>();
+    private final Map<String, FeaturePackLocation> locations = new HashMap<>();
+    private final Map<FeaturePackLocation, FeaturePackLayers> layers = new HashMap<>();
+
+    public LayoutSession(ProvisioningManager pm) {
+        this.pm = pm;
+    }
+
+    public ProvisioningManager getProvisioningManager() {
+        return pm;
+    }
+
+    /**
+     * Get the location of a feature-pack, a local feature-pack is installed
+     * the first time it is resolved.
+     *
+     * @param fp The feature-pack.
+     * @return The location.
+     * @throws ProvisioningException
+     */
+    public synchronized FeaturePackLocation resolveLocation(FeaturePack fp) throws ProvisioningException {
+        if (fp.getNormalizedPath() != null) {
+            FeaturePackLocation fpl = localLocations.get(fp.getNormalizedPath());
+            if (fpl == null) {
+                fpl = pm.getLayoutFactory().addLocal(fp.getNormalizedPath(), false);
+                localLocations.put(fp.getNormalizedPath(), fpl);
+            }
+            return fpl;
+        }
+        String location;
+        if (fp.getGroupId() != null && fp.getArtifactId() != null) {
+            location = fp.getMavenCoords();
+        } else {
+            location = fp.getLocation();
+        }
+        FeaturePackLocation fpl = locations.get(location);
+        if (fpl == null) {
+            fpl = FeaturePackLocation.fromString(location);
+            locations.put(location, fpl);
+        }
+        return fpl;
+    }
+
+    /**
+     * The layers of a feature-pack and its dependencies.
+     */
+    private static final class FeaturePackLayers {
+
+        private final Map<String, Set<String>> dependencies = new HashMap<>();
+        private final Map<String, Set<String>> packages = new HashMap<>();
+        private final Set<String> aggregates = new HashSet<>();
+    }
+
+    private synchronized FeaturePackLayers loadLayers(FeaturePack fp) throws ProvisioningException, IOException {
+        FeaturePackLocation fpl = resolveLocation(fp);
+        FeaturePackLayers fpLayers = layers.get(fpl);
+        if (fpLayers == null) {
+            fpLayers = new FeaturePackLayers();
+            ProvisioningConfig pConfig = ProvisioningConfig.builder().
+                    addFeaturePackDep(FeaturePackConfig.builder(fpl).build()).build();
+            try (ProvisioningLayout<FeaturePackLayout> layout = pm.
+                    getLayoutFactory().newConfigLayout(pConfig)) {
+                for (FeaturePackLayout fpLayout : layout.getOrderedFeaturePacks()) {
+                    for (ConfigId layer : fpLayout.loadLayers()) {
+                        Set<String> deps = fpLayers.dependencies.computeIfAbsent(layer.getName(), k -> new HashSet<>());
+                        ConfigLayerSpec spec = fpLayout.loadConfigLayerSpec(layer.getModel(), layer.getName());
+                        if (spec == null) {
+                            continue;
+                        }
+                        if (spec.hasLayerDeps()) {
+                            for (ConfigLayerDependency dep : spec.getLayerDeps()) {
+                                if (!dep.isOptional()) {
+                                    deps.add(dep.getName());
+                                }
+                            }
+                        }
+                        if (spec.hasPackageDeps()) {
+                            Set<String> pkgs = fpLayers.packages.computeIfAbsent(layer.getName(), k -> new HashSet<>());
+                            for (PackageDependencySpec pkg : spec.getLocalPackageDeps()) {
+                                pkgs.add(pkg.getName());
+                            }
+                            for (String origin : spec.getPackageOrigins()) {
+                                for (PackageDependencySpec pkg : spec.getExternalPackageDeps(origin)) {
+                                    pkgs.add(pkg.getName());
+                                }
+                            }
+                        } else if (!spec.hasItems()) {
+                            fpLayers.aggregates.add(layer.getName());
+                        }
+                    }
+                }
+            }
+            layers.put(fpl, fpLayers);
+        }
+        return fpLayers;
+    }
+
+    /**
+     * Get the layers defined by a feature-pack and its dependencies.
+     *
+     * @param fp The feature-pack.
+     * @return The layers names.
+     * @throws ProvisioningException
+     * @throws IOException
+     */
+    public Set<String> getLayers(FeaturePack fp) throws ProvisioningException, IOException {
+        return Collections.unmodifiableSet(loadLayers(fp).dependencies.keySet());
+    }
+
+    /**
+     * Get the required (non optional) layer dependencies of the layers
+     * defined by a set of feature-packs.
+     *
+     * @param fps The feature-packs.
+     * @return The dependencies of each layer.
+     * @throws ProvisioningException
+     * @throws IOException
+     */
+    public Map<String, Set<String>> getLayerDependencies(List<FeaturePack> fps) throws ProvisioningException, IOException {
+        Map<String, Set<String>> dependencies = new HashMap<>();
+        for (FeaturePack fp : fps) {
+            for (Map.Entry<String, Set<String>> entry : loadLayers(fp).dependencies.entrySet()) {
+                dependencies.computeIfAbsent(entry.getKey(), k -> new HashSet<>()).addAll(entry.getValue());
+            }
+        }
+        return dependencies;
+    }
+
+    /**
+     * Get the packages the layers defined by a set of feature-packs depend
+     * on.
+     *
+     * @param fps The feature-packs.
+     * @return The packages of each layer that depends on packages.
+     * @throws ProvisioningException
+     * @throws IOException
+     */
+    public Map<String, Set<String>> getLayerPackages(List<FeaturePack> fps) throws ProvisioningException, IOException {
+        Map<String, Set<String>> packages = new HashMap<>();
+        for (FeaturePack fp : fps) {
+            for (Map.Entry<String, Set<String>> entry : loadLayers(fp).packages.entrySet()) {
+                packages.computeIfAbsent(entry.getKey(), k -> new HashSet<>()).addAll(entry.getValue());
+            }
+        }
+        return packages;
+    }
+
+    /**
+     * Get the layers, defined by a set of feature-packs, that only depend on
+     * other layers, without content of their own.
+     *
+     * @param fps The feature-packs.
+     * @return The aggregate layers.
+     * @throws ProvisioningException
+     * @throws IOException
+     */
+    public Set<String> getAggregateLayers(List<FeaturePack> fps) throws ProvisioningException, IOException {
+        Set<String> aggregates = new HashSet<>();
+        for (FeaturePack fp : fps) {
+            aggregates.addAll(loadLayers(fp).aggregates);
+        }
+        return aggregates;
+    }
+
+    /**
+     * Get the layers defined by a set of feature-packs and their dependencies.
+     *
+     * @param fps The feature-packs.
+     * @return The layers names.
+     * @throws ProvisioningException
+     * @throws IOException
+     */
+    public Set<String> getAllLayers(List<FeaturePack> fps) throws ProvisioningException, IOException {
+        Set<String> allLayers = new HashSet<>();
+        for (FeaturePack fp : fps) {
+            allLayers.addAll(getLayers(fp));
+        }
+        return allLayers;
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.common;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Remove the modules a server can't load. The reachable modules are the
+ * dependency closure of the boot module, of the product module, of the
+ * modules named by the server configurations (extensions, JDBC drivers, ee
+ * global modules, custom handlers and components), of the dependencies declared by
+ * the deployments (MANIFEST.MF Dependencies and jboss-deployment-structure.xml)
+ * and of the modules matching the allow-list.
+ *
+ * Subsystems add dependencies to deployments that are not expressed in
+ * module.xml files, the default allow-list keeps the API and implementation
+ * modules that are added that way. Pruned servers are not consistent with the
+ * recorded Galleon provisioning state anymore.
+ *
+ * @author jdenise
+ */
+public final class ModulePruner {
+
+    /**
+     * Modules kept by default. A pattern ending with {@code *} matches the
+     * module names starting with the pattern prefix.
+     */
+    public static final List<String> DEFAULT_ALLOW_LIST = Collections.unmodifiableList(Arrays.asList(
+            "javax.*", "jakarta.*", "java.*", "jdk.*", "sun.*", "ibm.*",
+            "org.jboss.resteasy.*", "org.jboss.weld.*", "org.hibernate.*", "org.eclipse.microprofile.*",
+            "org.jboss.as.product", "org.wildfly.security.elytron*", "org.jboss.as.domain-http-error-context",
+            // Added to every deployment by the logging subsystem.
+            "org.apache.commons.logging", "org.apache.log4j", "org.slf4j", "org.jboss.logging",
+            "org.jboss.logging.jul-to-slf4j-stub", "org.jboss.logmanager"));
+
+    private static final String PRODUCT_MODULE = "org.jboss.as.product";
+    private static final String DEPLOYMENT_STRUCTURE = "jboss-deployment-structure.xml";
+    private static final String MANIFEST = "META-INF/MANIFEST.MF";
+
+    /**
+     * The pruned modules.
+     */
+    public static final class Result {
+
+        private final Set<String> removed;
+        private final long files;
+        private final long bytes;
+
+        private Result(Set<String> removed, long files, long bytes) {
+            this.removed = removed;
+            this.files = files;
+            this.bytes = bytes;
+        }
+
+        public Set<String> getRemovedModules() {
+            return removed;
+        }
+
+        public long getFiles() {
+            return files;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+    }
+
+    private ModulePruner() {
+    }
+
+    /**
+     * Compute the modules that would be removed.
+     *
+     * @param jbossHome The server.
+     * @param roots Extra modules to keep, with their dependencies.
+     * @param allowList Patterns of modules to keep, with their dependencies.
+     * @return The unreachable modules, by id.
+     * @throws Exception
+     */
+    public static Map<String, FootprintAnalyzer.Module> getUnreachableModules(Path jbossHome, Collection<String> roots,
+            Collection<String> allowList) throws Exception {
+        Map<String, FootprintAnalyzer.Module> modules = FootprintAnalyzer.scanModules(jbossHome);
+        Set<String> reachable = new TreeSet<>();
+        List<String> start = new ArrayList<>(FootprintAnalyzer.getReferencedModules(jbossHome));
+        start.addAll(getProductModules(jbossHome));
+        for (String root : roots) {
+            start.add(root.indexOf(':') < 0 ? root + ":main" : root);
+        }
+        for (String id : modules.keySet()) {
+            if (isAllowed(id, allowList)) {
+                start.add(id);
+            }
+        }
+        for (String id : start) {
+            if (!reachable.contains(id)) {
+                reachable.addAll(FootprintAnalyzer.getModuleClosure(id, modules));
+            }
+        }
+        modules.keySet().removeAll(reachable);
+        return modules;
+    }
+
+    /**
+     * Remove the unreachable modules.
+     *
+     * @param jbossHome The server.
+     * @param roots Extra modules to keep, with their dependencies.
+     * @param allowList Patterns of modules to keep, with their dependencies.
+     * @return The removed modules.
+     * @throws Exception
+     */
+    public static Result prune(Path jbossHome, Collection<String> roots, Collection<String> allowList) throws Exception {
+        Map<String, FootprintAnalyzer.Module> unreachable = getUnreachableModules(jbossHome, roots, allowList);
+        long files = 0;
+        long bytes = 0;
+        for (FootprintAnalyzer.Module module : unreachable.values()) {
+            files += module.getFiles();
+            bytes += module.getBytes();
+            deleteModule(module.getDir(), jbossHome.resolve("modules"));
+        }
+        return new Result(Collections.unmodifiableSet(new TreeSet<>(unreachable.keySet())), files, bytes);
+    }
+
+    static boolean isAllowed(String id, Collection<String> allowList) {
+        String name = id.substring(0, id.lastIndexOf(':'));
+        for (String pattern : allowList) {
+            if (pattern.endsWith("*") ? name.startsWith(pattern.substring(0, pattern.length() - 1)) : name.equals(pattern)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The product module slot is configured in bin/product.conf.
+     */
+    private static List<String> getProductModules(Path jbossHome) throws IOException {
+        Path conf = jbossHome.resolve("bin").resolve("product.conf");
+        if (Files.notExists(conf)) {
+            return Collections.emptyList();
+        }
+        List<String> modules = new ArrayList<>();
+        for (String line : Files.readAllLines(conf, StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (line.startsWith("slot=")) {
+                modules.add(PRODUCT_MODULE + ":" + line.substring("slot=".length()).trim());
+            }
+        }
+        return modules;
+    }
+
+    /**
+     * Delete the files of a module, modules nested in its sub directories are
+     * kept. Then delete the empty parent directories.
+     */
+    private static void deleteModule(Path moduleDir, Path modulesRoot) throws IOException {
+        Files.walkFileTree(moduleDir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (!dir.equals(moduleDir) && Files.exists(dir.resolve("module.xml"))) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                if (isEmpty(dir)) {
+                    Files.delete(dir);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        Path parent = moduleDir.getParent();
+        while (parent != null && parent.startsWith(modulesRoot) && !parent.equals(modulesRoot) && isEmpty(parent)) {
+            Files.delete(parent);
+            parent = parent.getParent();
+        }
+    }
+
+    private static boolean isEmpty(Path dir) throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            return !stream.iterator().hasNext();
+        }
+    }
+
+    /**
+     * Get the modules a deployment declares a dependency on, in its
+     * MANIFEST.MF Dependencies header or in jboss-deployment-structure.xml.
+     * Nested archives are scanned.
+     *
+     * @param deployment The deployment archive or exploded deployment.
+     * @return The modules ids.
+     * @throws Exception
+     */
+    public static Set<String> getDeploymentDependencies(Path deployment) throws Exception {
+        Set<String> dependencies = new TreeSet<>();
+        if (Files.isDirectory(deployment)) {
+            Path manifest = deployment.resolve(MANIFEST);
+            if (Files.exists(manifest)) {
+                parseManifest(Files.readAllBytes(manifest), dependencies);
+            }
+            for (String dir : Arrays.asList("META-INF", "WEB-INF")) {
+                Path structure = deployment.resolve(dir).resolve(DEPLOYMENT_STRUCTURE);
+                if (Files.exists(structure)) {
+                    parseDeploymentStructure(Files.readAllBytes(structure), dependencies);
+                }
+            }
+            Files.walkFileTree(deployment, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    if (isArchive(file.getFileName().toString())) {
+                        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+                            scanArchive(in, dependencies);
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } else {
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(deployment))) {
+                scanArchive(in, dependencies);
+            }
+        }
+        return dependencies;
+    }
+
+    private static boolean isArchive(String name) {
+        return name.endsWith(".jar") || name.endsWith(".war") || name.endsWith(".rar");
+    }
+
+    private static void scanArchive(InputStream in, Set<String> dependencies) throws IOException {
+        // Not closed, a nested archive is read from the enclosing archive stream.
+        ZipInputStream zip = new ZipInputStream(in);
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            String name = entry.getName();
+            if (name.equals(MANIFEST)) {
+                parseManifest(readEntry(zip), dependencies);
+            } else if (name.equals("META-INF/" + DEPLOYMENT_STRUCTURE) || name.equals("WEB-INF/" + DEPLOYMENT_STRUCTURE)) {
+                parseDeploymentStructure(readEntry(zip), dependencies);
+            } else if (isArchive(name)) {
+                scanArchive(zip, dependencies);
+            }
+        }
+    }
+
+    private static byte[] readEntry(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static void parseManifest(byte[] content, Set<String> dependencies) throws IOException {
+        String header = new Manifest(new ByteArrayInputStream(content)).getMainAttributes().getValue("Dependencies");
+        if (header == null) {
+            return;
+        }
+        for (String dependency : header.split(",")) {
+            dependency = dependency.trim();
+            if (dependency.isEmpty()) {
+                continue;
+            }
+            int space = dependency.indexOf(' ');
+            String module = space < 0 ? dependency : dependency.substring(0, space);
+            dependencies.add(module.indexOf(':') < 0 ? module + ":main" : module);
+        }
+    }
+
+    private static void parseDeploymentStructure(byte[] content, Set<String> dependencies) throws IOException {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            NodeList modules = factory.newDocumentBuilder().parse(new ByteArrayInputStream(content)).getElementsByTagNameNS("*", "module");
+            for (int i = 0; i < modules.getLength(); i++) {
+                Element module = (Element) modules.item(i);
+                if ("dependencies".equals(module.getParentNode().getLocalName())) {
+                    String slot = module.getAttribute("slot");
+                    dependencies.add(module.getAttribute("name") + ":" + (slot.isEmpty() ? "main" : slot));
+                }
+            }
+        } catch (Exception ex) {
+            throw new IOException("Failed to parse " + DEPLOYMENT_STRUCTURE, ex);
+        }
+    }
+}
@@ -17,6 +17,8 @@
 package org.wildfly.plugins.bootablejar.maven.common;
 
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -63,4 +65,174 @@ public interface PluginContext {
     public boolean isDisplayCliScriptsOutputEnabled();
 
     public List<String> getExtraServerContentDirs();
+
+    /**
+     * Instrumentation used to record the build phases, records nothing by default.
+     */
+    public default Instrumentation getInstrumentation() {
+        return Instrumentation.NOOP;
+    }
+
+    /**
+     * Number of slowest CLI commands logged after a CLI session execution, 0
+     * to not log them.
+     */
+    public default int getCliSlowestCommandsReportSize() {
+        return 5;
+    }
+
+    /**
+     * A warning is logged for each CLI command slower than this threshold in
+     * milliseconds, disabled if negative.
+     */
+    public default long getCliSlowCommandThreshold() {
+        return -1;
+    }
+
+    /**
+     * Run the CLI sessions concurrently, each session against a snapshot of
+     * the server, the configuration changes are then merged.
+     */
+    public default boolean isParallelCliSessionsEnabled() {
+        return false;
+    }
+
+    /**
+     * Execute consecutive CLI sessions that only update the server
+     * configuration in a single embedded server, instead of starting an
+     * embedded server per session. Sessions that control the server lifecycle
+     * (reload, shutdown, embed-server, connect) keep their own server.
+     */
+    public default boolean isCliSessionsBootSharingEnabled() {
+        return false;
+    }
+
+    /**
+     * Directory in which the feature-packs artifact versions indexes are stored.
+     */
+    public default Path getArtifactVersionsIndexDir() {
+        return Paths.get(getProject().getBuild().getDirectory()).resolve("wildfly-jar-cache").resolve("artifact-versions");
+    }
+
+    /**
+     * Place the deployment content in the server content repository and add
+     * the deployment by hash, instead of letting the server copy the archive.
+     */
+    public default boolean isDeploymentStagingEnabled() {
+        return false;
+    }
+
+    /**
+     * Directory in which the staged deployments content and hashes are cached.
+     */
+    public default Path getDeploymentCacheDir() {
+        return Paths.get(getProject().getBuild().getDirectory()).resolve("wildfly-jar-cache").resolve("deployments");
+    }
+
+    /**
+     * Deploy the exploded project build output ({@code target/<finalName>})
+     * as unmanaged exploded content instead of the project archive. The files
+     * are linked in the server, the archive is not copied into the server and
+     * the content is only zipped once, in the bootable jar.
+     */
+    public default boolean isExplodedDeploymentEnabled() {
+        return false;
+    }
+
+    /**
+     * Add Jandex annotation indexes to the deployments and to their jars, the
+     * server doesn't scan the deployment classes at boot time.
+     */
+    public default boolean isJandexIndexingEnabled() {
+        return false;
+    }
+
+    /**
+     * Directory in which the indexed deployments and jars are cached.
+     */
+    public default Path getJandexCacheDir() {
+        return Paths.get(getProject().getBuild().getDirectory()).resolve("wildfly-jar-cache").resolve("jandex");
+    }
+
+    /**
+     * Deployments added to the server in addition to the project artifact.
+     */
+    public default List<Deployment> getExtraDeployments() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Infer the layers required by the deployments, to report the result or
+     * to provision the inferred layers instead of the configured ones.
+     */
+    public default LayerInference.Mode getLayerInferenceMode() {
+        return LayerInference.Mode.DISABLED;
+    }
+
+    /**
+     * Maximum size in bytes of the provisioned server, checked by the
+     * footprint analysis, disabled if negative.
+     */
+    public default long getServerSizeBudget() {
+        return -1;
+    }
+
+    /**
+     * Remove the modules that can't be reached from the server configuration
+     * extensions and the deployments declared dependencies.
+     */
+    public default boolean isModulePruningEnabled() {
+        return false;
+    }
+
+    /**
+     * Modules kept when pruning, in addition to
+     * {@link ModulePruner#DEFAULT_ALLOW_LIST}. A pattern ending with
+     * {@code *} matches the module names starting with the pattern prefix.
+     */
+    public default List<String> getModulePruningAllowList() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Start the packaged bootable jar once to generate a CDS archive of the
+     * loaded classes, written next to the jar with an argument file of the JVM
+     * options that use it. Requires Java 13 or later.
+     */
+    public default boolean isCdsArchiveEnabled() {
+        return false;
+    }
+
+    /**
+     * Maximum time in seconds for the CDS training server to start and to
+     * stop.
+     */
+    public default long getCdsTrainingTimeout() {
+        return 120;
+    }
+
+    /**
+     * Directory in which the CDS archives are cached.
+     */
+    public default Path getCdsCacheDir() {
+        return Paths.get(getProject().getBuild().getDirectory()).resolve("wildfly-jar-cache").resolve("cds");
+    }
+
+    /**
+     * Layout of the zipped server packaged in the bootable jar. Any layout
+     * other than {@link ServerArchive.Layout#DEFLATED} also produces the
+     * archive manifest.
+     */
+    public default ServerArchive.Layout getServerArchiveLayout() {
+        return ServerArchive.Layout.DEFLATED;
+    }
+
+    /**
+     * Timestamp, in milliseconds since the epoch, of the zipped server
+     * entries. Taken from the {@code project.build.outputTimestamp} property
+     * when set.
+     */
+    public default long getArchiveTimestamp() {
+        return ZipWriter.parseTimestamp(getProject().getProperties().getProperty("project.build.outputTimestamp"));
+    }
 }
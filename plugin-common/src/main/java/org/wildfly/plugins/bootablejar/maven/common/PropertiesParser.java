@@ -0,0 +1,398 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.common;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Single pass properties file parser. The file content is read from a file
+ * channel and decoded in chunks, the file is closed once parsed (no mapping
+ * keeps it locked). A line is assembled
+ * in a reusable buffer and strings are only created for the keys and values
+ * that are retained.
+ *
+ * @author jdenise
+ */
+public final class PropertiesParser {
+
+    public enum Syntax {
+        /**
+         * The {@link java.util.Properties#load(java.io.Reader)} syntax
+         * (comments, line continuations, escapes, {@code =}, {@code :} and
+         * whitespace separators).
+         */
+        PROPERTIES,
+        /**
+         * The feature-pack files syntax, one trimmed {@code key=value} per
+         * line, split at the first {@code =}, {@code #} comments and no
+         * escapes. Keys such as {@code groupId:artifactId} are kept as is.
+         * A line without {@code =} is an error.
+         */
+        KEY_VALUE_LINES
+    }
+
+    private static final int CHUNK_SIZE = 8 * 1024;
+
+    private final Syntax syntax;
+    private final CharsetDecoder decoder;
+    private final ReadableByteChannel channel;
+    private final ByteBuffer bytes = ByteBuffer.allocate(CHUNK_SIZE);
+    private final CharBuffer chars = CharBuffer.allocate(CHUNK_SIZE);
+    private boolean endOfInput;
+    private boolean decoded;
+    private boolean flushed;
+    private char[] lineBuf = new char[1024];
+    private final StringBuilder converted = new StringBuilder();
+    // Start and length of the key and value of the current line.
+    private int keyLen;
+    private int valueStart;
+    private int lineLen;
+
+    private PropertiesParser(ReadableByteChannel channel, Charset charset, Syntax syntax) {
+        this.channel = channel;
+        this.syntax = syntax;
+        this.decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).
+                onUnmappableCharacter(CodingErrorAction.REPLACE);
+        bytes.flip();
+        chars.flip();
+    }
+
+    /**
+     * Parse a properties file, the handler is called for each property in
+     * file order.
+     *
+     * @param file The properties file.
+     * @param charset The file charset.
+     * @param syntax The file syntax.
+     * @param handler Receives the key and the value of each property.
+     * @throws IOException
+     */
+    public static void parse(Path file, Charset charset, Syntax syntax, BiConsumer<String, String> handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            PropertiesParser parser = new PropertiesParser(channel, charset, syntax);
+            while (parser.nextLine()) {
+                handler.accept(parser.convertKey().toString(), parser.convertValue().toString());
+            }
+        }
+    }
+
+    /**
+     * Lookup the value of a property without creating the other entries. As
+     * with {@link java.util.Properties}, the last definition of a key wins.
+     *
+     * @param file The properties file.
+     * @param charset The file charset.
+     * @param syntax The file syntax.
+     * @param key The property key.
+     * @return The value or null if the key is not defined.
+     * @throws IOException
+     */
+    public static String lookup(Path file, Charset charset, Syntax syntax, String key) throws IOException {
+        return lookup(file, charset, syntax, Collections.singleton(key)).get(key);
+    }
+
+    /**
+     * Lookup the values of a set of properties without creating the other
+     * entries.
+     *
+     * @param file The properties file.
+     * @param charset The file charset.
+     * @param syntax The file syntax.
+     * @param keys The properties keys.
+     * @return The values of the defined keys.
+     * @throws IOException
+     */
+    public static Map<String, String> lookup(Path file, Charset charset, Syntax syntax, Set<String> keys) throws IOException {
+        Map<String, String> values = new HashMap<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            PropertiesParser parser = new PropertiesParser(channel, charset, syntax);
+            while (parser.nextLine()) {
+                StringBuilder key = parser.convertKey();
+                for (String k : keys) {
+                    if (k.contentEquals(key)) {
+                        values.put(k, parser.convertValue().toString());
+                        break;
+                    }
+                }
+            }
+        }
+        return values;
+    }
+
+    private int nextChar() throws IOException {
+        while (!chars.hasRemaining()) {
+            if (flushed) {
+                return -1;
+            }
+            chars.clear();
+            CoderResult result;
+            if (!decoded) {
+                if (!endOfInput) {
+                    bytes.compact();
+                    endOfInput = channel.read(bytes) < 0;
+                    bytes.flip();
+                }
+                result = decoder.decode(bytes, chars, endOfInput);
+                if (endOfInput && result.isUnderflow()) {
+                    decoded = true;
+                }
+            } else {
+                result = decoder.flush(chars);
+                if (result.isUnderflow()) {
+                    flushed = true;
+                }
+            }
+            if (result.isError()) {
+                try {
+                    result.throwException();
+                } catch (CharacterCodingException ex) {
+                    throw new IOException(ex);
+                }
+            }
+            chars.flip();
+        }
+        return chars.get();
+    }
+
+    private void append(char c) {
+        if (lineLen == lineBuf.length) {
+            lineBuf = Arrays.copyOf(lineBuf, lineLen * 2);
+        }
+        lineBuf[lineLen++] = c;
+    }
+
+    /**
+     * Read the next logical line, skipping comments and blank lines, joining
+     * continuation lines. Then locate the key and the value.
+     */
+    private boolean nextLine() throws IOException {
+        if (syntax == Syntax.KEY_VALUE_LINES) {
+            return nextKeyValueLine();
+        }
+        lineLen = 0;
+        boolean skipWhiteSpace = true;
+        boolean isCommentLine = false;
+        boolean isNewLine = true;
+        boolean appendedLineBegin = false;
+        boolean precedingBackslash = false;
+        boolean skipLF = false;
+        while (true) {
+            int read = nextChar();
+            if (read < 0) {
+                if (lineLen == 0 || isCommentLine) {
+                    return false;
+                }
+                if (precedingBackslash) {
+                    lineLen--;
+                }
+                break;
+            }
+            char c = (char) read;
+            if (skipLF) {
+                skipLF = false;
+                if (c == '\n') {
+                    continue;
+                }
+            }
+            if (skipWhiteSpace) {
+                if (c == ' ' || c == '\t' || c == '\f') {
+                    continue;
+                }
+                if (!appendedLineBegin && (c == '\r' || c == '\n')) {
+                    continue;
+                }
+                skipWhiteSpace = false;
+                appendedLineBegin = false;
+            }
+            if (isNewLine) {
+                isNewLine = false;
+                if (c == '#' || c == '!') {
+                    isCommentLine = true;
+                    continue;
+                }
+            }
+            if (c != '\n' && c != '\r') {
+                if (!isCommentLine) {
+                    append(c);
+                }
+                precedingBackslash = c == '\\' && !precedingBackslash;
+            } else {
+                if (isCommentLine || lineLen == 0) {
+                    isCommentLine = false;
+                    isNewLine = true;
+                    skipWhiteSpace = true;
+                    precedingBackslash = false;
+                    lineLen = 0;
+                    continue;
+                }
+                if (precedingBackslash) {
+                    // Continuation, the backslash is removed and the next line appended.
+                    lineLen--;
+                    skipWhiteSpace = true;
+                    appendedLineBegin = true;
+                    precedingBackslash = false;
+                    if (c == '\r') {
+                        skipLF = true;
+                    }
+                } else {
+                    break;
+                }
+            }
+        }
+        splitLine();
+        return true;
+    }
+
+    private boolean nextKeyValueLine() throws IOException {
+        while (true) {
+            lineLen = 0;
+            int read = nextChar();
+            if (read < 0) {
+                return false;
+            }
+            while (read >= 0 && read != '\n' && read != '\r') {
+                append((char) read);
+                read = nextChar();
+            }
+            // Trimmed as String.trim() does, the empty line that follows a \r of a \r\n sequence is skipped.
+            int start = 0;
+            while (start < lineLen && lineBuf[start] <= ' ') {
+                start++;
+            }
+            while (lineLen > start && lineBuf[lineLen - 1] <= ' ') {
+                lineLen--;
+            }
+            if (start == lineLen || lineBuf[start] == '#') {
+                continue;
+            }
+            if (start > 0) {
+                System.arraycopy(lineBuf, start, lineBuf, 0, lineLen - start);
+                lineLen -= start;
+            }
+            keyLen = 0;
+            while (keyLen < lineLen && lineBuf[keyLen] != '=') {
+                keyLen++;
+            }
+            if (keyLen == lineLen) {
+                throw new IllegalArgumentException("Failed to parse property " + new String(lineBuf, 0, lineLen));
+            }
+            valueStart = keyLen + 1;
+            return true;
+        }
+    }
+
+    private void splitLine() {
+        keyLen = 0;
+        valueStart = lineLen;
+        boolean hasSep = false;
+        boolean precedingBackslash = false;
+        while (keyLen < lineLen) {
+            char c = lineBuf[keyLen];
+            if ((c == '=' || c == ':') && !precedingBackslash) {
+                valueStart = keyLen + 1;
+                hasSep = true;
+                break;
+            } else if ((c == ' ' || c == '\t' || c == '\f') && !precedingBackslash) {
+                valueStart = keyLen + 1;
+                break;
+            }
+            precedingBackslash = c == '\\' && !precedingBackslash;
+            keyLen++;
+        }
+        while (valueStart < lineLen) {
+            char c = lineBuf[valueStart];
+            if (c != ' ' && c != '\t' && c != '\f') {
+                if (!hasSep && (c == '=' || c == ':')) {
+                    hasSep = true;
+                } else {
+                    break;
+                }
+            }
+            valueStart++;
+        }
+    }
+
+    private StringBuilder convertKey() {
+        return convert(0, keyLen);
+    }
+
+    private StringBuilder convertValue() {
+        return convert(valueStart, lineLen - valueStart);
+    }
+
+    /**
+     * Process escapes, the returned builder is reused by the next conversion.
+     */
+    private StringBuilder convert(int off, int len) {
+        converted.setLength(0);
+        if (syntax == Syntax.KEY_VALUE_LINES) {
+            return converted.append(lineBuf, off, len);
+        }
+        int end = off + len;
+        while (off < end) {
+            char c = lineBuf[off++];
+            if (c == '\\' && off < end) {
+                c = lineBuf[off++];
+                if (c == 'u') {
+                    if (off + 4 > end) {
+                        throw new IllegalArgumentException("Malformed \\uxxxx encoding.");
+                    }
+                    int value = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(lineBuf[off++], 16);
+                        if (digit < 0) {
+                            throw new IllegalArgumentException("Malformed \\uxxxx encoding.");
+                        }
+                        value = (value << 4) + digit;
+                    }
+                    converted.append((char) value);
+                } else {
+                    if (c == 't') {
+                        c = '\t';
+                    } else if (c == 'r') {
+                        c = '\r';
+                    } else if (c == 'n') {
+                        c = '\n';
+                    } else if (c == 'f') {
+                        c = '\f';
+                    }
+                    converted.append(c);
+                }
+            } else {
+                converted.append(c);
+            }
+        }
+        return converted;
+    }
+}
@@ -0,0 +1,362 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.common;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * The zipped server packaged in the bootable jar. In addition to the
+ * historical deflated layout, the server can be zipped in layouts that are
+ * faster to extract: entries stored without compression, or only the entries
+ * that are not already compressed are deflated. Whatever the layout, the
+ * archive is a regular, reproducible, zip file written by {@link ZipWriter}.
+ *
+ * A manifest, written next to the archive, lists the entries with their
+ * offset in the archive, their sizes and their compression method. Entries
+ * can then be extracted concurrently, stored entries are copied from the
+ * archive without being decoded.
+ *
+ * @author jdenise
+ */
+public final class ServerArchive {
+
+    public enum Layout {
+        /**
+         * Entries deflated, the historical layout. Already compressed content
+         * is stored.
+         */
+        DEFLATED,
+        /**
+         * All entries stored, no decompression when extracting.
+         */
+        STORED,
+        /**
+         * Already compressed files (jars, archives, images) are stored, the
+         * other files are deflated.
+         */
+        MIXED
+    }
+
+    /**
+     * An archive entry, as listed in the manifest.
+     */
+    public static final class Entry {
+
+        private final String path;
+        private final int method;
+        private final long offset;
+        private final long compressedSize;
+        private final long size;
+        private final long crc;
+
+        Entry(String path, int method, long offset, long compressedSize, long size, long crc) {
+            this.path = path;
+            this.method = method;
+            this.offset = offset;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.crc = crc;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public boolean isDirectory() {
+            return path.endsWith("/");
+        }
+
+        /**
+         * @return {@link ZipEntry#STORED} or {@link ZipEntry#DEFLATED}.
+         */
+        public int getMethod() {
+            return method;
+        }
+
+        /**
+         * @return The offset of the entry local header in the archive.
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+    }
+
+    public static final String ZIP = "wildfly.zip";
+    public static final String MANIFEST = "wildfly.zip.manifest";
+
+    static final Set<String> COMPRESSED_EXTENSIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "jar", "zip", "war", "ear", "rar", "sar", "gz", "tgz", "bz2", "xz", "png", "jpg", "jpeg", "gif")));
+
+    private static final String MANIFEST_HEADER = "# wildfly.zip manifest 1";
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+
+    private ServerArchive() {
+    }
+
+    /**
+     * Zip a server. The archive is reproducible, entries are sorted and have
+     * the same timestamp.
+     *
+     * @param ctx The plugin context.
+     * @param jbossHome The server.
+     * @param zip The archive to create.
+     * @param layout The archive layout.
+     * @param timestamp The entries timestamp, in milliseconds since the epoch.
+     * @return The archive entries, in archive order.
+     * @throws Exception
+     */
+    public static List<Entry> write(PluginContext ctx, Path jbossHome, Path zip, Layout layout, long timestamp) throws Exception {
+        List<ZipWriter.Source> sources = new ArrayList<>();
+        try (Stream<Path> stream = Files.walk(jbossHome)) {
+            for (Path path : stream.filter(p -> !p.equals(jbossHome)).collect(Collectors.toList())) {
+                String name = jbossHome.relativize(path).toString().replace('\\', '/');
+                if (Files.isDirectory(path)) {
+                    sources.add(new ZipWriter.Source(name + "/", null, true));
+                } else {
+                    sources.add(new ZipWriter.Source(name, path, isStored(name, layout)));
+                }
+            }
+        }
+        List<Entry> entries = new ArrayList<>(sources.size());
+        for (ZipWriter.Entry entry : new ZipWriter(ctx, timestamp).write(zip, sources)) {
+            entries.add(new Entry(entry.getName(), entry.getMethod(), entry.getOffset(), entry.getCompressedSize(),
+                    entry.getSize(), entry.getCrc()));
+        }
+        return entries;
+    }
+
+    static boolean isStored(String name, Layout layout) {
+        switch (layout) {
+            case STORED:
+                return true;
+            case MIXED: {
+                int i = name.lastIndexOf('.');
+                return i > name.lastIndexOf('/') && COMPRESSED_EXTENSIONS.contains(name.substring(i + 1).toLowerCase(Locale.ENGLISH));
+            }
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Write the manifest of an archive. One line per entry: method, offset,
+     * compressed size, size, CRC and path.
+     *
+     * @param entries The archive entries.
+     * @param manifest The manifest file.
+     * @throws IOException
+     */
+    public static void writeManifest(List<Entry> entries, Path manifest) throws IOException {
+        long total = 0;
+        for (Entry entry : entries) {
+            total += entry.size;
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(manifest, StandardCharsets.UTF_8)) {
+            writer.write(MANIFEST_HEADER);
+            writer.newLine();
+            writer.write("# entries=" + entries.size() + " size=" + total);
+            writer.newLine();
+            for (Entry entry : entries) {
+                writer.write(entry.method + " " + entry.offset + " " + entry.compressedSize + " " + entry.size + " "
+                        + Long.toHexString(entry.crc) + " " + entry.path);
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Read an archive manifest.
+     *
+     * @param manifest The manifest file.
+     * @return The archive entries.
+     * @throws IOException
+     */
+    public static List<Entry> readManifest(Path manifest) throws IOException {
+        List<String> lines = Files.readAllLines(manifest, StandardCharsets.UTF_8);
+        if (lines.isEmpty() || !lines.get(0).equals(MANIFEST_HEADER)) {
+            throw new IOException("Invalid server archive manifest " + manifest);
+        }
+        List<Entry> entries = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split(" ", 6);
+            if (fields.length != 6) {
+                throw new IOException("Invalid server archive manifest line " + line);
+            }
+            entries.add(new Entry(fields[5], Integer.parseInt(fields[0]), Long.parseLong(fields[1]),
+                    Long.parseLong(fields[2]), Long.parseLong(fields[3]), Long.parseLong(fields[4], 16)));
+        }
+        return entries;
+    }
+
+    /**
+     * Extract an archive using its manifest, files are extracted concurrently.
+     *
+     * @param ctx The plugin context.
+     * @param zip The archive.
+     * @param entries The archive entries, from its manifest.
+     * @param target The directory in which the archive is extracted.
+     * @throws Exception
+     */
+    public static void extract(PluginContext ctx, Path zip, List<Entry> entries, Path target) throws Exception {
+        Path root = target.toAbsolutePath().normalize();
+        List<Entry> files = new ArrayList<>();
+        for (Entry entry : entries) {
+            Path path = resolve(root, entry);
+            if (entry.isDirectory()) {
+                Files.createDirectories(path);
+            } else {
+                files.add(entry);
+            }
+        }
+        try (FileChannel channel = FileChannel.open(zip, StandardOpenOption.READ);
+                BuildPipeline pipeline = new BuildPipeline(ctx)) {
+            int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+            for (int t = 0; t < threads; t++) {
+                int first = t;
+                pipeline.stage("server-extraction", () -> {
+                    Inflater inflater = new Inflater(true);
+                    try {
+                        for (int i = first; i < files.size(); i += threads) {
+                            extract(channel, files.get(i), resolve(root, files.get(i)), inflater);
+                        }
+                    } finally {
+                        inflater.end();
+                    }
+                });
+            }
+            pipeline.await();
+        }
+    }
+
+    private static Path resolve(Path root, Entry entry) throws IOException {
+        Path path = root.resolve(entry.path).normalize();
+        if (!path.startsWith(root)) {
+            throw new IOException("Invalid server archive entry " + entry.path);
+        }
+        return path;
+    }
+
+    private static void extract(FileChannel channel, Entry entry, Path file, Inflater inflater) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(LOCAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, header, entry.offset);
+        if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("Invalid local header for " + entry.path);
+        }
+        long dataOffset = entry.offset + LOCAL_HEADER_SIZE + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+        Path parent = file.getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        CRC32 crc = new CRC32();
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            byte[] buffer = new byte[(int) Math.min(Math.max(entry.size, 1), 64 * 1024)];
+            ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+            if (entry.method == ZipEntry.STORED) {
+                // Read through a buffer rather than transferred, the CRC is computed while copying.
+                long position = 0;
+                while (position < entry.size) {
+                    wrapped.clear().limit((int) Math.min(buffer.length, entry.size - position));
+                    int read = channel.read(wrapped, dataOffset + position);
+                    if (read <= 0) {
+                        throw new ZipException("Truncated entry " + entry.path);
+                    }
+                    crc.update(buffer, 0, read);
+                    write(out, wrapped, read);
+                    position += read;
+                }
+            } else {
+                ByteBuffer compressed = ByteBuffer.allocate((int) entry.compressedSize);
+                readFully(channel, compressed, dataOffset);
+                inflater.reset();
+                inflater.setInput(compressed.array());
+                long written = 0;
+                try {
+                    while (written < entry.size) {
+                        int inflated = inflater.inflate(buffer);
+                        if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+                            throw new ZipException("Truncated entry " + entry.path);
+                        }
+                        crc.update(buffer, 0, inflated);
+                        write(out, wrapped, inflated);
+                        written += inflated;
+                    }
+                } catch (DataFormatException ex) {
+                    throw new ZipException("Invalid entry " + entry.path + ": " + ex.getMessage());
+                }
+            }
+        }
+        if (crc.getValue() != entry.crc) {
+            throw new ZipException("Invalid CRC for entry " + entry.path);
+        }
+    }
+
+    private static void write(FileChannel out, ByteBuffer buffer, int length) throws IOException {
+        buffer.clear().limit(length);
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new ZipException("Unexpected end of server archive");
+            }
+        }
+        buffer.flip();
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.common;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import org.jboss.galleon.ProvisioningManager;
+import org.jboss.galleon.config.ProvisioningConfig;
+
+/**
+ * Provision several variants of a server (for example plain, cloud and with
+ * extra layers) from a single builder. The variants share the feature-packs
+ * resolution done by the provisioning manager. Variants that result in the
+ * same provisioning configuration are provisioned once, the other variants
+ * servers are clones: files are hard linked and the standalone directory,
+ * written by CLI scripts and the server, is copied. Content that replaces a
+ * file in a clone (extra content, CLI) doesn't change the other variants.
+ *
+ * The CLI scripts and extra content of each variant are applied by the caller
+ * once all the variants have been provisioned.
+ *
+ * @author jdenise
+ */
+public final class ServerVariants {
+
+    /**
+     * A server variant, layers and extra content added to the base server.
+     */
+    public static final class Variant {
+
+        private final String name;
+        private final Set<String> extraLayers;
+        private final List<String> excludedLayers;
+        private final List<String> extraServerContentDirs;
+
+        public Variant(String name, Set<String> extraLayers, List<String> excludedLayers, List<String> extraServerContentDirs) {
+            this.name = Objects.requireNonNull(name);
+            this.extraLayers = extraLayers == null ? Collections.emptySet() : Collections.unmodifiableSet(new LinkedHashSet<>(extraLayers));
+            this.excludedLayers = excludedLayers == null ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(excludedLayers));
+            this.extraServerContentDirs = extraServerContentDirs == null ? Collections.emptyList()
+                    : Collections.unmodifiableList(new ArrayList<>(extraServerContentDirs));
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Set<String> getExtraLayers() {
+            return extraLayers;
+        }
+
+        public List<String> getExcludedLayers() {
+            return excludedLayers;
+        }
+
+        public List<String> getExtraServerContentDirs() {
+            return extraServerContentDirs;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * Provision a server.
+     */
+    public interface Provisioner {
+
+        void provision(ProvisioningConfig config, Path jbossHome) throws Exception;
+    }
+
+    private ServerVariants() {
+    }
+
+    /**
+     * Provision the variants servers.
+     *
+     * @param ctx The plugin context.
+     * @param builder The base configuration builder.
+     * @param pm The provisioning manager, shared by all the variants.
+     * @param variants The variants.
+     * @param targetDir The directory in which a server directory is created
+     * for each variant, named after the variant.
+     * @param provisioner Provision a server.
+     * @return The server of each variant, by variant name.
+     * @throws Exception
+     */
+    public static Map<String, Path> provision(PluginContext ctx, GalleonConfigBuilder builder, ProvisioningManager pm,
+            List<Variant> variants, Path targetDir, Provisioner provisioner) throws Exception {
+        Map<String, Path> servers = new LinkedHashMap<>();
+        List<ProvisioningConfig> configs = new ArrayList<>();
+        List<Path> provisioned = new ArrayList<>();
+        LayoutSession session = new LayoutSession(pm);
+        for (Variant variant : variants) {
+            if (servers.containsKey(variant.getName())) {
+                throw new Exception("Variant " + variant.getName() + " is defined more than once");
+            }
+            Path jbossHome = targetDir.resolve(variant.getName());
+            ProvisioningConfig config = builder.forVariant(variant).buildGalleonConfig(session).buildConfig();
+            int index = configs.indexOf(config);
+            if (config != null && index >= 0) {
+                ctx.getLog().info("Variant " + variant.getName() + " cloned from " + provisioned.get(index));
+                try (Instrumentation.Span span = ctx.getInstrumentation().start(Instrumentation.PROVISIONING)) {
+                    cloneServer(provisioned.get(index), jbossHome);
+                }
+            } else {
+                ctx.getLog().info("Provisioning variant " + variant.getName());
+                Utils.deleteDir(jbossHome);
+                provisioner.provision(config, jbossHome);
+                configs.add(config);
+                provisioned.add(jbossHome);
+            }
+            servers.put(variant.getName(), jbossHome);
+        }
+        return servers;
+    }
+
+    /**
+     * Copy the variant extra content to its server.
+     *
+     * @param ctx The plugin context.
+     * @param variant The variant.
+     * @param jbossHome The variant server.
+     * @throws Exception
+     */
+    public static void copyExtraContent(PluginContext ctx, Variant variant, Path jbossHome) throws Exception {
+        Utils.copyExtraContent(ctx, jbossHome, variant.getExtraServerContentDirs());
+    }
+
+    /**
+     * Clone a server, files are hard linked, the standalone directory is
+     * copied.
+     *
+     * @param source The server.
+     * @param target The clone, removed if it exists.
+     * @throws IOException
+     */
+    public static void cloneServer(Path source, Path target) throws IOException {
+        Utils.deleteDir(target);
+        Path standalone = source.resolve(Constants.STANDALONE);
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(target.resolve(source.relativize(dir).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Path cloned = target.resolve(source.relativize(file).toString());
+                if (file.startsWith(standalone)) {
+                    Files.copy(file, cloned, StandardCopyOption.COPY_ATTRIBUTES);
+                } else {
+                    try {
+                        Files.createLink(cloned, file);
+                    } catch (IOException | UnsupportedOperationException ex) {
+                        Files.copy(file, cloned, StandardCopyOption.COPY_ATTRIBUTES);
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -16,11 +16,8 @@
  */
 package org.wildfly.plugins.bootablejar.maven.common;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
@@ -29,13 +26,12 @@ import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.DefaultArtifact;
 import org.apache.maven.artifact.handler.DefaultArtifactHandler;
@@ -44,12 +40,7 @@ import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.project.MavenProject;
 import org.jboss.galleon.ProvisioningException;
 import org.jboss.galleon.ProvisioningManager;
-import org.jboss.galleon.config.ConfigId;
-import org.jboss.galleon.config.FeaturePackConfig;
-import org.jboss.galleon.config.ProvisioningConfig;
-import org.jboss.galleon.layout.FeaturePackLayout;
-import org.jboss.galleon.layout.ProvisioningLayout;
-import org.jboss.galleon.universe.FeaturePackLocation;
+import org.jboss.galleon.runtime.FeaturePackRuntime;
 import org.jboss.galleon.universe.maven.MavenArtifact;
 import org.jboss.galleon.universe.maven.MavenUniverseException;
 import org.jboss.galleon.util.IoUtils;
@@ -91,8 +82,6 @@ public class Utils {
         }
     }
 
-    private static final Pattern WHITESPACE_IF_NOT_QUOTED = Pattern.compile("(\\S+\"[^\"]+\")|\\S+");
-
     public static String getBootableJarPath(String jarFileName, MavenProject project, String goal) throws MojoExecutionException {
         String jarName = jarFileName;
         if (jarName == null) {
@@ -116,84 +105,219 @@ public class Utils {
      */
     public static List<String> splitArguments(final CharSequence arguments) {
         final List<String> args = new ArrayList<>();
-        final Matcher m = WHITESPACE_IF_NOT_QUOTED.matcher(arguments);
-        while (m.find()) {
-            final String value = m.group();
-            if (!value.isEmpty()) {
-                args.add(value);
-            }
-        }
+        splitArguments(arguments, args);
         return args;
     }
 
-    public static ProvisioningSpecifics getSpecifics(List<FeaturePack> fps, ProvisioningManager pm) throws ProvisioningException, IOException {
-        return new ProvisioningSpecifics(getAllLayers(fps, pm));
-    }
-
-    private static Set<String> getAllLayers(List<FeaturePack> fps, ProvisioningManager pm) throws ProvisioningException, IOException {
-        Set<String> allLayers = new HashSet<>();
-        for (FeaturePack fp : fps) {
-            final FeaturePackLocation fpl;
-            if (fp.getNormalizedPath() != null) {
-                fpl = pm.getLayoutFactory().addLocal(fp.getNormalizedPath(), false);
-            } else if (fp.getGroupId() != null && fp.getArtifactId() != null) {
-                String coords = fp.getMavenCoords();
-                fpl = FeaturePackLocation.fromString(coords);
+    /**
+     * Splits the arguments and appends them to the provided list. The arguments are split based on whitespace while
+     * ignoring whitespace that is within double quotes, a quoted section can start in the middle of an argument.
+     * Inside a quoted section, a backslash followed by a quote is an escaped quote that doesn't end the section,
+     * unless the quote ends the arguments, or is followed by whitespace and no later quote closes the section: a
+     * Windows path such as {@code "C:\dir\"} ends with a backslash. A later quote closes the section if it is not
+     * preceded by a backslash and is followed by whitespace or ends the arguments. Elsewhere a backslash is a
+     * literal character. Quotes and backslashes
+     * are kept in the arguments. An unterminated quoted section extends to the end of the arguments.
+     *
+     * @param arguments the arguments to split
+     * @param args the list to which arguments are added
+     */
+    public static void splitArguments(final CharSequence arguments, final List<String> args) {
+        final int length = arguments.length();
+        int start = -1;
+        boolean quoted = false;
+        int i = 0;
+        while (i < length) {
+            final char c = arguments.charAt(i);
+            if (quoted) {
+                if (c == '\\' && i + 2 < length && arguments.charAt(i + 1) == '"'
+                        && (!Character.isWhitespace(arguments.charAt(i + 2)) || isClosedAfter(arguments, i + 2))) {
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                }
+            } else if (Character.isWhitespace(c)) {
+                if (start >= 0) {
+                    args.add(arguments.subSequence(start, i).toString());
+                    start = -1;
+                }
             } else {
-                fpl = FeaturePackLocation.fromString(fp.getLocation());
-            }
-            ProvisioningConfig pConfig = ProvisioningConfig.builder().
-                    addFeaturePackDep(FeaturePackConfig.builder(fpl).build()).build();
-            try (ProvisioningLayout<FeaturePackLayout> layout = pm.
-                    getLayoutFactory().newConfigLayout(pConfig)) {
-                allLayers.addAll(getAllLayers(layout));
+                if (start < 0) {
+                    start = i;
+                }
+                if (c == '"') {
+                    quoted = true;
+                }
             }
+            i++;
+        }
+        if (start >= 0) {
+            args.add(arguments.subSequence(start, length).toString());
         }
-        return allLayers;
     }
 
-    private static Set<String> getAllLayers(ProvisioningLayout<FeaturePackLayout> pLayout)
-            throws ProvisioningException, IOException {
-        Set<String> layers = new HashSet<>();
-        for (FeaturePackLayout fp : pLayout.getOrderedFeaturePacks()) {
-            for (ConfigId layer : fp.loadLayers()) {
-                layers.add(layer.getName());
+    private static boolean isClosedAfter(final CharSequence arguments, final int from) {
+        for (int i = from; i < arguments.length(); i++) {
+            if (arguments.charAt(i) == '"' && arguments.charAt(i - 1) != '\\') {
+                return i + 1 == arguments.length() || Character.isWhitespace(arguments.charAt(i + 1));
             }
         }
-        return layers;
+        return false;
+    }
+
+    public static ProvisioningSpecifics getSpecifics(List<FeaturePack> fps, ProvisioningManager pm) throws ProvisioningException, IOException {
+        return getSpecifics(fps, new LayoutSession(pm));
+    }
+
+    public static ProvisioningSpecifics getSpecifics(List<FeaturePack> fps, LayoutSession session) throws ProvisioningException, IOException {
+        return new ProvisioningSpecifics(getAllLayers(fps, session));
+    }
+
+    public static ProvisioningSpecifics getSpecifics(PluginContext ctx, List<FeaturePack> fps, ProvisioningManager pm) throws ProvisioningException, IOException {
+        return getSpecifics(ctx, fps, new LayoutSession(pm));
+    }
+
+    /**
+     * Discover the layers with a layout session, to be shared with
+     * {@link GalleonConfigBuilder#buildGalleonConfig(LayoutSession)}.
+     */
+    public static ProvisioningSpecifics getSpecifics(PluginContext ctx, List<FeaturePack> fps, LayoutSession session) throws ProvisioningException, IOException {
+        Instrumentation instrumentation = ctx.getInstrumentation();
+        try (Instrumentation.Span span = instrumentation.start(Instrumentation.LAYER_DISCOVERY)) {
+            instrumentation.increment("feature-packs", fps.size());
+            return getSpecifics(fps, session);
+        }
+    }
+
+    public static Set<String> getAllLayers(List<FeaturePack> fps, LayoutSession session) throws ProvisioningException, IOException {
+        return session.getAllLayers(fps);
+    }
+
+    /**
+     * Infer the layers required by the deployments, according to the context
+     * layer inference mode. The inference is only done for a layers based
+     * configuration with deployments. The layers that CLI scripts configure
+     * are not inferred, the inferred layers can't be applied when the server
+     * is configured by CLI sessions.
+     *
+     * @param ctx The plugin context.
+     * @param session The layout session.
+     * @param fps The feature-packs.
+     * @param layers The configured layers.
+     * @param cliSessions true if the server is configured by CLI sessions.
+     * @return The layers to provision.
+     * @throws Exception
+     */
+    public static List<String> inferLayers(PluginContext ctx, LayoutSession session, List<FeaturePack> fps, List<String> layers,
+            boolean cliSessions) throws Exception {
+        LayerInference.Mode mode = ctx.getLayerInferenceMode();
+        if (mode == LayerInference.Mode.DISABLED || layers.isEmpty()) {
+            return layers;
+        }
+        if (mode == LayerInference.Mode.APPLY && cliSessions) {
+            throw new MojoExecutionException("The inferred layers can't be applied to a server configured by CLI sessions, "
+                    + "the layers used by the CLI scripts are not inferred. Use the " + LayerInference.Mode.REPORT + " mode.");
+        }
+        List<Path> deployments = new ArrayList<>();
+        for (Deployment deployment : getDeployments(ctx)) {
+            deployments.add(deployment.getFile().toPath());
+        }
+        if (deployments.isEmpty()) {
+            return layers;
+        }
+        LayerInference.Result result;
+        Instrumentation instrumentation = ctx.getInstrumentation();
+        try (Instrumentation.Span span = instrumentation.start(Instrumentation.LAYER_INFERENCE)) {
+            instrumentation.increment("inferred-deployments", deployments.size());
+            result = LayerInference.infer(LayerInference.scan(deployments), layers,
+                    session.getLayerDependencies(fps), session.getAggregateLayers(fps));
+        }
+        result.log(ctx.getLog());
+        Path report = Paths.get(ctx.getProject().getBuild().getDirectory()).resolve(LayerInference.REPORT_FILE);
+        result.writeReport(report);
+        ctx.getLog().info("Layer inference report written to " + report);
+        return mode == LayerInference.Mode.APPLY ? result.getProposedLayers() : layers;
+    }
+
+    /**
+     * Analyze the footprint of the provisioned server, write the report and
+     * check the server size budget.
+     *
+     * @param ctx The plugin context.
+     * @param session The layout session.
+     * @param fps The feature-packs.
+     * @param layers The provisioned layers.
+     * @param excludedLayers The excluded layers.
+     * @return The report.
+     * @throws Exception
+     */
+    public static FootprintAnalyzer.Report analyzeFootprint(PluginContext ctx, LayoutSession session, List<FeaturePack> fps,
+            Collection<String> layers, Collection<String> excludedLayers) throws Exception {
+        Set<String> provisioned = LayerInference.closure(layers, session.getLayerDependencies(fps));
+        provisioned.removeAll(excludedLayers);
+        FootprintAnalyzer.Report report = FootprintAnalyzer.analyze(ctx.getJBossHome(), provisioned, session.getLayerPackages(fps));
+        Path file = Paths.get(ctx.getProject().getBuild().getDirectory()).resolve(FootprintAnalyzer.REPORT_FILE);
+        report.writeReport(file);
+        report.log(ctx.getLog(), 10);
+        ctx.getLog().info("Server footprint report written to " + file);
+        long budget = ctx.getServerSizeBudget();
+        if (budget >= 0 && report.getTotalBytes() > budget) {
+            throw new MojoExecutionException("Server size " + report.getTotalBytes() + " bytes exceeds the budget of " + budget + " bytes");
+        }
+        return report;
+    }
+
+    public static ArtifactVersionsIndex getArtifactVersionsIndex(PluginContext ctx, FeaturePackRuntime fprt) throws ProvisioningException, IOException {
+        return ArtifactVersionsIndex.load(fprt, ctx.getArtifactVersionsIndexDir());
     }
 
     public static void readProperties(Path propsFile, Map<String, String> propsMap) throws Exception {
-        try (BufferedReader reader = Files.newBufferedReader(propsFile)) {
-            String line = reader.readLine();
-            while (line != null) {
-                line = line.trim();
-                if (!line.isEmpty() && line.charAt(0) != '#') {
-                    final int i = line.indexOf('=');
-                    if (i < 0) {
-                        throw new Exception("Failed to parse property " + line + " from " + propsFile);
-                    }
-                    propsMap.put(line.substring(0, i), line.substring(i + 1));
-                }
-                line = reader.readLine();
-            }
+        try {
+            PropertiesParser.parse(propsFile, StandardCharsets.UTF_8, PropertiesParser.Syntax.KEY_VALUE_LINES, propsMap::put);
+        } catch (IllegalArgumentException ex) {
+            throw new Exception(ex.getMessage() + " from " + propsFile);
         }
     }
 
     // Get Artifact, syntax comply with WildFly feature-pack versions file.
     public static Artifact getArtifact(String str) {
-        final String[] parts = str.split(":");
-        final String groupId = parts[0];
-        final String artifactId = parts[1];
-        String version = parts[2];
-        String classifier = parts[3];
-        String extension = parts[4];
+        return getArtifact(str, 0, str.length(), null);
+    }
+
+    // Parse groupId:artifactId:version:classifier:extension in a region of the string,
+    // the pool (if any) is used to share groupId, version and extension instances.
+    static Artifact getArtifact(String str, int start, int end, Map<String, String> pool) {
+        final int[] separators = new int[4];
+        int from = start;
+        for (int i = 0; i < separators.length; i++) {
+            int index = str.indexOf(':', from);
+            if (index < 0 || index >= end) {
+                throw new IllegalArgumentException("Invalid artifact " + str.substring(start, end));
+            }
+            separators[i] = index;
+            from = index + 1;
+        }
+        final String groupId = share(str.substring(start, separators[0]), pool);
+        final String artifactId = str.substring(separators[0] + 1, separators[1]);
+        final String version = share(str.substring(separators[1] + 1, separators[2]), pool);
+        final String classifier = str.substring(separators[2] + 1, separators[3]);
+        int extensionEnd = str.indexOf(':', separators[3] + 1);
+        final String extension = share(str.substring(separators[3] + 1,
+                extensionEnd < 0 || extensionEnd > end ? end : extensionEnd), pool);
 
         return new DefaultArtifact(groupId, artifactId, version,
                 "provided", extension, classifier,
                 new DefaultArtifactHandler(extension));
     }
 
+    private static String share(String value, Map<String, String> pool) {
+        if (pool == null) {
+            return value;
+        }
+        String shared = pool.putIfAbsent(value, value);
+        return shared == null ? value : shared;
+    }
+
     public static Properties loadProperties(PluginContext ctx, String propertiesFile) throws Exception {
         File f = new File(propertiesFile);
         Path filePath = resolvePath(ctx.getProject(), f.toPath());
@@ -201,10 +325,9 @@ public class Utils {
             throw new RuntimeException("Cli properties file " + filePath + " doesn't exist");
         }
         final Properties props = new Properties();
-        try (InputStreamReader inputStreamReader = new InputStreamReader(new FileInputStream(filePath.toFile()),
-                StandardCharsets.UTF_8)) {
-            props.load(inputStreamReader);
-        } catch (IOException e) {
+        try {
+            PropertiesParser.parse(filePath, StandardCharsets.UTF_8, PropertiesParser.Syntax.PROPERTIES, props::setProperty);
+        } catch (IOException | IllegalArgumentException e) {
             throw new Exception(
                     "Failed to load properties from " + propertiesFile + ": " + e.getLocalizedMessage());
         }
@@ -222,7 +345,27 @@ public class Utils {
     }
 
     public static void copyExtraContent(PluginContext ctx) throws Exception {
-        for (String path : ctx.getExtraServerContentDirs()) {
+        copyExtraContent(ctx, ctx.getJBossHome(), ctx.getExtraServerContentDirs());
+    }
+
+    /**
+     * Copy extra content directories to a server.
+     *
+     * @param ctx The plugin context.
+     * @param jbossHome The server.
+     * @param extraContentDirs The extra content directories.
+     * @throws Exception
+     */
+    public static void copyExtraContent(PluginContext ctx, Path jbossHome, List<String> extraContentDirs) throws Exception {
+        Instrumentation instrumentation = ctx.getInstrumentation();
+        try (Instrumentation.Span span = instrumentation.start(Instrumentation.EXTRA_CONTENT)) {
+            doCopyExtraContent(ctx, jbossHome, extraContentDirs, instrumentation);
+        }
+    }
+
+    private static void doCopyExtraContent(PluginContext ctx, Path jbossHome, List<String> extraContentDirs,
+            Instrumentation instrumentation) throws Exception {
+        for (String path : extraContentDirs) {
             Path extraContent = Paths.get(path);
             extraContent = Utils.resolvePath(ctx.getProject(), extraContent);
             if (Files.notExists(extraContent)) {
@@ -230,7 +373,11 @@ public class Utils {
             }
             // Check for the presence of a standalone.xml file
             warnExtraConfig(ctx, extraContent);
-            IoUtils.copy(extraContent, ctx.getJBossHome());
+            IoUtils.copy(extraContent, jbossHome);
+            if (instrumentation.isEnabled()) {
+                long[] content = countContent(extraContent);
+                instrumentation.processed(Instrumentation.EXTRA_CONTENT, content[0], content[1]);
+            }
         }
 
     }
@@ -292,6 +439,117 @@ public class Utils {
         }
     }
 
+    public static void cleanupServer(PluginContext ctx) throws IOException {
+        Instrumentation instrumentation = ctx.getInstrumentation();
+        try (Instrumentation.Span span = instrumentation.start(Instrumentation.CLEANUP_SERVER)) {
+            if (instrumentation.isEnabled()) {
+                Path standalone = ctx.getJBossHome().resolve("standalone");
+                long[] before = countContent(standalone);
+                cleanupServer(ctx.getJBossHome());
+                long[] after = countContent(standalone);
+                instrumentation.processed(Instrumentation.CLEANUP_SERVER, before[0] - after[0], before[1] - after[1]);
+            } else {
+                cleanupServer(ctx.getJBossHome());
+            }
+        }
+    }
+
+    /**
+     * Remove the modules that can't be reached, if enabled. The deployments
+     * declared dependencies are kept.
+     *
+     * @param ctx The plugin context.
+     * @throws Exception
+     */
+    public static void pruneModules(PluginContext ctx) throws Exception {
+        if (!ctx.isModulePruningEnabled()) {
+            return;
+        }
+        try (Instrumentation.Span span = ctx.getInstrumentation().start(Instrumentation.MODULE_PRUNING)) {
+            Set<String> roots = new HashSet<>();
+            for (Deployment deployment : getDeployments(ctx)) {
+                roots.addAll(ModulePruner.getDeploymentDependencies(deployment.getFile().toPath()));
+            }
+            List<String> allowList = new ArrayList<>(ModulePruner.DEFAULT_ALLOW_LIST);
+            allowList.addAll(ctx.getModulePruningAllowList());
+            ModulePruner.Result result = ModulePruner.prune(ctx.getJBossHome(), roots, allowList);
+            ctx.getInstrumentation().processed(Instrumentation.MODULE_PRUNING, result.getFiles(), result.getBytes());
+            ctx.getLog().info("Removed " + result.getRemovedModules().size() + " unreachable modules, "
+                    + result.getBytes() / 1024 + "KB");
+            ctx.debug("Removed modules %s", result.getRemovedModules());
+        }
+    }
+
+    /**
+     * Add a CDS archive next to the packaged bootable jar, if enabled. The
+     * archive is only generated again when the jar changes.
+     *
+     * @param ctx The plugin context.
+     * @param jar The packaged bootable jar.
+     * @throws Exception
+     */
+    public static void generateCdsArchive(PluginContext ctx, Path jar) throws Exception {
+        if (!ctx.isCdsArchiveEnabled()) {
+            return;
+        }
+        if (CdsArchiveGenerator.getJavaVersion() < CdsArchiveGenerator.MIN_JAVA_VERSION) {
+            ctx.getLog().warn("A CDS archive requires Java " + CdsArchiveGenerator.MIN_JAVA_VERSION
+                    + " or later, no archive generated.");
+            return;
+        }
+        try (Instrumentation.Span span = ctx.getInstrumentation().start(Instrumentation.CDS_TRAINING)) {
+            CdsArchiveGenerator generator = new CdsArchiveGenerator(ctx, jar, ctx.getCdsCacheDir());
+            if (generator.generate(ctx.getCdsTrainingTimeout())) {
+                ctx.getLog().info("Generated CDS archive " + CdsArchiveGenerator.getArchive(jar));
+            } else {
+                ctx.getLog().info("Bootable jar unchanged, using the cached CDS archive.");
+            }
+            ctx.getLog().info("Start the bootable jar from its directory with java @"
+                    + CdsArchiveGenerator.getJvmOptionsFile(jar).getFileName() + " -jar " + jar.getFileName());
+        }
+    }
+
+    /**
+     * Zip the server to be packaged in the bootable jar, using the configured
+     * layout.
+     *
+     * @param ctx The plugin context.
+     * @param targetDir The directory in which the archive, and its manifest,
+     * are written.
+     * @return The archive.
+     * @throws Exception
+     */
+    public static Path zipServer(PluginContext ctx, Path targetDir) throws Exception {
+        ServerArchive.Layout layout = ctx.getServerArchiveLayout();
+        Path zip = targetDir.resolve(ServerArchive.ZIP);
+        Files.deleteIfExists(zip);
+        List<ServerArchive.Entry> entries = ServerArchive.write(ctx, ctx.getJBossHome(), zip, layout, ctx.getArchiveTimestamp());
+        Path manifest = targetDir.resolve(ServerArchive.MANIFEST);
+        Files.deleteIfExists(manifest);
+        if (layout != ServerArchive.Layout.DEFLATED) {
+            ServerArchive.writeManifest(entries, manifest);
+        }
+        ctx.debug("Server zipped with layout %s, %s entries, %s bytes", layout, entries.size(), Files.size(zip));
+        return zip;
+    }
+
+    // Number of files and bytes in a directory.
+    static long[] countContent(Path root) throws IOException {
+        long[] content = new long[2];
+        if (Files.notExists(root)) {
+            return content;
+        }
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                content[0] += 1;
+                content[1] += attrs.size();
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return content;
+    }
+
     public static void cleanupServer(Path jbossHome) throws IOException {
         Path history = jbossHome.resolve("standalone").resolve("configuration").resolve("standalone_xml_history");
         IoUtils.recursiveDelete(history);
@@ -302,11 +560,93 @@ public class Utils {
         Files.deleteIfExists(jbossHome.resolve("README.txt"));
     }
 
+    /**
+     * Add the commands that deploy the project artifact and the extra
+     * deployments. Deployments are ordered according to their dependencies,
+     * their content is staged concurrently and the deploy commands are
+     * executed in a single batch.
+     */
     public static void deploy(PluginContext ctx, List<String> commands) throws MojoExecutionException {
         if (ctx.isHollow()) {
             ctx.getLog().info("Hollow Server, No application deployment added to server.");
+        } else if (ctx.isExplodedDeploymentEnabled() && !Files.isDirectory(getExplodedDeploymentDir(ctx))) {
+            ctx.getLog().warn("Exploded deployment " + getExplodedDeploymentDir(ctx) + " doesn't exist, the project archive is deployed.");
+        }
+        List<Deployment> deployments = getDeployments(ctx);
+        if (deployments.isEmpty()) {
             return;
         }
+        List<Deployment> sorted;
+        try {
+            sorted = Deployment.sort(deployments);
+        } catch (IllegalArgumentException ex) {
+            throw new MojoExecutionException(ex.getMessage(), ex);
+        }
+        List<String> deployCommands = new ArrayList<>();
+        if (sorted.size() == 1) {
+            String command = getDeployCommand(ctx, sorted.get(0));
+            if (command != null) {
+                deployCommands.add(command);
+            }
+        } else {
+            List<BuildPipeline.Stage<String>> stages = new ArrayList<>();
+            try (BuildPipeline pipeline = new BuildPipeline(ctx)) {
+                for (Deployment d : sorted) {
+                    stages.add(pipeline.stage("deployment " + d.getName(), () -> getDeployCommand(ctx, d)));
+                }
+                pipeline.await();
+                for (BuildPipeline.Stage<String> stage : stages) {
+                    String command = stage.get();
+                    if (command != null) {
+                        deployCommands.add(command);
+                    }
+                }
+            } catch (MojoExecutionException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                throw new MojoExecutionException("Failed to stage deployments", ex);
+            }
+        }
+        if (deployCommands.size() > 1) {
+            commands.add("batch");
+            commands.addAll(deployCommands);
+            commands.add("run-batch");
+        } else {
+            commands.addAll(deployCommands);
+        }
+    }
+
+    /**
+     * The extra deployments followed by the project deployment, if any.
+     *
+     * @param ctx The plugin context.
+     * @return The deployments.
+     * @throws MojoExecutionException
+     */
+    public static List<Deployment> getDeployments(PluginContext ctx) throws MojoExecutionException {
+        List<Deployment> deployments = new ArrayList<>(ctx.getExtraDeployments());
+        Deployment primary = getPrimaryDeployment(ctx);
+        if (primary != null) {
+            deployments.add(primary);
+        }
+        return deployments;
+    }
+
+    private static Deployment getPrimaryDeployment(PluginContext ctx) throws MojoExecutionException {
+        if (ctx.isHollow()) {
+            return null;
+        }
+        if (ctx.isExplodedDeploymentEnabled()) {
+            Path exploded = getExplodedDeploymentDir(ctx);
+            if (Files.isDirectory(exploded)) {
+                String name = exploded.getFileName() + "." + ctx.getProject().getPackaging();
+                String runtimeName = name;
+                if (ctx.getProject().getPackaging().equals(WAR) && ctx.isContextRoot()) {
+                    runtimeName = "ROOT." + WAR;
+                }
+                return new Deployment(exploded.toFile(), name, runtimeName);
+            }
+        }
         File f = validateProjectFile(ctx);
 
         String runtimeName = f.getName();
@@ -315,7 +655,99 @@ public class Utils {
                 runtimeName = "ROOT." + WAR;
             }
         }
-        commands.add("deploy " + f.getAbsolutePath() + " --name=" + f.getName() + " --runtime-name=" + runtimeName);
+        return new Deployment(f, f.getName(), runtimeName);
+    }
+
+    /**
+     * Get the command that deploys a deployment, a directory is deployed as
+     * exploded content.
+     *
+     * @return The command or null if the server already contains this deployment.
+     */
+    private static String getDeployCommand(PluginContext ctx, Deployment deployment) throws MojoExecutionException {
+        File f = deployment.getFile();
+        if (f == null || !f.exists()) {
+            throw new MojoExecutionException("Deployment " + (f == null ? deployment.getName() : f) + " doesn't exist");
+        }
+        String name = deployment.getName();
+        String runtimeName = deployment.getRuntimeName();
+        if (f.isDirectory()) {
+            try {
+                boolean replace = DeploymentStager.getDeployedHash(ctx.getJBossHome(), name) != null;
+                String path = DeploymentStager.stageExploded(f.toPath(), ctx.getJBossHome(), name);
+                if (ctx.isJandexIndexingEnabled()) {
+                    indexDeployment(ctx, ctx.getJBossHome().resolve(Constants.STANDALONE).resolve(path), true);
+                }
+                return DeploymentStager.getExplodedDeployCommand(name, runtimeName, path, replace);
+            } catch (Exception ex) {
+                throw new MojoExecutionException("Failed to stage exploded deployment " + f, ex);
+            }
+        }
+        if (ctx.isJandexIndexingEnabled()) {
+            try {
+                f = indexDeployment(ctx, f.toPath(), false).toFile();
+            } catch (Exception ex) {
+                throw new MojoExecutionException("Failed to index deployment " + f, ex);
+            }
+        }
+        if (ctx.isDeploymentStagingEnabled()) {
+            try {
+                return stageDeployment(ctx, f.toPath(), name, runtimeName);
+            } catch (Exception ex) {
+                throw new MojoExecutionException("Failed to stage deployment " + f, ex);
+            }
+        }
+        return "deploy " + f.getAbsolutePath() + " --name=" + name + " --runtime-name=" + runtimeName;
+    }
+
+    /**
+     * Add the Jandex indexes to a deployment.
+     *
+     * @return The indexed deployment, an exploded deployment is indexed in place.
+     */
+    private static Path indexDeployment(PluginContext ctx, Path deployment, boolean exploded) throws Exception {
+        try (DeploymentIndexer indexer = DeploymentIndexer.create(ctx, ctx.getJBossHome(), ctx.getJandexCacheDir())) {
+            if (indexer == null) {
+                ctx.getLog().warn("The server has no Jandex module, deployment " + deployment.getFileName() + " is not indexed.");
+                return deployment;
+            }
+            long start = System.currentTimeMillis();
+            Path indexed = deployment;
+            if (exploded) {
+                indexer.indexExploded(deployment);
+            } else {
+                indexed = indexer.index(deployment);
+            }
+            ctx.debug("Deployment %s indexed in %sms", deployment.getFileName(), System.currentTimeMillis() - start);
+            return indexed;
+        }
+    }
+
+    /**
+     * Place the deployment content in the server and get the command that
+     * references it.
+     *
+     * @return The command or null if the server already contains this deployment.
+     */
+    private static String stageDeployment(PluginContext ctx, Path deployment, String name, String runtimeName) throws Exception {
+        DeploymentStager stager = new DeploymentStager(ctx.getDeploymentCacheDir());
+        String hash = stager.getHash(deployment);
+        String deployed = DeploymentStager.getDeployedHash(ctx.getJBossHome(), name);
+        if (hash.equals(deployed)) {
+            ctx.getLog().info("Deployment " + name + " is unchanged, not redeployed.");
+            return null;
+        }
+        if (stager.stage(deployment, hash, ctx.getJBossHome())) {
+            ctx.debug("Deployment %s content staged with hash %s", name, hash);
+        }
+        return DeploymentStager.getDeployCommand(name, runtimeName, hash, deployed != null);
+    }
+
+    /**
+     * The exploded project build output, as produced by the war plugin.
+     */
+    public static Path getExplodedDeploymentDir(PluginContext ctx) {
+        return Paths.get(ctx.getProject().getBuild().getDirectory(), ctx.getProject().getBuild().getFinalName());
     }
 
     public static File validateProjectFile(PluginContext ctx) throws MojoExecutionException {
@@ -339,11 +771,44 @@ public class Utils {
     }
 
     public static List<Path> getCLIArtifactPaths(PluginContext ctx, JakartaEE9Handler jakartaHandler, Set<Artifact> cliArtifacts) throws MojoExecutionException {
-        ctx.debug("CLI artifacts %s", cliArtifacts);
+        return getCLIArtifactPaths(ctx, resolveCLIArtifacts(ctx, jakartaHandler, cliArtifacts));
+    }
+
+    /**
+     * Get the CLI classpath from CLI artifacts resolved by
+     * {@link #resolveCLIArtifacts(PluginContext, JakartaEE9Handler, Set)}, the
+     * server must be provisioned.
+     */
+    public static List<Path> getCLIArtifactPaths(PluginContext ctx, List<Path> resolvedCliArtifacts) {
         List<Path> paths = new ArrayList<>();
         paths.add(ctx.getJBossHome().resolve("jboss-modules.jar"));
-        for (Artifact a : cliArtifacts) {
-            paths.add(Utils.resolveArtifact(jakartaHandler, a));
+        paths.addAll(resolvedCliArtifacts);
+        return paths;
+    }
+
+    /**
+     * Resolve the CLI artifacts. Doesn't depend on the provisioned server
+     * content but, for a thin server, on the feature-pack lookup done by
+     * {@link JakartaEE9Handler#lookupFeaturePack(FeaturePackRuntime)} once the
+     * server is provisioned. A stage that resolves the artifacts must depend
+     * on the provisioning stage.
+     */
+    public static List<Path> resolveCLIArtifacts(PluginContext ctx, JakartaEE9Handler jakartaHandler, Set<Artifact> cliArtifacts) throws MojoExecutionException {
+        ctx.debug("CLI artifacts %s", cliArtifacts);
+        Instrumentation instrumentation = ctx.getInstrumentation();
+        List<Path> paths = new ArrayList<>();
+        try (Instrumentation.Span span = instrumentation.start(Instrumentation.ARTIFACT_RESOLUTION)) {
+            for (Artifact a : cliArtifacts) {
+                paths.add(Utils.resolveArtifact(jakartaHandler, a));
+            }
+        }
+        if (instrumentation.isEnabled()) {
+            instrumentation.increment("cli-artifacts", cliArtifacts.size());
+            long bytes = 0;
+            for (Path p : paths) {
+                bytes += p.toFile().length();
+            }
+            instrumentation.processed(Instrumentation.ARTIFACT_RESOLUTION, paths.size(), bytes);
         }
         return paths;
     }
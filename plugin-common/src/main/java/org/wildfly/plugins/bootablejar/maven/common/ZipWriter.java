@@ -0,0 +1,497 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.common;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * A zip writer that produces reproducible archives. Entries are written in
+ * name order with a fixed timestamp. Files are compressed concurrently in
+ * memory, or in temporary files for large files, and written in order as soon
+ * as they are ready. Files that are already compressed (zip, jar or gzip
+ * content) are stored without trying to compress them again, as well as files
+ * that deflating doesn't make smaller.
+ *
+ * @author jdenise
+ */
+public final class ZipWriter {
+
+    /**
+     * The timestamp used when none is configured, 2010-01-01T00:00:00Z.
+     */
+    public static final long DEFAULT_TIMESTAMP = 1262304000000L;
+
+    /**
+     * A file or directory to add to the archive.
+     */
+    public static final class Source {
+
+        private final String name;
+        private final Path file;
+        private final boolean store;
+
+        /**
+         * @param name The entry name, ending with {@code /} for a directory.
+         * @param file The file, null for a directory.
+         * @param store true to store the file without compression.
+         */
+        public Source(String name, Path file, boolean store) {
+            this.name = name;
+            this.file = file;
+            this.store = store;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    /**
+     * A written entry.
+     */
+    public static final class Entry {
+
+        private final String name;
+        private final int method;
+        private final long offset;
+        private final long compressedSize;
+        private final long size;
+        private final long crc;
+
+        private Entry(String name, int method, long offset, long compressedSize, long size, long crc) {
+            this.name = name;
+            this.method = method;
+            this.offset = offset;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.crc = crc;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return {@link ZipEntry#STORED} or {@link ZipEntry#DEFLATED}.
+         */
+        public int getMethod() {
+            return method;
+        }
+
+        /**
+         * @return The offset of the entry local header in the archive.
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+    }
+
+    // The content of an entry, computed concurrently.
+    private static final class Content implements AutoCloseable {
+
+        private int method;
+        private long size;
+        private long compressedSize;
+        private long crc;
+        private byte[] compressed;
+        private Path compressedFile;
+
+        @Override
+        public void close() throws IOException {
+            if (compressedFile != null) {
+                Files.deleteIfExists(compressedFile);
+            }
+        }
+    }
+
+    // Files larger than this size are compressed in a temporary file.
+    private static final long MEMORY_THRESHOLD = 8 * 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_EXTRA = 0x0001;
+    private static final int UTF8_FLAG = 0x0800;
+
+    private final PluginContext ctx;
+    private final int dosTime;
+    private final int threads;
+
+    /**
+     * @param ctx The plugin context.
+     * @param timestamp The timestamp of all the entries, in milliseconds since
+     * the epoch, UTC.
+     */
+    public ZipWriter(PluginContext ctx, long timestamp) {
+        this.ctx = ctx;
+        this.dosTime = toDosTime(timestamp);
+        this.threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Parse a timestamp as found in the {@code project.build.outputTimestamp}
+     * property, seconds since the epoch or an ISO-8601 date.
+     *
+     * @param value The timestamp.
+     * @return The timestamp in milliseconds or {@link #DEFAULT_TIMESTAMP} if
+     * not set or invalid.
+     */
+    public static long parseTimestamp(String value) {
+        if (value == null || value.trim().length() <= 1) {
+            return DEFAULT_TIMESTAMP;
+        }
+        String timestamp = value.trim();
+        try {
+            return Long.parseLong(timestamp) * 1000;
+        } catch (NumberFormatException ex) {
+            // Not a number of seconds.
+        }
+        try {
+            return OffsetDateTime.parse(timestamp).toInstant().toEpochMilli();
+        } catch (DateTimeParseException ex) {
+            try {
+                return Instant.parse(timestamp).toEpochMilli();
+            } catch (DateTimeParseException ex2) {
+                return DEFAULT_TIMESTAMP;
+            }
+        }
+    }
+
+    // The DOS time fields of a UTC timestamp, not depending on the local time zone.
+    static int toDosTime(long timestamp) {
+        LocalDateTime time = LocalDateTime.ofEpochSecond(Math.floorDiv(timestamp, 1000), 0, ZoneOffset.UTC);
+        if (time.getYear() < 1980) {
+            time = LocalDateTime.of(1980, 1, 1, 0, 0);
+        }
+        return (time.getYear() - 1980) << 25 | time.getMonthValue() << 21 | time.getDayOfMonth() << 16
+                | time.getHour() << 11 | time.getMinute() << 5 | time.getSecond() >> 1;
+    }
+
+    /**
+     * Write an archive.
+     *
+     * @param zip The archive to create.
+     * @param sources The archive content, written in name order.
+     * @return The written entries, in archive order.
+     * @throws Exception
+     */
+    public List<Entry> write(Path zip, List<Source> sources) throws Exception {
+        List<Source> sorted = new ArrayList<>(sources);
+        sorted.sort(Comparator.comparing(Source::getName));
+        for (int i = 1; i < sorted.size(); i++) {
+            if (sorted.get(i).name.equals(sorted.get(i - 1).name)) {
+                throw new IllegalArgumentException("Duplicate zip entry " + sorted.get(i).name);
+            }
+        }
+        List<Entry> entries = new ArrayList<>(sorted.size());
+        List<BuildPipeline.Stage<Content>> stages = new ArrayList<>(sorted.size());
+        // Bounds the number of compressed entries waiting to be written.
+        int window = threads * 4;
+        try (BuildPipeline pipeline = new BuildPipeline(ctx, threads);
+                FileChannel channel = FileChannel.open(zip, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.WRITE)) {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+            long offset = 0;
+            try {
+                for (int i = 0; i < sorted.size(); i++) {
+                    while (stages.size() < sorted.size() && stages.size() < i + window) {
+                        Source source = sorted.get(stages.size());
+                        stages.add(pipeline.stage("zip-entry", () -> compute(source)));
+                    }
+                    Source source = sorted.get(i);
+                    try (Content content = stages.get(i).get()) {
+                        stages.set(i, null);
+                        byte[] name = source.name.getBytes(StandardCharsets.UTF_8);
+                        entries.add(new Entry(source.name, content.method, offset, content.compressedSize, content.size, content.crc));
+                        offset += writeLocalHeader(out, name, content);
+                        offset += writeData(out, source, content);
+                    }
+                }
+                long centralOffset = offset;
+                for (Entry entry : entries) {
+                    offset += writeCentralHeader(out, entry);
+                }
+                writeEnd(out, entries.size(), centralOffset, offset - centralOffset);
+                out.flush();
+            } finally {
+                // Release the temporary files of the entries not written.
+                for (BuildPipeline.Stage<Content> stage : stages) {
+                    if (stage != null) {
+                        try (Content content = stage.get()) {
+                            // Closed.
+                        } catch (Exception ex) {
+                            // Already reported.
+                        }
+                    }
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static Content compute(Source source) throws IOException {
+        Content content = new Content();
+        if (source.file == null) {
+            content.method = ZipEntry.STORED;
+            return content;
+        }
+        content.size = Files.size(source.file);
+        if (source.store || content.size == 0 || isCompressed(source.file)) {
+            content.method = ZipEntry.STORED;
+            content.compressedSize = content.size;
+            content.crc = crc(source.file);
+            return content;
+        }
+        CRC32 crc = new CRC32();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        OutputStream compressed;
+        ByteArrayOutputStream buffer = null;
+        if (content.size > MEMORY_THRESHOLD) {
+            content.compressedFile = Files.createTempFile("bootable-jar-zip", ".deflated");
+            compressed = new BufferedOutputStream(Files.newOutputStream(content.compressedFile), BUFFER_SIZE);
+        } else {
+            buffer = new ByteArrayOutputStream((int) content.size / 2 + 64);
+            compressed = buffer;
+        }
+        long compressedSize = 0;
+        try (InputStream in = Files.newInputStream(source.file); OutputStream out = compressed) {
+            byte[] input = new byte[BUFFER_SIZE];
+            byte[] output = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(input)) >= 0) {
+                crc.update(input, 0, read);
+                deflater.setInput(input, 0, read);
+                while (!deflater.needsInput()) {
+                    int len = deflater.deflate(output);
+                    out.write(output, 0, len);
+                    compressedSize += len;
+                }
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                int len = deflater.deflate(output);
+                out.write(output, 0, len);
+                compressedSize += len;
+            }
+        } catch (IOException ex) {
+            content.close();
+            throw ex;
+        } finally {
+            deflater.end();
+        }
+        content.crc = crc.getValue();
+        if (compressedSize >= content.size) {
+            // Not worth it, stored.
+            content.close();
+            content.compressedFile = null;
+            content.method = ZipEntry.STORED;
+            content.compressedSize = content.size;
+            return content;
+        }
+        content.method = ZipEntry.DEFLATED;
+        content.compressedSize = compressedSize;
+        if (buffer != null) {
+            content.compressed = buffer.toByteArray();
+        }
+        return content;
+    }
+
+    /**
+     * Zip, jar or gzip content.
+     */
+    static boolean isCompressed(Path file) throws IOException {
+        byte[] magic = new byte[4];
+        int read = 0;
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while (read < magic.length && (n = in.read(magic, read, magic.length - read)) > 0) {
+                read += n;
+            }
+        }
+        if (read >= 2 && (magic[0] & 0xFF) == 0x1f && (magic[1] & 0xFF) == 0x8b) {
+            return true;
+        }
+        return read == 4 && magic[0] == 'P' && magic[1] == 'K' && magic[2] == 3 && magic[3] == 4;
+    }
+
+    private static long crc(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                crc.update(buffer, 0, read);
+            }
+        }
+        return crc.getValue();
+    }
+
+    private long writeLocalHeader(OutputStream out, byte[] name, Content content) throws IOException {
+        boolean zip64 = content.size >= ZIP64_MAGIC || content.compressedSize >= ZIP64_MAGIC;
+        ByteBuffer header = buffer(30 + name.length + (zip64 ? 20 : 0));
+        header.putInt(LOCAL_HEADER_SIGNATURE);
+        header.putShort((short) (zip64 ? 45 : content.method == ZipEntry.DEFLATED ? 20 : 10));
+        header.putShort((short) UTF8_FLAG);
+        header.putShort((short) content.method);
+        header.putInt(dosTime);
+        header.putInt((int) content.crc);
+        header.putInt((int) (zip64 ? ZIP64_MAGIC : content.compressedSize));
+        header.putInt((int) (zip64 ? ZIP64_MAGIC : content.size));
+        header.putShort((short) name.length);
+        header.putShort((short) (zip64 ? 20 : 0));
+        header.put(name);
+        if (zip64) {
+            header.putShort((short) ZIP64_EXTRA);
+            header.putShort((short) 16);
+            header.putLong(content.size);
+            header.putLong(content.compressedSize);
+        }
+        out.write(header.array());
+        return header.capacity();
+    }
+
+    private static long writeData(OutputStream out, Source source, Content content) throws IOException {
+        if (source.file == null) {
+            return 0;
+        }
+        if (content.compressed != null) {
+            out.write(content.compressed, 0, (int) content.compressedSize);
+        } else if (content.compressedFile != null) {
+            Files.copy(content.compressedFile, out);
+        } else {
+            Files.copy(source.file, out);
+        }
+        return content.compressedSize;
+    }
+
+    private long writeCentralHeader(OutputStream out, Entry entry) throws IOException {
+        byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+        boolean size64 = entry.size >= ZIP64_MAGIC;
+        boolean compressedSize64 = entry.compressedSize >= ZIP64_MAGIC;
+        boolean offset64 = entry.offset >= ZIP64_MAGIC;
+        // The local header uses zip64 sizes if any of the sizes requires it.
+        boolean sizes64 = size64 || compressedSize64;
+        int extra = (sizes64 ? 16 : 0) + (offset64 ? 8 : 0);
+        ByteBuffer header = buffer(46 + name.length + (extra > 0 ? extra + 4 : 0));
+        header.putInt(CENTRAL_HEADER_SIGNATURE);
+        header.putShort((short) (extra > 0 ? 45 : 20));
+        header.putShort((short) (extra > 0 ? 45 : entry.method == ZipEntry.DEFLATED ? 20 : 10));
+        header.putShort((short) UTF8_FLAG);
+        header.putShort((short) entry.method);
+        header.putInt(dosTime);
+        header.putInt((int) entry.crc);
+        header.putInt((int) (sizes64 ? ZIP64_MAGIC : entry.compressedSize));
+        header.putInt((int) (sizes64 ? ZIP64_MAGIC : entry.size));
+        header.putShort((short) name.length);
+        header.putShort((short) (extra > 0 ? extra + 4 : 0));
+        header.putShort((short) 0);
+        header.putShort((short) 0);
+        header.putShort((short) 0);
+        header.putInt(0);
+        header.putInt((int) (offset64 ? ZIP64_MAGIC : entry.offset));
+        header.put(name);
+        if (extra > 0) {
+            header.putShort((short) ZIP64_EXTRA);
+            header.putShort((short) extra);
+            if (sizes64) {
+                header.putLong(entry.size);
+                header.putLong(entry.compressedSize);
+            }
+            if (offset64) {
+                header.putLong(entry.offset);
+            }
+        }
+        out.write(header.array());
+        return header.capacity();
+    }
+
+    private static void writeEnd(OutputStream out, int count, long centralOffset, long centralSize) throws IOException {
+        boolean zip64 = count >= ZIP64_MAGIC_COUNT || centralOffset >= ZIP64_MAGIC || centralSize >= ZIP64_MAGIC;
+        if (zip64) {
+            long zip64EndOffset = centralOffset + centralSize;
+            ByteBuffer end64 = buffer(56 + 20);
+            end64.putInt(ZIP64_END_SIGNATURE);
+            end64.putLong(44);
+            end64.putShort((short) 45);
+            end64.putShort((short) 45);
+            end64.putInt(0);
+            end64.putInt(0);
+            end64.putLong(count);
+            end64.putLong(count);
+            end64.putLong(centralSize);
+            end64.putLong(centralOffset);
+            end64.putInt(ZIP64_LOCATOR_SIGNATURE);
+            end64.putInt(0);
+            end64.putLong(zip64EndOffset);
+            end64.putInt(1);
+            out.write(end64.array());
+        }
+        ByteBuffer end = buffer(22);
+        end.putInt(END_SIGNATURE);
+        end.putShort((short) 0);
+        end.putShort((short) 0);
+        end.putShort((short) (zip64 ? ZIP64_MAGIC_COUNT : count));
+        end.putShort((short) (zip64 ? ZIP64_MAGIC_COUNT : count));
+        end.putInt((int) (zip64 ? ZIP64_MAGIC : centralSize));
+        end.putInt((int) (zip64 ? ZIP64_MAGIC : centralOffset));
+        end.putShort((short) 0);
+        out.write(end.array());
+    }
+
+    private static ByteBuffer buffer(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.cli;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author jdenise
+ */
+public class CliScriptTestCase {
+
+    private Path file;
+
+    @Before
+    public void before() throws Exception {
+        file = Files.createTempFile("cli-script", ".cli");
+    }
+
+    @After
+    public void after() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    private CliScript load(String content) throws Exception {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        // Make sure the cached script is not reused.
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.nanoTime()));
+        return CliScript.load(file);
+    }
+
+    @Test
+    public void testParse() throws Exception {
+        CliScript script = load("# A comment\n"
+                + "\n"
+                + "   /system-property=foo:add(value=\"caf\u00e9\")   \n"
+                + "batch\n"
+                + "  /subsystem=logging/console-handler=CONSOLE:write-attribute(\\\n"
+                + "      name=level, \\\n"
+                + "      value=${log.level:INFO})\n"
+                + "/system-property=${env.HOME}:add(value=${prop})\n"
+                + "run-batch\r\n"
+                + "echo end");
+        Assert.assertEquals(Arrays.asList("/system-property=foo:add(value=\"caf\u00e9\")",
+                "batch",
+                "/subsystem=logging/console-handler=CONSOLE:write-attribute(name=level, value=${log.level:INFO})",
+                "/system-property=${env.HOME}:add(value=${prop})",
+                "run-batch",
+                "echo end"), script.getCommands());
+        Assert.assertEquals(Arrays.asList("env.HOME"), Arrays.asList(script.getExpressions().toArray()));
+    }
+
+    @Test
+    public void testExpressions() throws Exception {
+        CliScript script = load("deploy ${app.path}\n"
+                + "module add --name=org.foo --resources=${foo.jar:foo.jar}\n"
+                + "/subsystem=${subsystem:logging}:read-resource\n"
+                + "/socket-binding-group=standard-sockets/socket-binding=${binding}:write-attribute(name=port, value=${port})\n"
+                + ":write-attribute(name=name, value=${server.name:server})\n"
+                + "./foo=bar:add(value=${bar})\n");
+        // Expressions with a default value always resolve, operation values are resolved by the server.
+        Assert.assertEquals(Arrays.asList("app.path", "binding"), Arrays.asList(script.getExpressions().toArray()));
+    }
+
+    @Test
+    public void testCache() throws Exception {
+        CliScript script = load("echo foo\n");
+        Assert.assertSame(script, CliScript.load(file));
+        Files.write(file, "echo bar\n".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.nanoTime()));
+        Assert.assertEquals(Arrays.asList("echo bar"), CliScript.load(file).getCommands());
+    }
+
+    @Test
+    public void testSyntaxErrors() throws Exception {
+        assertInvalid("batch\n/system-property=foo:add\n", "line 1");
+        assertInvalid("run-batch\n", "run-batch without batch");
+        assertInvalid("batch\nbatch\nrun-batch\n", "line 2");
+        assertInvalid("echo foo\n/system-property=foo:add(value=${foo)\n", "line 2");
+        assertInvalid("/system-property=foo:add(value=${:bar})\n", "empty expression");
+        // discard-batch terminates a batch.
+        Assert.assertEquals(3, load("batch\necho foo\ndiscard-batch").getCommands().size());
+    }
+
+    private void assertInvalid(String content, String message) throws Exception {
+        try {
+            load(content);
+            Assert.fail("Invalid script " + content);
+        } catch (Exception ex) {
+            Assert.assertTrue(ex.getMessage(), ex.getMessage().contains(message));
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.cli;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.wildfly.plugins.bootablejar.maven.common.TestPluginContext;
+import org.wildfly.plugins.bootablejar.maven.common.Utils;
+
+/**
+ * @author jdenise
+ */
+public class CliSessionTestCase {
+
+    private Path dir;
+    private int count;
+
+    @Before
+    public void before() throws Exception {
+        dir = Files.createTempDirectory("cli-session");
+    }
+
+    @After
+    public void after() {
+        Utils.deleteDir(dir);
+    }
+
+    private CliSession session(String content) throws Exception {
+        Path script = dir.resolve("script" + (count++) + ".cli");
+        Files.write(script, content.getBytes(StandardCharsets.UTF_8));
+        CliSession session = new CliSession();
+        session.setScriptFiles(Collections.singletonList(script.toString()));
+        return session;
+    }
+
+    @Test
+    public void testControlsServer() {
+        Assert.assertFalse(CliSession.controlsServer(Arrays.asList("/system-property=foo:add(value=reload)",
+                "/subsystem=logging/console-handler=CONSOLE:write-attribute(name=level, value=DEBUG)",
+                "echo :reload")));
+        Assert.assertTrue(CliSession.controlsServer(Arrays.asList("reload --admin-only=false")));
+        Assert.assertTrue(CliSession.controlsServer(Arrays.asList(":reload")));
+        Assert.assertTrue(CliSession.controlsServer(Arrays.asList("/:shutdown(restart=true)")));
+        Assert.assertTrue(CliSession.controlsServer(Arrays.asList("connect localhost:9990")));
+    }
+
+    @Test
+    public void testGroupSessions() throws Exception {
+        CliSession s1 = session("/system-property=a:add(value=a)\n");
+        CliSession s2 = session("/system-property=b:add(value=b)\n");
+        CliSession s3 = session("/system-property=c:add(value=c)\nreload\n");
+        CliSession s4 = session("/system-property=d:add(value=d)\n");
+        CliSession s5 = session("/system-property=e:add(value=${e})\n");
+        s5.setResolveExpressions(false);
+        CliSession s6 = session("/system-property=f:add(value=${f})\n");
+        s6.setResolveExpressions(false);
+        List<CliSession> sessions = new ArrayList<>(Arrays.asList(s1, s2, s3, s4, s5, s6));
+        List<List<CliSession>> groups = CliSession.groupSessions(new TestPluginContext(), sessions);
+        Assert.assertEquals(Arrays.asList(Arrays.asList(s1, s2), Arrays.asList(s3), Arrays.asList(s4), Arrays.asList(s5, s6)), groups);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.cli;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author jdenise
+ */
+public class CommandTimingsTestCase {
+
+    private static long millis(long ms) {
+        return TimeUnit.MILLISECONDS.toNanos(ms);
+    }
+
+    private static CommandTimings create() {
+        CommandTimings timings = new CommandTimings();
+        timings.record("embed-server --jboss-home=/tmp/server --std-out=discard", millis(2000));
+        timings.record("", millis(1));
+        timings.record("# comment", millis(1));
+        timings.record("/system-property=foo:add(value=bar)", millis(10));
+        timings.record("/subsystem=logging/console-handler=CONSOLE:write-attribute(name=level,value=DEBUG)", millis(300));
+        timings.record("reload", millis(50));
+        timings.record("stop-embedded-server", millis(100));
+        return timings;
+    }
+
+    @Test
+    public void testClassification() throws Exception {
+        CommandTimings timings = create();
+        Assert.assertEquals(2000, timings.getBootMillis());
+        Assert.assertEquals(100, timings.getShutdownMillis());
+        Assert.assertEquals(3, timings.getCommandCount());
+        Assert.assertEquals(360, timings.getCommandsMillis());
+        List<CommandTimings.Timing> slowest = timings.getSlowest(2);
+        Assert.assertEquals(2, slowest.size());
+        Assert.assertEquals(300, slowest.get(0).getMillis());
+        Assert.assertEquals("reload", slowest.get(1).getCommand());
+        List<CommandTimings.Timing> slow = timings.getSlowerThan(20);
+        Assert.assertEquals(2, slow.size());
+        Assert.assertEquals("reload", slow.get(1).getCommand());
+        Assert.assertTrue(timings.getSlowerThan(1000).isEmpty());
+    }
+
+    @Test
+    public void testWriteRead() throws Exception {
+        Path file = Files.createTempFile("cli-timings", null);
+        try {
+            create().write(file);
+            CommandTimings timings = CommandTimings.read(file);
+            Assert.assertEquals(2000, timings.getBootMillis());
+            Assert.assertEquals(100, timings.getShutdownMillis());
+            Assert.assertEquals(3, timings.getCommandCount());
+            Assert.assertEquals("/system-property=foo:add(value=bar)", timings.getSlowest(3).get(2).getCommand());
+        } finally {
+            Files.delete(file);
+        }
+        Assert.assertTrue(CommandTimings.read(file).isEmpty());
+    }
+}
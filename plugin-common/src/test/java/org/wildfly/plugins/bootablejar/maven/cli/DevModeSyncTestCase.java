@@ -0,0 +1,182 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.cli;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.wildfly.plugins.bootablejar.maven.common.Deployment;
+import org.wildfly.plugins.bootablejar.maven.common.DeploymentStager;
+import org.wildfly.plugins.bootablejar.maven.common.TestPluginContext;
+import org.wildfly.plugins.bootablejar.maven.common.Utils;
+
+/**
+ * @author jdenise
+ */
+public class DevModeSyncTestCase {
+
+    private static class RecordingTarget implements DevModeSync.Target {
+
+        private final Path jbossHome;
+        private final List<String> calls = new ArrayList<>();
+        private int failures;
+
+        RecordingTarget(Path jbossHome) {
+            this.jbossHome = jbossHome;
+        }
+
+        @Override
+        public Path getJBossHome() {
+            return jbossHome;
+        }
+
+        @Override
+        public void replaceDeployment(Deployment deployment) throws Exception {
+            calls.add("replace " + deployment.getName());
+            if (failures > 0) {
+                failures -= 1;
+                throw new Exception("Deployment failure");
+            }
+        }
+
+        @Override
+        public void redeploy(String name) {
+            calls.add("redeploy " + name);
+        }
+
+        @Override
+        public void execute(CliSession session, List<String> commands) {
+            calls.add("execute " + commands);
+        }
+    }
+
+    private Path dir;
+    private Path server;
+    private RecordingTarget target;
+
+    @Before
+    public void before() throws Exception {
+        dir = Files.createTempDirectory("dev-mode-sync");
+        server = dir.resolve("server");
+        Files.createDirectories(server);
+        target = new RecordingTarget(server);
+    }
+
+    @After
+    public void after() {
+        Utils.deleteDir(dir);
+    }
+
+    private Path write(String path, String content) throws Exception {
+        Path file = dir.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static Deployment deployment(Path file, String name) {
+        Deployment deployment = new Deployment();
+        deployment.setFile(file.toFile());
+        deployment.setName(name);
+        return deployment;
+    }
+
+    @Test
+    public void testSync() throws Exception {
+        Path archive = write("target/app.war", "v1");
+        Path exploded = write("target/exploded/index.html", "v1").getParent();
+        write("target/exploded/removed.html", "removed");
+        Path script = write("scripts/config.cli", "/system-property=a:add(value=a)\n");
+        Path content = write("extra/standalone/configuration/app.properties", "v1").getParent().getParent().getParent();
+        CliSession session = new CliSession();
+        session.setScriptFiles(Collections.singletonList(script.toString()));
+        DevModeSync sync = new DevModeSync(new TestPluginContext(), Arrays.asList(deployment(archive, "app.war"),
+                deployment(exploded, "exploded.war")), Collections.singletonList(session),
+                Collections.singletonList(content.toString()), target);
+        Assert.assertTrue(sync.sync().isEmpty());
+
+        write("target/app.war", "v2-changed");
+        // Applied once the file is stable.
+        Assert.assertTrue(sync.sync().isEmpty());
+        DevModeSync.Result result = sync.sync();
+        Assert.assertEquals(Collections.singletonList("app.war"), result.getDeployments());
+        Assert.assertEquals(Collections.singletonList("replace app.war"), target.calls);
+        Assert.assertTrue(sync.sync().isEmpty());
+
+        target.calls.clear();
+        write("target/exploded/index.html", "v2-changed");
+        Files.delete(exploded.resolve("removed.html"));
+        write("scripts/config.cli", "/system-property=b:add(value=b)\n");
+        write("extra/standalone/configuration/app.properties", "v2-changed");
+        write("extra/standalone/configuration/new.properties", "new");
+        sync.sync();
+        result = sync.sync();
+        Assert.assertEquals(Arrays.asList("execute [/system-property=b:add(value=b)]", "redeploy exploded.war"), target.calls);
+        Assert.assertEquals(1, result.getSessions().size());
+        Assert.assertEquals(3, result.getCopiedFiles());
+        Assert.assertEquals(0, result.getDeletedFiles());
+        Path stagedIndex = server.resolve("standalone").resolve(DeploymentStager.EXPLODED_DIR).resolve("exploded.war").resolve("index.html");
+        Assert.assertEquals("v2-changed", new String(Files.readAllBytes(stagedIndex), StandardCharsets.UTF_8));
+        Assert.assertEquals("v2-changed", new String(Files.readAllBytes(server.resolve("standalone/configuration/app.properties")),
+                StandardCharsets.UTF_8));
+        Assert.assertTrue(Files.exists(server.resolve("standalone/configuration/new.properties")));
+
+        Files.delete(content.resolve("standalone/configuration/new.properties"));
+        sync.sync();
+        result = sync.sync();
+        Assert.assertEquals(1, result.getDeletedFiles());
+        Assert.assertFalse(Files.exists(server.resolve("standalone/configuration/new.properties")));
+    }
+
+    @Test
+    public void testInvalidScript() throws Exception {
+        Path script = write("scripts/config.cli", "/system-property=a:add(value=a)\n");
+        CliSession session = new CliSession();
+        session.setScriptFiles(Collections.singletonList(script.toString()));
+        DevModeSync sync = new DevModeSync(new TestPluginContext(), Collections.emptyList(), Collections.singletonList(session),
+                Collections.emptyList(), target);
+        write("scripts/config.cli", "run-batch\n");
+        sync.sync();
+        Assert.assertTrue(sync.sync().isEmpty());
+        Assert.assertTrue(target.calls.isEmpty());
+    }
+
+    @Test
+    public void testFailureRetried() throws Exception {
+        Path archive = write("target/app.war", "v1");
+        DevModeSync sync = new DevModeSync(new TestPluginContext(), Collections.singletonList(deployment(archive, "app.war")),
+                Collections.emptyList(), Collections.emptyList(), target);
+        write("target/app.war", "v2-changed");
+        sync.sync();
+        target.failures = 2;
+        Assert.assertTrue(sync.sync().isEmpty());
+        Assert.assertTrue(sync.sync().isEmpty());
+        // Not applied while failing.
+        Assert.assertEquals(Arrays.asList("replace app.war", "replace app.war"), target.calls);
+        Assert.assertEquals(Collections.singletonList("app.war"), sync.sync().getDeployments());
+        Assert.assertTrue(sync.sync().isEmpty());
+        Assert.assertEquals(3, target.calls.size());
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.cli;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.wildfly.plugins.bootablejar.maven.common.TestPluginContext;
+import org.wildfly.plugins.bootablejar.maven.common.Utils;
+
+/**
+ * @author jdenise
+ */
+public class ParallelCliSessionsTestCase {
+
+    private static final String STANDALONE_XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<server xmlns=\"urn:jboss:domain:16.0\">\n"
+            + "    <extensions>\n"
+            + "        <extension module=\"org.jboss.as.logging\"/>\n"
+            + "    </extensions>\n"
+            + "    <interfaces>\n"
+            + "        <interface name=\"public\"><inet-address value=\"127.0.0.1\"/></interface>\n"
+            + "    </interfaces>\n"
+            + "</server>\n";
+
+    private Path dir;
+    private Path jbossHome;
+    private Path standalone;
+
+    @Before
+    public void before() throws Exception {
+        dir = Files.createTempDirectory("parallel-cli");
+        jbossHome = dir.resolve("server");
+        standalone = jbossHome.resolve("standalone");
+        write(standalone.resolve("configuration/standalone.xml"), STANDALONE_XML);
+        write(standalone.resolve("configuration/application-users.properties"), "#users\n");
+        write(standalone.resolve("data/kernel/process-uuid"), "original");
+        write(standalone.resolve("data/removed.txt"), "removed");
+        Files.createDirectories(jbossHome.resolve("modules"));
+    }
+
+    @After
+    public void after() {
+        Utils.deleteDir(dir);
+    }
+
+    private static void write(Path file, String content) throws Exception {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(Path file) throws Exception {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    private List<Path> snapshots(int count) throws Exception {
+        List<Path> snapshots = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Path snapshot = dir.resolve("session-" + i);
+            Assume.assumeTrue("Symbolic links not supported", ParallelCliSessions.createSnapshot(jbossHome, snapshot));
+            // Written by the boot of each embedded server.
+            write(snapshot.resolve("standalone/data/kernel/process-uuid"), "session-" + i);
+            snapshots.add(snapshot);
+        }
+        return snapshots;
+    }
+
+    private static List<CliSession> sessions(int count) {
+        List<CliSession> sessions = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            CliSession session = new CliSession();
+            session.setScriptFiles(Collections.singletonList("session-" + i + ".cli"));
+            sessions.add(session);
+        }
+        return sessions;
+    }
+
+    @Test
+    public void testMergeData() throws Exception {
+        List<Path> snapshots = snapshots(2);
+        // A credential store created under the data directory, a file removed.
+        write(snapshots.get(0).resolve("standalone/data/credentials/store.cs"), "secret");
+        Files.delete(snapshots.get(0).resolve("standalone/data/removed.txt"));
+        write(snapshots.get(1).resolve("standalone/configuration/application-users.properties"), "#users\nfoo=bar\n");
+        write(snapshots.get(1).resolve("standalone/configuration/standalone.xml"),
+                STANDALONE_XML.replace("127.0.0.1", "0.0.0.0"));
+        ParallelCliSessions.merge(new TestPluginContext(jbossHome), standalone, sessions(2), snapshots);
+        Assert.assertEquals("secret", read(standalone.resolve("data/credentials/store.cs")));
+        Assert.assertFalse(Files.exists(standalone.resolve("data/removed.txt")));
+        Assert.assertEquals("#users\nfoo=bar\n", read(standalone.resolve("configuration/application-users.properties")));
+        Assert.assertTrue(read(standalone.resolve("configuration/standalone.xml")).contains("0.0.0.0"));
+        Assert.assertEquals("original", read(standalone.resolve("data/kernel/process-uuid")));
+    }
+
+    @Test
+    public void testSameChange() throws Exception {
+        List<Path> snapshots = snapshots(2);
+        for (Path snapshot : snapshots) {
+            write(snapshot.resolve("standalone/data/keystore.jks"), "keystore");
+        }
+        ParallelCliSessions.merge(new TestPluginContext(jbossHome), standalone, sessions(2), snapshots);
+        Assert.assertEquals("keystore", read(standalone.resolve("data/keystore.jks")));
+    }
+
+    @Test
+    public void testDataConflict() throws Exception {
+        List<Path> snapshots = snapshots(2);
+        write(snapshots.get(0).resolve("standalone/data/keystore.jks"), "keystore1");
+        write(snapshots.get(1).resolve("standalone/data/keystore.jks"), "keystore2");
+        try {
+            ParallelCliSessions.merge(new TestPluginContext(jbossHome), standalone, sessions(2), snapshots);
+            Assert.fail("Conflict expected");
+        } catch (Exception ex) {
+            Assert.assertTrue(ex.getMessage(), ex.getMessage().contains("data/keystore.jks"));
+        }
+        Assert.assertFalse(Files.exists(standalone.resolve("data/keystore.jks")));
+        Assert.assertEquals(Arrays.asList("kernel", "removed.txt"), list(standalone.resolve("data")));
+    }
+
+    private static List<String> list(Path dir) throws Exception {
+        List<String> names = new ArrayList<>();
+        try (Stream<Path> stream = Files.list(dir)) {
+            stream.forEach(p -> names.add(p.getFileName().toString()));
+        }
+        Collections.sort(names);
+        return names;
+    }
+}
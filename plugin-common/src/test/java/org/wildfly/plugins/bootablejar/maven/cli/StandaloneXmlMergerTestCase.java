@@ -0,0 +1,138 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.cli;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.wildfly.plugins.bootablejar.maven.common.Utils;
+
+/**
+ * @author jdenise
+ */
+public class StandaloneXmlMergerTestCase {
+
+    private static final String ORIGINAL = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<server xmlns=\"urn:jboss:domain:16.0\">\n"
+            + "    <extensions>\n"
+            + "        <extension module=\"org.jboss.as.logging\"/>\n"
+            + "    </extensions>\n"
+            + "    <!-- comment -->\n"
+            + "    <profile>\n"
+            + "        <subsystem xmlns=\"urn:jboss:domain:logging:8.0\">\n"
+            + "            <console-handler name=\"CONSOLE\"><level name=\"INFO\"/></console-handler>\n"
+            + "        </subsystem>\n"
+            + "        <subsystem xmlns=\"urn:jboss:domain:datasources:6.0\">\n"
+            + "            <datasources/>\n"
+            + "        </subsystem>\n"
+            + "    </profile>\n"
+            + "    <interfaces>\n"
+            + "        <interface name=\"public\"><inet-address value=\"127.0.0.1\"/></interface>\n"
+            + "    </interfaces>\n"
+            + "</server>\n";
+
+    private Path dir;
+    private Path original;
+
+    @Before
+    public void before() throws Exception {
+        dir = Files.createTempDirectory("xml-merger");
+        original = write("standalone.xml", ORIGINAL);
+    }
+
+    @After
+    public void after() {
+        Utils.deleteDir(dir);
+    }
+
+    private Path write(String name, String content) throws Exception {
+        Path file = dir.resolve(name);
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private String read(Path file) throws Exception {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testMerge() throws Exception {
+        // Re-formatted by the server, only the logging level changed.
+        Path logging = write("logging.xml", ORIGINAL.replace("    ", "  ").replace("<!-- comment -->", "").
+                replace("\"INFO\"", "\"DEBUG\""));
+        Path datasources = write("datasources.xml", ORIGINAL.replace("<datasources/>", "<datasources><datasource jndi-name=\"java:/ds\"/></datasources>"));
+        Path elytron = write("elytron.xml", ORIGINAL.replace("<extension module=\"org.jboss.as.logging\"/>",
+                "<extension module=\"org.jboss.as.logging\"/><extension module=\"org.wildfly.extension.elytron\"/>").
+                replace("<subsystem xmlns=\"urn:jboss:domain:datasources:6.0\">",
+                        "<subsystem xmlns=\"urn:wildfly:elytron:12.0\"/><subsystem xmlns=\"urn:jboss:domain:datasources:6.0\">").
+                replace("<interfaces>", "<system-properties><property name=\"foo\" value=\"bar\"/></system-properties><interfaces>"));
+        StandaloneXmlMerger merger = new StandaloneXmlMerger(original);
+        Assert.assertEquals(1, merger.addSession("logging", logging));
+        Assert.assertEquals(1, merger.addSession("datasources", datasources));
+        Assert.assertEquals(3, merger.addSession("elytron", elytron));
+        // Same change as the logging session.
+        Assert.assertEquals(1, merger.addSession("logging2", logging));
+        Path merged = dir.resolve("merged.xml");
+        merger.write(merged);
+        String content = read(merged);
+        Assert.assertTrue(content, content.contains("<level name=\"DEBUG\"/>"));
+        Assert.assertTrue(content, content.contains("<datasource jndi-name=\"java:/ds\"/>"));
+        Assert.assertTrue(content, content.contains("<extension module=\"org.wildfly.extension.elytron\"/>"));
+        Assert.assertTrue(content, content.contains("<!-- comment -->"));
+        int elytronIndex = content.indexOf("urn:wildfly:elytron:12.0");
+        Assert.assertTrue(content, elytronIndex > content.indexOf("urn:jboss:domain:logging:8.0"));
+        Assert.assertTrue(content, elytronIndex < content.indexOf("urn:jboss:domain:datasources:6.0"));
+        int propertiesIndex = content.indexOf("<system-properties>");
+        Assert.assertTrue(content, propertiesIndex > content.indexOf("</profile>"));
+        Assert.assertTrue(content, propertiesIndex < content.indexOf("<interfaces>"));
+    }
+
+    @Test
+    public void testRemoval() throws Exception {
+        Path removed = write("removed.xml", ORIGINAL.replaceAll("(?s)<subsystem xmlns=\"urn:jboss:domain:datasources:6.0\">.*?</subsystem>", ""));
+        StandaloneXmlMerger merger = new StandaloneXmlMerger(original);
+        Assert.assertEquals(1, merger.addSession("removed", removed));
+        Path merged = dir.resolve("merged.xml");
+        merger.write(merged);
+        Assert.assertFalse(read(merged).contains("datasources"));
+    }
+
+    @Test
+    public void testConflict() throws Exception {
+        Path debug = write("debug.xml", ORIGINAL.replace("\"INFO\"", "\"DEBUG\""));
+        Path trace = write("trace.xml", ORIGINAL.replace("\"INFO\"", "\"TRACE\""));
+        StandaloneXmlMerger merger = new StandaloneXmlMerger(original);
+        merger.addSession("debug", debug);
+        try {
+            merger.addSession("trace", trace);
+            Assert.fail("Conflict expected");
+        } catch (Exception ex) {
+            Assert.assertTrue(ex.getMessage(), ex.getMessage().contains("debug and trace"));
+        }
+    }
+
+    @Test
+    public void testNoChange() throws Exception {
+        StandaloneXmlMerger merger = new StandaloneXmlMerger(original);
+        Assert.assertEquals(0, merger.addSession("same", write("same.xml", ORIGINAL.replace("    ", "\t"))));
+        Assert.assertFalse(merger.hasChanges());
+    }
+}
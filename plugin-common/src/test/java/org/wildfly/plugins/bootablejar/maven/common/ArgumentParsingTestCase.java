@@ -19,6 +19,7 @@
 
 package org.wildfly.plugins.bootablejar.maven.common;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
@@ -66,9 +67,71 @@ public class ArgumentParsingTestCase {
         }
     }
 
-    private static CharSequence createParameters(final String separator) {
+    @Test
+    public void testQuoteInsideArgument() {
+        final List<String> expected = Arrays.asList(
+                "-Dtest.prop=\"value with spaces\"suffix",
+                "\"quoted at start\"",
+                "-Dtest.empty=\"\""
+        );
+        assertSplit(expected, Utils.splitArguments(join(expected, separator)));
+    }
+
+    @Test
+    public void testEscapedQuote() {
+        final List<String> expected = Arrays.asList(
+                "-Dtest.json=\"{\\\"key\\\": \\\"a value\\\"}\"",
+                "-Dtest.prop=\"a \\\"quoted\\\"value\""
+        );
+        assertSplit(expected, Utils.splitArguments(join(expected, separator)));
+    }
+
+    @Test
+    public void testWindowsPaths() {
+        final List<String> expected = Arrays.asList(
+                "-Dtest.dir=\"C:\\dir\\\"",
+                "-Xmx1g",
+                "C:\\dir\\",
+                "-Dtest.path=C:\\Users\\test",
+                "-Dtest.last=\"C:\\dir with space\\\""
+        );
+        assertSplit(expected, Utils.splitArguments(join(expected, separator)));
+    }
+
+    @Test
+    public void testEscapedQuoteBeforeWhitespace() {
+        final List<String> expected = Arrays.asList(
+                "-Dtest.say=\"say \\\"hi\\\" there\"",
+                "-Dtest.dir=\"C:\\dir\\\"",
+                "-Dtest.quoted=\"a \\\"b\\\"\""
+        );
+        assertSplit(expected, Utils.splitArguments(join(expected, separator)));
+    }
+
+    @Test
+    public void testUnterminatedQuote() {
+        final List<String> parameters = Utils.splitArguments("-Da=b" + separator + "-Dtest=\"not" + separator + "terminated");
+        assertSplit(Arrays.asList("-Da=b", "-Dtest=\"not" + separator + "terminated"), parameters);
+    }
+
+    @Test
+    public void testAppend() {
+        final List<String> parameters = new ArrayList<>();
+        parameters.add("first");
+        Utils.splitArguments(separator + createParameters(separator) + separator + separator, parameters);
+        final List<String> expected = new ArrayList<>();
+        expected.add("first");
+        expected.addAll(EXPECTED_VALUES);
+        assertSplit(expected, parameters);
+    }
+
+    private static void assertSplit(final List<String> expected, final List<String> parameters) {
+        Assert.assertEquals(String.format("Expected:%n\t%s%nFound:%n\t%s", expected, parameters), expected, parameters);
+    }
+
+    private static CharSequence join(final List<String> values, final String separator) {
         final StringBuilder result = new StringBuilder();
-        final Iterator<String> iterator = EXPECTED_VALUES.iterator();
+        final Iterator<String> iterator = values.iterator();
         while (iterator.hasNext()) {
             result.append(iterator.next());
             if (iterator.hasNext()) {
@@ -77,4 +140,8 @@ public class ArgumentParsingTestCase {
         }
         return result;
     }
+
+    private static CharSequence createParameters(final String separator) {
+        return join(EXPECTED_VALUES, separator);
+    }
 }
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.common;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.maven.artifact.Artifact;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author jdenise
+ */
+public class ArtifactVersionsIndexTestCase {
+
+    private Path dir;
+    private Path propertiesFile;
+    private Path indexFile;
+
+    @Before
+    public void before() throws Exception {
+        dir = Files.createTempDirectory("artifact-versions-index");
+        propertiesFile = dir.resolve("artifact-versions.properties");
+        indexFile = dir.resolve("cache").resolve(ArtifactVersionsIndex.getIndexFileName("org.wildfly:wildfly-galleon-pack:23.0.0.Final"));
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            builder.append("org.group").append(i % 10).append(":artifact").append(i).append('=').
+                    append("org.group").append(i % 10).append(":artifact").append(i).append(":1.0.").append(i).append("::jar\n");
+        }
+        builder.append("org.wildfly.core:wildfly-cli::client=org.wildfly.core:wildfly-cli:15.0.0.Final:client:jar\n");
+        builder.append("org.group0:artifact0=org.group0:artifact0:2.0::jar\n");
+        Files.write(propertiesFile, builder.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @After
+    public void after() throws Exception {
+        Utils.deleteDir(dir);
+    }
+
+    @Test
+    public void testLookup() throws Exception {
+        Map<String, String> expected = new HashMap<>();
+        Utils.readProperties(propertiesFile, expected);
+        ArtifactVersionsIndex index = ArtifactVersionsIndex.build(propertiesFile);
+        Assert.assertEquals(expected.size(), index.size());
+        for (Map.Entry<String, String> entry : expected.entrySet()) {
+            Assert.assertEquals(entry.getValue(), index.lookup(entry.getKey()));
+        }
+        Assert.assertNull(index.lookup("org.group0:artifact"));
+        Assert.assertNull(index.lookup("org.group0:artifact00"));
+
+        Artifact cli = index.getArtifact("org.wildfly.core:wildfly-cli::client");
+        Assert.assertEquals("15.0.0.Final", cli.getVersion());
+        Assert.assertEquals("client", cli.getClassifier());
+        Assert.assertEquals("jar", cli.getType());
+        Artifact a1 = index.getArtifact("org.group1", "artifact1");
+        Artifact a11 = index.getArtifact("org.group1", "artifact11");
+        Assert.assertEquals("1.0.1", a1.getVersion());
+        Assert.assertSame(a1.getGroupId(), a11.getGroupId());
+        Assert.assertNull(index.getArtifact("org.group1", "artifact"));
+    }
+
+    @Test
+    public void testPersisted() throws Exception {
+        ArtifactVersionsIndex index = ArtifactVersionsIndex.load(propertiesFile, indexFile);
+        Assert.assertTrue(Files.exists(indexFile));
+        Assert.assertSame(index, ArtifactVersionsIndex.load(propertiesFile, indexFile));
+
+        // Index read from the index file.
+        Path copy = dir.resolve("copy.idx");
+        Files.copy(indexFile, copy);
+        ArtifactVersionsIndex read = ArtifactVersionsIndex.load(propertiesFile, copy);
+        Assert.assertNotSame(index, read);
+        Assert.assertEquals("org.group0:artifact0:2.0::jar", read.lookup("org.group0:artifact0"));
+        Assert.assertEquals(index.size(), read.size());
+
+        // Properties file updated, the index is rebuilt.
+        Files.write(propertiesFile, "org.group0:artifact0=org.group0:artifact0:3.0::jar\n".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(propertiesFile, FileTime.fromMillis(System.currentTimeMillis() + 10000));
+        ArtifactVersionsIndex rebuilt = ArtifactVersionsIndex.load(propertiesFile, indexFile);
+        Assert.assertEquals(1, rebuilt.size());
+        Assert.assertEquals("3.0", rebuilt.getArtifact("org.group0", "artifact0").getVersion());
+
+        // Corrupted index file, rebuilt and written again.
+        Files.write(indexFile, new byte[]{1, 2, 3});
+        ArtifactVersionsIndex.unload(indexFile);
+        ArtifactVersionsIndex repaired = ArtifactVersionsIndex.load(propertiesFile, indexFile);
+        Assert.assertNotSame(rebuilt, repaired);
+        Assert.assertEquals(1, repaired.size());
+        Assert.assertEquals("3.0", repaired.getArtifact("org.group0", "artifact0").getVersion());
+        Assert.assertTrue(Files.size(indexFile) > 3);
+        ArtifactVersionsIndex.unload(indexFile);
+        Assert.assertEquals("org.group0:artifact0:3.0::jar", ArtifactVersionsIndex.load(propertiesFile, indexFile).lookup("org.group0:artifact0"));
+    }
+
+    @Test
+    public void testGetArtifact() throws Exception {
+        Artifact artifact = Utils.getArtifact("org.foo:bar:1.0:classifier:zip");
+        Assert.assertEquals("org.foo", artifact.getGroupId());
+        Assert.assertEquals("bar", artifact.getArtifactId());
+        Assert.assertEquals("1.0", artifact.getVersion());
+        Assert.assertEquals("classifier", artifact.getClassifier());
+        Assert.assertEquals("zip", artifact.getType());
+        try {
+            Utils.getArtifact("org.foo:bar:1.0");
+            Assert.fail("Invalid artifact");
+        } catch (IllegalArgumentException ex) {
+            // Expected.
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.common;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author jdenise
+ */
+public class BuildMetricsTestCase {
+
+    @Test
+    public void testAggregation() throws Exception {
+        BuildMetrics metrics = new BuildMetrics();
+        try (Instrumentation.Span span = metrics.start(Instrumentation.CLI)) {
+            Thread.sleep(20);
+        }
+        try (Instrumentation.Span span = metrics.start(Instrumentation.CLI)) {
+            metrics.increment("cli-commands", 3);
+        }
+        metrics.increment("cli-commands", 2);
+        metrics.processed(Instrumentation.EXTRA_CONTENT, 2, 1024);
+        metrics.processed(Instrumentation.EXTRA_CONTENT, 1, 512);
+
+        BuildMetrics.Phase cli = metrics.getPhase(Instrumentation.CLI);
+        Assert.assertEquals(2, cli.getCount());
+        Assert.assertTrue(cli.getTotalMillis() >= 20);
+        Assert.assertTrue(cli.getMaxMillis() >= 20);
+        Assert.assertEquals(Long.valueOf(5), metrics.getCounter("cli-commands"));
+        BuildMetrics.Phase content = metrics.getPhase(Instrumentation.EXTRA_CONTENT);
+        Assert.assertEquals(0, content.getCount());
+        Assert.assertEquals(3, content.getFiles());
+        Assert.assertEquals(1536, content.getBytes());
+    }
+
+    @Test
+    public void testNoop() throws Exception {
+        Assert.assertFalse(Instrumentation.NOOP.isEnabled());
+        Assert.assertSame(Instrumentation.NOOP_SPAN, Instrumentation.NOOP.start(Instrumentation.CLI));
+    }
+}
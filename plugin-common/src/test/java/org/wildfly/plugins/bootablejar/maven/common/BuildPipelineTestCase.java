@@ -0,0 +1,98 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.common;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author jdenise
+ */
+public class BuildPipelineTestCase {
+
+    @Test
+    public void testDependencies() throws Exception {
+        TestPluginContext ctx = new TestPluginContext();
+        List<String> order = new CopyOnWriteArrayList<>();
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        try (BuildPipeline pipeline = new BuildPipeline(ctx, 4)) {
+            BuildPipeline.Stage<Integer> a = pipeline.stage("a", () -> {
+                bothStarted.countDown();
+                // Only completes if b runs concurrently.
+                Assert.assertTrue(bothStarted.await(10, TimeUnit.SECONDS));
+                order.add("a");
+                return 1;
+            });
+            BuildPipeline.Stage<Integer> b = pipeline.stage("b", () -> {
+                bothStarted.countDown();
+                Assert.assertTrue(bothStarted.await(10, TimeUnit.SECONDS));
+                order.add("b");
+                return 2;
+            });
+            BuildPipeline.Stage<Integer> c = pipeline.stage("c", () -> {
+                order.add("c");
+                return a.get() + b.get();
+            }, a, b);
+            BuildPipeline.Stage<Void> d = pipeline.stage("d", () -> {
+                order.add("d");
+            }, c);
+            pipeline.await();
+            Assert.assertEquals(Integer.valueOf(3), c.get());
+            Assert.assertNull(d.get());
+        }
+        Assert.assertEquals(4, order.size());
+        Assert.assertEquals("c", order.get(2));
+        Assert.assertEquals("d", order.get(3));
+        Assert.assertEquals(1, ctx.getInstrumentation().getPhase("c").getCount());
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        TestPluginContext ctx = new TestPluginContext();
+        AtomicBoolean executed = new AtomicBoolean();
+        try (BuildPipeline pipeline = new BuildPipeline(ctx, 2)) {
+            BuildPipeline.Stage<Void> failing = pipeline.stage("failing", () -> {
+                throw new MojoExecutionException("failed");
+            });
+            BuildPipeline.Stage<Void> independent = pipeline.stage("independent", () -> {
+            });
+            BuildPipeline.Stage<Void> dependent = pipeline.stage("dependent", () -> {
+                executed.set(true);
+            }, failing, independent);
+            try {
+                pipeline.await();
+                Assert.fail("Stage should have failed");
+            } catch (MojoExecutionException ex) {
+                Assert.assertEquals("failed", ex.getMessage());
+            }
+            try {
+                dependent.get();
+                Assert.fail("Stage should have failed");
+            } catch (MojoExecutionException ex) {
+                Assert.assertEquals("failed", ex.getMessage());
+            }
+            independent.get();
+        }
+        Assert.assertFalse(executed.get());
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.common;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author jdenise
+ */
+public class CdsArchiveGeneratorTestCase {
+
+    private Path dir;
+    private Path jar;
+
+    @Before
+    public void before() throws Exception {
+        dir = Files.createTempDirectory("cds-archive");
+        jar = dir.resolve("app-bootable.jar");
+        Files.write(jar, "jar".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(jar, FileTime.fromMillis(1000000));
+    }
+
+    @After
+    public void after() throws Exception {
+        Utils.deleteDir(dir);
+    }
+
+    @Test
+    public void testFiles() throws Exception {
+        Assert.assertEquals(dir.resolve("app-bootable.jsa"), CdsArchiveGenerator.getArchive(jar));
+        Assert.assertEquals(dir.resolve("app-bootable-cds.options"), CdsArchiveGenerator.getJvmOptionsFile(jar));
+        // Relative to the jar directory, as the jar path used to launch it.
+        Assert.assertEquals(Arrays.asList("-XX:SharedArchiveFile=app-bootable.jsa", "-Xshare:auto"),
+                CdsArchiveGenerator.getJvmOptions(jar));
+    }
+
+    @Test
+    public void testFingerprint() throws Exception {
+        String fingerprint = CdsArchiveGenerator.fingerprint(jar, "jvm");
+        Assert.assertEquals(fingerprint, CdsArchiveGenerator.fingerprint(jar, "jvm"));
+        Assert.assertNotEquals(fingerprint, CdsArchiveGenerator.fingerprint(jar, "other-jvm"));
+        // The JVM rejects an archive created for a jar with another modification time.
+        Files.setLastModifiedTime(jar, FileTime.fromMillis(2000000));
+        Assert.assertNotEquals(fingerprint, CdsArchiveGenerator.fingerprint(jar, "jvm"));
+        Files.setLastModifiedTime(jar, FileTime.fromMillis(1000000));
+        Files.write(jar, "jat".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(jar, FileTime.fromMillis(1000000));
+        Assert.assertNotEquals(fingerprint, CdsArchiveGenerator.fingerprint(jar, "jvm"));
+    }
+
+    @Test
+    public void testCachedArchive() throws Exception {
+        Path cache = dir.resolve("cache");
+        Files.createDirectories(cache);
+        TestPluginContext ctx = new TestPluginContext();
+        Files.setLastModifiedTime(jar, FileTime.fromMillis(ctx.getArchiveTimestamp()));
+        String fingerprint = CdsArchiveGenerator.fingerprint(jar, CdsArchiveGenerator.getJvmIdentity());
+        Files.write(cache.resolve(fingerprint + CdsArchiveGenerator.ARCHIVE_EXTENSION), "archive".getBytes(StandardCharsets.UTF_8));
+        // A repackaged jar with the same content.
+        Files.setLastModifiedTime(jar, FileTime.fromMillis(System.currentTimeMillis()));
+        CdsArchiveGenerator generator = new CdsArchiveGenerator(ctx, jar, cache);
+        Assert.assertFalse(generator.generate(1));
+        Assert.assertEquals(ctx.getArchiveTimestamp(), Files.getLastModifiedTime(jar).toMillis());
+        Assert.assertEquals("archive", new String(Files.readAllBytes(CdsArchiveGenerator.getArchive(jar)), StandardCharsets.UTF_8));
+        Assert.assertEquals(CdsArchiveGenerator.getJvmOptions(jar), Files.readAllLines(CdsArchiveGenerator.getJvmOptionsFile(jar)));
+        // The files written next to the jar don't change the fingerprint, generating again uses the cache.
+        Assert.assertFalse(generator.generate(1));
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+import org.jboss.jandex.DotName;
+import org.jboss.jandex.Index;
+import org.jboss.jandex.IndexReader;
+import org.jboss.jandex.Indexer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author jdenise
+ */
+public class DeploymentIndexerTestCase {
+
+    private Path dir;
+
+    @Before
+    public void before() throws Exception {
+        dir = Files.createTempDirectory("deployment-indexer");
+    }
+
+    @After
+    public void after() throws Exception {
+        Utils.deleteDir(dir);
+    }
+
+    @Test
+    public void testNoJandexModule() throws Exception {
+        Files.createDirectories(dir.resolve("modules/system/layers/base/org/jboss/as/server/main"));
+        Assert.assertNull(DeploymentIndexer.findJandexJar(dir));
+        Assert.assertNull(DeploymentIndexer.create(new TestPluginContext(), dir, dir.resolve("cache")));
+        Assert.assertNull(DeploymentIndexer.findJandexJar(dir.resolve("missing")));
+    }
+
+    @Test
+    public void testFindJandexModule() throws Exception {
+        Path module = dir.resolve("modules/system/layers/base/org/jboss/jandex/main");
+        Files.createDirectories(module);
+        Files.write(module.resolve("module.xml"), new byte[0]);
+        Path jar = module.resolve("jandex-2.4.2.Final.jar");
+        Files.write(jar, new byte[0]);
+        Assert.assertEquals(jar, DeploymentIndexer.findJandexJar(dir));
+    }
+
+    /**
+     * A server whose Jandex module is the Jandex library of the tests.
+     */
+    private DeploymentIndexer createIndexer() throws Exception {
+        Path home = dir.resolve("server");
+        Path module = Files.createDirectories(home.resolve("modules/system/layers/base/org/jboss/jandex/main"));
+        Files.copy(getJandexJar(), module.resolve("jandex.jar"));
+        DeploymentIndexer indexer = DeploymentIndexer.create(new TestPluginContext(), home, dir.resolve("cache"));
+        Assert.assertNotNull(indexer);
+        return indexer;
+    }
+
+    private static Path getJandexJar() throws Exception {
+        return Paths.get(Indexer.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+    }
+
+    private static byte[] classFile(Class<?> clazz) throws IOException {
+        try (InputStream in = clazz.getResourceAsStream(clazz.getSimpleName() + ".class")) {
+            return readAll(in);
+        }
+    }
+
+    private static String entryName(Class<?> clazz) {
+        return clazz.getName().replace('.', '/') + ".class";
+    }
+
+    private static byte[] zip(Object... entries) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (int i = 0; i < entries.length; i += 2) {
+                zip.putNextEntry(new ZipEntry((String) entries[i]));
+                zip.write((byte[]) entries[i + 1]);
+                zip.closeEntry();
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] read(ZipFile zip, String name) throws IOException {
+        ZipEntry entry = zip.getEntry(name);
+        Assert.assertNotNull(name, entry);
+        try (InputStream in = zip.getInputStream(entry)) {
+            return readAll(in);
+        }
+    }
+
+    /**
+     * The entry of a jar, null if the jar doesn't contain it.
+     */
+    private static byte[] read(byte[] jar, String name) throws IOException {
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(jar))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                if (entry.getName().equals(name)) {
+                    return readAll(in);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static void assertIndexed(byte[] index, Class<?>... classes) throws IOException {
+        Assert.assertNotNull(index);
+        Index read = new IndexReader(new ByteArrayInputStream(index)).read();
+        for (Class<?> clazz : classes) {
+            Assert.assertNotNull(clazz.getName(), read.getClassByName(DotName.createSimple(clazz.getName())));
+        }
+    }
+
+    private Path war(byte[] lib, byte[] indexedLib, byte[] resources) throws IOException {
+        Path war = dir.resolve("app.war");
+        Files.write(war, zip("index.html", "<html/>".getBytes(StandardCharsets.UTF_8),
+                "WEB-INF/classes/" + entryName(DeploymentIndexerTestCase.class), classFile(DeploymentIndexerTestCase.class),
+                "WEB-INF/lib/lib.jar", lib,
+                "WEB-INF/lib/indexed.jar", indexedLib,
+                "WEB-INF/lib/resources.jar", resources));
+        return war;
+    }
+
+    @Test
+    public void testIndexWar() throws Exception {
+        byte[] lib = zip(entryName(TestPluginContext.class), classFile(TestPluginContext.class));
+        byte[] indexedLib = zip(entryName(Utils.class), classFile(Utils.class), DeploymentIndexer.INDEX, new byte[]{1});
+        byte[] resources = zip("META-INF/resources/style.css", new byte[0]);
+        Path war = war(lib, indexedLib, resources);
+        byte[] original = Files.readAllBytes(war);
+        Path indexed;
+        try (DeploymentIndexer indexer = createIndexer()) {
+            indexed = indexer.index(war);
+        }
+        Assert.assertTrue(indexed.startsWith(dir.resolve("cache")));
+        Assert.assertEquals("app.war", indexed.getFileName().toString());
+        Assert.assertArrayEquals(original, Files.readAllBytes(war));
+        try (ZipFile zip = new ZipFile(indexed.toFile())) {
+            Assert.assertEquals("<html/>", new String(read(zip, "index.html"), StandardCharsets.UTF_8));
+            // The classes of a web archive are indexed in WEB-INF/classes.
+            Assert.assertNull(zip.getEntry(DeploymentIndexer.INDEX));
+            assertIndexed(read(zip, "WEB-INF/classes/" + DeploymentIndexer.INDEX), DeploymentIndexerTestCase.class);
+            byte[] rewritten = read(zip, "WEB-INF/lib/lib.jar");
+            Assert.assertArrayEquals(classFile(TestPluginContext.class), read(rewritten, entryName(TestPluginContext.class)));
+            assertIndexed(read(rewritten, DeploymentIndexer.INDEX), TestPluginContext.class);
+            // Already indexed and without classes, kept as is.
+            Assert.assertArrayEquals(indexedLib, read(zip, "WEB-INF/lib/indexed.jar"));
+            Assert.assertArrayEquals(resources, read(zip, "WEB-INF/lib/resources.jar"));
+        }
+    }
+
+    @Test
+    public void testCache() throws Exception {
+        byte[] lib = zip(entryName(TestPluginContext.class), classFile(TestPluginContext.class));
+        Path war = war(lib, zip(entryName(Utils.class), classFile(Utils.class), DeploymentIndexer.INDEX, new byte[]{1}),
+                zip("style.css", new byte[0]));
+        Path indexed;
+        try (DeploymentIndexer indexer = createIndexer()) {
+            indexed = indexer.index(war);
+        }
+        Files.write(indexed, "cached".getBytes(StandardCharsets.UTF_8));
+        try (DeploymentIndexer indexer = DeploymentIndexer.create(new TestPluginContext(), dir.resolve("server"), dir.resolve("cache"))) {
+            // Same content, the cached archive is used.
+            Assert.assertEquals(indexed, indexer.index(war));
+            Assert.assertEquals("cached", new String(Files.readAllBytes(indexed), StandardCharsets.UTF_8));
+            // Another deployment with the same jar reuses the indexed jar.
+            Path other = dir.resolve("other.war");
+            Files.write(other, zip("WEB-INF/lib/lib.jar", lib));
+            try (ZipFile zip = new ZipFile(indexer.index(other).toFile())) {
+                List<Path> cachedJars = listJarsCache(".jar");
+                Assert.assertEquals(1, cachedJars.size());
+                Assert.assertArrayEquals(Files.readAllBytes(cachedJars.get(0)), read(zip, "WEB-INF/lib/lib.jar"));
+            }
+        }
+        // The jars that don't need an index are only checked once.
+        Assert.assertEquals(2, listJarsCache(".unchanged").size());
+    }
+
+    @Test
+    public void testJandexVersion() throws Exception {
+        byte[] lib = zip(entryName(TestPluginContext.class), classFile(TestPluginContext.class));
+        Path war = war(lib, lib, lib);
+        Path indexed;
+        try (DeploymentIndexer indexer = createIndexer()) {
+            indexed = indexer.index(war);
+        }
+        // Another Jandex version in the server.
+        Path jandex = dir.resolve("server/modules/system/layers/base/org/jboss/jandex/main/jandex.jar");
+        Files.delete(jandex);
+        try (ZipInputStream in = new ZipInputStream(Files.newInputStream(getJandexJar()));
+                ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jandex))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                out.putNextEntry(new ZipEntry(entry.getName()));
+                out.write(readAll(in));
+                out.closeEntry();
+            }
+            out.putNextEntry(new ZipEntry("version.txt"));
+            out.write(new byte[]{1});
+            out.closeEntry();
+        }
+        try (DeploymentIndexer indexer = DeploymentIndexer.create(new TestPluginContext(), dir.resolve("server"), dir.resolve("cache"))) {
+            Path reindexed = indexer.index(war);
+            Assert.assertNotEquals(indexed, reindexed);
+            Assert.assertTrue(Files.exists(indexed));
+            Assert.assertTrue(reindexed.startsWith(dir.resolve("cache").resolve(DeploymentStager.computeHash(jandex))));
+        }
+    }
+
+    private List<Path> listJarsCache(String extension) throws IOException {
+        Path cache = dir.resolve("cache").resolve(DeploymentStager.computeHash(dir.resolve(
+                "server/modules/system/layers/base/org/jboss/jandex/main/jandex.jar")));
+        try (Stream<Path> stream = Files.list(cache.resolve("jars"))) {
+            return stream.filter(p -> p.toString().endsWith(extension)).collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    public void testIndexExploded() throws Exception {
+        byte[] lib = zip(entryName(TestPluginContext.class), classFile(TestPluginContext.class));
+        Path source = dir.resolve("lib.jar");
+        Files.write(source, lib);
+        Path exploded = dir.resolve("exploded").resolve("app.war");
+        Path classFile = exploded.resolve("WEB-INF/classes/" + entryName(DeploymentIndexerTestCase.class));
+        Files.createDirectories(classFile.getParent());
+        Files.write(classFile, classFile(DeploymentIndexerTestCase.class));
+        Path jar = exploded.resolve("WEB-INF/lib/lib.jar");
+        Files.createDirectories(jar.getParent());
+        try {
+            Files.createLink(jar, source);
+        } catch (IOException | UnsupportedOperationException ex) {
+            Assume.assumeNoException("Hard links not supported", ex);
+        }
+        try (DeploymentIndexer indexer = createIndexer()) {
+            indexer.indexExploded(exploded);
+        }
+        // The linked file is replaced, not written through.
+        Assert.assertArrayEquals(lib, Files.readAllBytes(source));
+        byte[] rewritten = Files.readAllBytes(jar);
+        assertIndexed(read(rewritten, DeploymentIndexer.INDEX), TestPluginContext.class);
+        assertIndexed(Files.readAllBytes(exploded.resolve("WEB-INF/classes/" + DeploymentIndexer.INDEX)),
+                DeploymentIndexerTestCase.class);
+        Assert.assertEquals(Arrays.asList("lib.jar"), Arrays.asList(jar.getParent().toFile().list()));
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.common;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author jdenise
+ */
+public class DeploymentStagerTestCase {
+
+    // SHA-1 of "hello".
+    private static final String HELLO_SHA1 = "aaf4c61ddcc5e8a2dabede0f3b482cd9aea9434d";
+
+    private Path dir;
+    private Path deployment;
+    private Path jbossHome;
+    private DeploymentStager stager;
+
+    @Before
+    public void before() throws Exception {
+        dir = Files.createTempDirectory("deployment-stager");
+        deployment = dir.resolve("app.war");
+        Files.write(deployment, "hello".getBytes(StandardCharsets.UTF_8));
+        jbossHome = dir.resolve("server");
+        stager = new DeploymentStager(dir.resolve("cache"));
+    }
+
+    @After
+    public void after() throws Exception {
+        Utils.deleteDir(dir);
+    }
+
+    @Test
+    public void testHash() throws Exception {
+        Assert.assertEquals(HELLO_SHA1, stager.getHash(deployment));
+        // Same size and time, the stored hash is reused.
+        FileTime time = Files.getLastModifiedTime(deployment);
+        Files.write(deployment, "world".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(deployment, time);
+        Assert.assertEquals(HELLO_SHA1, stager.getHash(deployment));
+        Files.setLastModifiedTime(deployment, FileTime.fromMillis(time.toMillis() + 2000));
+        Assert.assertEquals(DeploymentStager.computeHash(deployment), stager.getHash(deployment));
+        Assert.assertNotEquals(HELLO_SHA1, stager.getHash(deployment));
+    }
+
+    @Test
+    public void testHashSameFileName() throws Exception {
+        Path other = dir.resolve("other").resolve("app.war");
+        Files.createDirectories(other.getParent());
+        Files.write(other, "world".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(other, Files.getLastModifiedTime(deployment));
+        Assert.assertEquals(HELLO_SHA1, stager.getHash(deployment));
+        // Same file name, size and time in another directory.
+        Assert.assertEquals(DeploymentStager.computeHash(other), stager.getHash(other));
+        Assert.assertEquals(HELLO_SHA1, stager.getHash(deployment));
+    }
+
+    @Test
+    public void testStage() throws Exception {
+        Assert.assertTrue(stager.stage(deployment, HELLO_SHA1, jbossHome));
+        Path content = jbossHome.resolve("standalone").resolve("data").resolve("content").
+                resolve("aa").resolve("f4c61ddcc5e8a2dabede0f3b482cd9aea9434d").resolve("content");
+        Assert.assertEquals("hello", new String(Files.readAllBytes(content), StandardCharsets.UTF_8));
+        Assert.assertFalse(stager.stage(deployment, HELLO_SHA1, jbossHome));
+        // A new server is staged from the cache.
+        Files.delete(deployment);
+        Assert.assertTrue(stager.stage(deployment, HELLO_SHA1, dir.resolve("server2")));
+    }
+
+    @Test
+    public void testDeployedHash() throws Exception {
+        Path config = jbossHome.resolve("standalone").resolve("configuration").resolve("standalone.xml");
+        Files.createDirectories(config.getParent());
+        Assert.assertNull(DeploymentStager.getDeployedHash(jbossHome, "app.war"));
+        Files.write(config, ("<server xmlns=\"urn:jboss:domain:16.0\"><deployments>"
+                + "<deployment name=\"app.war\" runtime-name=\"ROOT.war\"><content sha1=\"" + HELLO_SHA1 + "\"/></deployment>"
+                + "</deployments></server>").getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(HELLO_SHA1, DeploymentStager.getDeployedHash(jbossHome, "app.war"));
+        Assert.assertNull(DeploymentStager.getDeployedHash(jbossHome, "other.war"));
+    }
+
+    @Test
+    public void testDeployCommand() {
+        String cmd = DeploymentStager.getDeployCommand("app.war", "ROOT.war", "0a1b", false);
+        Assert.assertEquals("/deployment=\"app.war\":add(runtime-name=\"ROOT.war\",content=[{hash=bytes{0x0a,0x1b}}],enabled=true)", cmd);
+        cmd = DeploymentStager.getDeployCommand("app.war", "ROOT.war", "0a1b", true);
+        Assert.assertTrue(cmd.startsWith(":full-replace-deployment(name=\"app.war\""));
+    }
+
+    @Test
+    public void testStageExploded() throws Exception {
+        Path exploded = dir.resolve("app");
+        Files.createDirectories(exploded.resolve("WEB-INF"));
+        Files.write(exploded.resolve("index.html"), "hello".getBytes(StandardCharsets.UTF_8));
+        Files.write(exploded.resolve("WEB-INF").resolve("web.xml"), "<web-app/>".getBytes(StandardCharsets.UTF_8));
+        Path stale = jbossHome.resolve("standalone").resolve(DeploymentStager.EXPLODED_DIR).resolve("app.war").resolve("stale.html");
+        Files.createDirectories(stale.getParent());
+        Files.write(stale, "stale".getBytes(StandardCharsets.UTF_8));
+        String path = DeploymentStager.stageExploded(exploded, jbossHome, "app.war");
+        Assert.assertEquals(DeploymentStager.EXPLODED_DIR + "/app.war", path);
+        Path target = jbossHome.resolve("standalone").resolve(path);
+        Assert.assertEquals("hello", new String(Files.readAllBytes(target.resolve("index.html")), StandardCharsets.UTF_8));
+        Assert.assertTrue(Files.exists(target.resolve("WEB-INF").resolve("web.xml")));
+        Assert.assertFalse(Files.exists(stale));
+        String cmd = DeploymentStager.getExplodedDeployCommand("app.war", "ROOT.war", path, false);
+        Assert.assertEquals("/deployment=\"app.war\":add(runtime-name=\"ROOT.war\",content=[{path=\"" + path
+                + "\",relative-to=jboss.server.base.dir,archive=false}],enabled=true)", cmd);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.common;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author jdenise
+ */
+public class DeploymentTestCase {
+
+    private Path dir;
+
+    @Before
+    public void before() throws Exception {
+        dir = Files.createTempDirectory("deployments");
+    }
+
+    @After
+    public void after() throws Exception {
+        Utils.deleteDir(dir);
+    }
+
+    private Deployment newDeployment(String name, String... dependencies) throws Exception {
+        Path file = dir.resolve(name);
+        Files.write(file, name.getBytes(StandardCharsets.UTF_8));
+        Deployment deployment = new Deployment();
+        deployment.setFile(file.toFile());
+        deployment.setDependencies(Arrays.asList(dependencies));
+        return deployment;
+    }
+
+    private static List<String> names(List<Deployment> deployments) {
+        List<String> names = new ArrayList<>();
+        for (Deployment d : deployments) {
+            names.add(d.getName());
+        }
+        return names;
+    }
+
+    @Test
+    public void testSort() throws Exception {
+        Deployment war = newDeployment("app.war", "ejb.jar", "ra.rar");
+        Deployment ejb = newDeployment("ejb.jar", "ra.rar");
+        Deployment ra = newDeployment("ra.rar");
+        Deployment other = newDeployment("other.jar");
+        Assert.assertEquals(Arrays.asList("ra.rar", "ejb.jar", "app.war", "other.jar"),
+                names(Deployment.sort(Arrays.asList(war, ejb, ra, other))));
+    }
+
+    @Test
+    public void testInvalidDependencies() throws Exception {
+        try {
+            Deployment.sort(Arrays.asList(newDeployment("a.jar", "b.jar"), newDeployment("b.jar", "a.jar")));
+            Assert.fail("Cycle should be detected");
+        } catch (IllegalArgumentException ex) {
+            Assert.assertTrue(ex.getMessage(), ex.getMessage().contains("Cyclic"));
+        }
+        try {
+            Deployment.sort(Arrays.asList(newDeployment("a.jar", "unknown.jar")));
+            Assert.fail("Unknown dependency should be detected");
+        } catch (IllegalArgumentException ex) {
+            Assert.assertTrue(ex.getMessage(), ex.getMessage().contains("unknown.jar"));
+        }
+    }
+
+    @Test
+    public void testDeployBatch() throws Exception {
+        Path jbossHome = dir.resolve("server");
+        List<Deployment> deployments = Arrays.asList(newDeployment("app.war", "ejb.jar"), newDeployment("ejb.jar"));
+        PluginContext ctx = new TestPluginContext(jbossHome) {
+            @Override
+            public boolean isHollow() {
+                return true;
+            }
+
+            @Override
+            public List<Deployment> getExtraDeployments() {
+                return deployments;
+            }
+
+            @Override
+            public boolean isDeploymentStagingEnabled() {
+                return true;
+            }
+
+            @Override
+            public Path getDeploymentCacheDir() {
+                return dir.resolve("cache");
+            }
+        };
+        List<String> commands = new ArrayList<>();
+        Utils.deploy(ctx, commands);
+        Assert.assertEquals(4, commands.size());
+        Assert.assertEquals("batch", commands.get(0));
+        Assert.assertTrue(commands.get(1), commands.get(1).startsWith("/deployment=\"ejb.jar\":add("));
+        Assert.assertTrue(commands.get(2), commands.get(2).startsWith("/deployment=\"app.war\":add("));
+        Assert.assertEquals("run-batch", commands.get(3));
+        for (Deployment d : deployments) {
+            File file = d.getFile();
+            String hash = DeploymentStager.computeHash(file.toPath());
+            Path content = DeploymentStager.getContentPath(jbossHome.resolve("standalone").resolve("data").resolve("content"), hash);
+            Assert.assertTrue(Files.exists(content));
+        }
+    }
+}
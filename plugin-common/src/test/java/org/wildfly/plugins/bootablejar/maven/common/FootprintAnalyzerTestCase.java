@@ -0,0 +1,102 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.common;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author jdenise
+ */
+public class FootprintAnalyzerTestCase {
+
+    private Path dir;
+
+    @Before
+    public void before() throws Exception {
+        dir = Files.createTempDirectory("footprint");
+    }
+
+    @After
+    public void after() throws Exception {
+        Utils.deleteDir(dir);
+    }
+
+    static void addModule(Path jbossHome, String name, int jarSize, String... dependencies) throws Exception {
+        Path moduleDir = jbossHome.resolve("modules").resolve("system").resolve("layers").resolve("base");
+        for (String part : name.split("\\.")) {
+            moduleDir = moduleDir.resolve(part);
+        }
+        moduleDir = moduleDir.resolve("main");
+        Files.createDirectories(moduleDir);
+        StringBuilder builder = new StringBuilder();
+        builder.append("<module xmlns=\"urn:jboss:module:1.8\" name=\"").append(name).append("\">");
+        builder.append("<resources><resource-root path=\"lib.jar\"/></resources><dependencies>");
+        for (String dep : dependencies) {
+            builder.append("<module name=\"").append(dep).append("\"/>");
+        }
+        builder.append("</dependencies></module>");
+        Files.write(moduleDir.resolve("module.xml"), builder.toString().getBytes(StandardCharsets.UTF_8));
+        Files.write(moduleDir.resolve("lib.jar"), new byte[jarSize]);
+    }
+
+    @Test
+    public void testAnalyze() throws Exception {
+        Path jbossHome = dir.resolve("server");
+        addModule(jbossHome, "org.jboss.as.standalone", 10, "org.base");
+        addModule(jbossHome, "org.base", 100);
+        addModule(jbossHome, "org.jaxrs", 1000, "org.base", "org.shared");
+        addModule(jbossHome, "org.jpa", 2000, "org.shared");
+        addModule(jbossHome, "org.shared", 500);
+        addModule(jbossHome, "org.unused", 50);
+        Path config = jbossHome.resolve("standalone").resolve("configuration").resolve("standalone.xml");
+        Files.createDirectories(config.getParent());
+        Files.write(config, "<server><extensions><extension module=\"org.jaxrs\"/></extensions></server>".getBytes(StandardCharsets.UTF_8));
+
+        Map<String, Set<String>> packages = new HashMap<>();
+        packages.put("jaxrs", Collections.singleton("org.jaxrs"));
+        packages.put("jpa", new HashSet<>(Arrays.asList("org.jpa", "docs.jpa")));
+        FootprintAnalyzer.Report report = FootprintAnalyzer.analyze(jbossHome, Arrays.asList("jaxrs", "jpa"), packages);
+
+        Assert.assertEquals(6, report.getModules().size());
+        FootprintAnalyzer.Module jaxrs = report.getModules().get("org.jaxrs:main");
+        Assert.assertEquals(2, jaxrs.getFiles());
+        Assert.assertTrue(jaxrs.getBytes() > 1000);
+        Assert.assertEquals(new HashSet<>(Arrays.asList("org.jaxrs:main", "org.jpa:main")),
+                report.getModules().get("org.shared:main").getDependents());
+        // org.jpa isn't an extension, nothing depends on it.
+        Assert.assertEquals(new HashSet<>(Arrays.asList("org.jpa:main", "org.unused:main")), report.getUnreferencedModules());
+
+        FootprintAnalyzer.LayerFootprint jaxrsLayer = report.getLayers().get("jaxrs");
+        Assert.assertEquals(new HashSet<>(Arrays.asList("org.jaxrs:main", "org.base:main", "org.shared:main")), jaxrsLayer.getModules());
+        long shared = report.getModules().get("org.shared:main").getBytes();
+        Assert.assertEquals(jaxrsLayer.getBytes() - shared, jaxrsLayer.getExclusiveBytes());
+        Assert.assertTrue(report.getDirectories().containsKey("modules"));
+        Assert.assertTrue(report.getTotalBytes() >= report.getDirectories().get("modules"));
+    }
+}
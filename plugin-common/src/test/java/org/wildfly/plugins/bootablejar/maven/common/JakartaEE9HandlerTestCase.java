@@ -0,0 +1,89 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.common;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import org.jboss.galleon.universe.maven.MavenArtifact;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import static org.wildfly.plugins.bootablejar.maven.common.Constants.JBOSS_MAVEN_DIST;
+import static org.wildfly.plugins.bootablejar.maven.common.Constants.JBOSS_PROVISIONING_MAVEN_REPO;
+
+/**
+ * @author jdenise
+ */
+public class JakartaEE9HandlerTestCase {
+
+    private Path dir;
+    private Path repo;
+    private JakartaEE9Handler handler;
+
+    @Before
+    public void before() throws Exception {
+        dir = Files.createTempDirectory("ee9-handler");
+        repo = Files.createDirectories(dir.resolve("repo"));
+        Path versionDir = Files.createDirectories(repo.resolve("org/test/cli/1.0-ee9"));
+        Files.createFile(versionDir.resolve("cli-1.0-ee9.jar"));
+        Map<String, String> options = new HashMap<>();
+        options.put(JBOSS_MAVEN_DIST, "true");
+        options.put(JBOSS_PROVISIONING_MAVEN_REPO, repo.toString());
+        handler = new JakartaEE9Handler(options, null);
+        handler.setup();
+    }
+
+    @After
+    public void after() {
+        handler.done();
+        Utils.deleteDir(dir);
+    }
+
+    private static MavenArtifact artifact() {
+        MavenArtifact artifact = new MavenArtifact();
+        artifact.setGroupId("org.test");
+        artifact.setArtifactId("cli");
+        artifact.setVersion("1.0");
+        artifact.setExtension("jar");
+        return artifact;
+    }
+
+    @Test
+    public void testResolveBeforeLookup() throws Exception {
+        try {
+            handler.resolve(artifact());
+            Assert.fail("The feature-pack must be looked up first");
+        } catch (IOException ex) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void testResolveTransformed() throws Exception {
+        Path tasks = dir.resolve("wildfly-tasks.properties");
+        Files.write(tasks, "jakarta.transform.artifacts.suffix=-ee9".getBytes(StandardCharsets.UTF_8));
+        handler.lookupFeaturePack(tasks, dir.resolve("wildfly-jakarta-transform-excludes.txt"));
+        MavenArtifact artifact = artifact();
+        handler.resolve(artifact);
+        Assert.assertEquals(repo.resolve("org/test/cli/1.0-ee9/cli-1.0-ee9.jar"), artifact.getPath());
+    }
+}
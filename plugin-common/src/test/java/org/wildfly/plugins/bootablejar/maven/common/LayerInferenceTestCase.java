@@ -0,0 +1,165 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author jdenise
+ */
+public class LayerInferenceTestCase {
+
+    private Path dir;
+
+    @Before
+    public void before() throws Exception {
+        dir = Files.createTempDirectory("layer-inference");
+    }
+
+    @After
+    public void after() throws Exception {
+        Utils.deleteDir(dir);
+    }
+
+    /**
+     * A class file truncated after its constant pool.
+     */
+    private static byte[] classFile(String... utf8) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(0xCAFEBABE);
+        data.writeShort(0);
+        data.writeShort(52);
+        data.writeShort(utf8.length + 2);
+        data.writeByte(3);
+        data.writeInt(42);
+        for (String value : utf8) {
+            data.writeByte(1);
+            data.writeUTF(value);
+        }
+        data.flush();
+        return out.toByteArray();
+    }
+
+    private static byte[] zip(Object... entries) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (int i = 0; i < entries.length; i += 2) {
+                zip.putNextEntry(new ZipEntry((String) entries[i]));
+                zip.write((byte[]) entries[i + 1]);
+                zip.closeEntry();
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testScan() throws Exception {
+        byte[] lib = zip("META-INF/beans.xml", new byte[0],
+                "org/lib/Dao.class", classFile("org/lib/Dao", "Ljavax/persistence/Entity;"));
+        byte[] war = zip("WEB-INF/classes/org/app/Resource.class", classFile("org/app/Resource", "Ljavax/ws/rs/Path;"),
+                "WEB-INF/lib/lib.jar", lib);
+        Path file = dir.resolve("app.war");
+        try (OutputStream out = Files.newOutputStream(file)) {
+            out.write(war);
+        }
+        Map<String, String> evidence = LayerInference.scan(file);
+        Assert.assertEquals(new HashSet<>(Arrays.asList("servlet", "jaxrs", "cdi", "jpa")), evidence.keySet());
+        Assert.assertEquals("app.war!/WEB-INF/classes/org/app/Resource.class", evidence.get("jaxrs"));
+        Assert.assertEquals("app.war!/WEB-INF/lib/lib.jar!/META-INF/beans.xml", evidence.get("cdi"));
+        Assert.assertEquals("app.war!/WEB-INF/lib/lib.jar!/org/lib/Dao.class", evidence.get("jpa"));
+    }
+
+    @Test
+    public void testScanLibraryClasses() throws Exception {
+        byte[] lib = zip("org/lib/Resource.class", classFile("org/lib/Resource", "Ljavax/ws/rs/Path;"));
+        Path war = dir.resolve("app.war");
+        Files.write(war, zip("WEB-INF/web.xml", new byte[0], "WEB-INF/lib/resources.jar", lib));
+        Map<String, String> evidence = LayerInference.scan(war);
+        Assert.assertEquals("app.war!/WEB-INF/lib/resources.jar!/org/lib/Resource.class", evidence.get("jaxrs"));
+
+        Map<String, Set<String>> deps = new HashMap<>();
+        deps.put("servlet", Collections.emptySet());
+        deps.put("jaxrs", Collections.singleton("servlet"));
+        deps.put("cdi", Collections.emptySet());
+        deps.put("jpa", Collections.singleton("cdi"));
+        deps.put("jaxrs-server", new HashSet<>(Arrays.asList("jaxrs", "jpa")));
+        LayerInference.Result result = LayerInference.infer(evidence, Collections.singletonList("jaxrs-server"), deps,
+                Collections.singleton("jaxrs-server"));
+        // The resource located in the library keeps the jaxrs layer.
+        Assert.assertEquals(Collections.singletonList("jaxrs"), result.getProposedLayers());
+        Assert.assertEquals(new HashSet<>(Arrays.asList("jaxrs-server", "jpa", "cdi")), result.getRemovedLayers());
+    }
+
+    @Test
+    public void testScanDeployments() throws Exception {
+        Path war = dir.resolve("app.war");
+        Files.write(war, zip("WEB-INF/classes/org/app/Resource.class", classFile("org/app/Resource", "Ljavax/ws/rs/Path;")));
+        Path jar = dir.resolve("dao.jar");
+        Files.write(jar, zip("META-INF/persistence.xml", new byte[0],
+                "org/dao/Dao.class", classFile("org/dao/Dao", "Ljavax/persistence/Entity;")));
+        Map<String, String> evidence = LayerInference.scan(Arrays.asList(jar, war));
+        Assert.assertTrue(evidence.toString(), evidence.keySet().containsAll(Arrays.asList("servlet", "jaxrs", "jpa")));
+        Assert.assertEquals("app.war!/WEB-INF/classes/org/app/Resource.class", evidence.get("jaxrs"));
+        Assert.assertTrue(evidence.get("jpa"), evidence.get("jpa").startsWith("dao.jar!/"));
+    }
+
+    @Test
+    public void testInfer() throws Exception {
+        Map<String, Set<String>> deps = new HashMap<>();
+        deps.put("servlet", Collections.emptySet());
+        deps.put("jaxrs", Collections.singleton("servlet"));
+        deps.put("cdi", Collections.emptySet());
+        deps.put("jpa", Collections.singleton("cdi"));
+        deps.put("management", Collections.emptySet());
+        deps.put("microprofile-health", Collections.emptySet());
+        deps.put("jaxrs-server", new HashSet<>(Arrays.asList("jaxrs", "jpa", "cdi")));
+        deps.put("cloud-server", new HashSet<>(Arrays.asList("jaxrs-server", "microprofile-health")));
+        Set<String> aggregates = new HashSet<>(Arrays.asList("jaxrs-server", "cloud-server"));
+        Map<String, String> evidence = new HashMap<>();
+        evidence.put("servlet", "app.war");
+        evidence.put("jaxrs", "app.war!/Resource.class");
+        evidence.put("cdi", "app.war!/WEB-INF/beans.xml");
+        LayerInference.Result result = LayerInference.infer(evidence, Arrays.asList("cloud-server", "management"), deps, aggregates);
+        Assert.assertEquals(Arrays.asList("cdi", "jaxrs", "management"), result.getProposedLayers());
+        Assert.assertEquals(new HashSet<>(Arrays.asList("cloud-server", "jaxrs-server", "jpa", "microprofile-health")),
+                result.getRemovedLayers());
+        Assert.assertTrue(result.getAddedLayers().isEmpty());
+
+        // A used layer that is not configured is reported.
+        evidence.put("microprofile-health", "app.war!/Health.class");
+        result = LayerInference.infer(evidence, Arrays.asList("jaxrs", "management"), deps, aggregates);
+        Assert.assertEquals(Arrays.asList("jaxrs", "management", "cdi", "microprofile-health"), result.getProposedLayers());
+        Assert.assertEquals(new HashSet<>(Arrays.asList("cdi", "microprofile-health")), result.getAddedLayers());
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.common;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author jdenise
+ */
+public class ModulePrunerTestCase {
+
+    private Path dir;
+
+    @Before
+    public void before() throws Exception {
+        dir = Files.createTempDirectory("module-pruner");
+    }
+
+    @After
+    public void after() throws Exception {
+        Utils.deleteDir(dir);
+    }
+
+    @Test
+    public void testDeploymentDependencies() throws Exception {
+        Path war = dir.resolve("app.war");
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().putValue("Dependencies", "org.dep export, org.other:1.0 optional services");
+        try (OutputStream out = Files.newOutputStream(war); JarOutputStream jar = new JarOutputStream(out, manifest)) {
+            jar.putNextEntry(new ZipEntry("WEB-INF/jboss-deployment-structure.xml"));
+            jar.write(("<jboss-deployment-structure><deployment><dependencies><module name=\"org.structure\"/></dependencies>"
+                    + "<exclusions><module name=\"org.excluded\"/></exclusions></deployment></jboss-deployment-structure>").
+                    getBytes(StandardCharsets.UTF_8));
+            jar.closeEntry();
+        }
+        Assert.assertEquals(new HashSet<>(Arrays.asList("org.dep:main", "org.other:1.0", "org.structure:main")),
+                ModulePruner.getDeploymentDependencies(war));
+    }
+
+    @Test
+    public void testPrune() throws Exception {
+        Path jbossHome = dir.resolve("server");
+        FootprintAnalyzerTestCase.addModule(jbossHome, "org.jboss.as.standalone", 10, "org.base");
+        FootprintAnalyzerTestCase.addModule(jbossHome, "org.base", 100);
+        FootprintAnalyzerTestCase.addModule(jbossHome, "org.jaxrs", 1000, "org.shared");
+        FootprintAnalyzerTestCase.addModule(jbossHome, "org.shared", 500);
+        FootprintAnalyzerTestCase.addModule(jbossHome, "org.dep", 10);
+        FootprintAnalyzerTestCase.addModule(jbossHome, "javax.ws.rs.api", 10);
+        FootprintAnalyzerTestCase.addModule(jbossHome, "org.unused", 50, "org.unused.dep");
+        FootprintAnalyzerTestCase.addModule(jbossHome, "org.unused.dep", 50);
+        FootprintAnalyzerTestCase.addModule(jbossHome, "com.h2database.h2", 50, "javax.transaction.api");
+        FootprintAnalyzerTestCase.addModule(jbossHome, "javax.transaction.api", 10);
+        FootprintAnalyzerTestCase.addModule(jbossHome, "org.global", 10);
+        FootprintAnalyzerTestCase.addModule(jbossHome, "org.handler", 10);
+        Path config = jbossHome.resolve("standalone").resolve("configuration").resolve("standalone.xml");
+        Files.createDirectories(config.getParent());
+        Files.write(config, ("<server><extensions><extension module=\"org.jaxrs\"/></extensions>"
+                + "<drivers><driver name=\"h2\" module=\"com.h2database.h2\"/></drivers>"
+                + "<global-modules><module name=\"org.global\" slot=\"main\"/></global-modules>"
+                + "<custom-handler name=\"h\" class=\"org.Handler\" module = \"org.handler\"/>"
+                + "<driver name=\"other\" module=\"${driver.module}\"/></server>").getBytes(StandardCharsets.UTF_8));
+
+        ModulePruner.Result result = ModulePruner.prune(jbossHome, Arrays.asList("org.dep"), ModulePruner.DEFAULT_ALLOW_LIST);
+        Assert.assertEquals(new HashSet<>(Arrays.asList("org.unused:main", "org.unused.dep:main")), result.getRemovedModules());
+        Assert.assertTrue(result.getBytes() > 100);
+        Set<String> remaining = FootprintAnalyzer.scanModules(jbossHome).keySet();
+        Assert.assertEquals(new HashSet<>(Arrays.asList("org.jboss.as.standalone:main", "org.base:main", "org.jaxrs:main",
+                "org.shared:main", "org.dep:main", "javax.ws.rs.api:main", "com.h2database.h2:main", "javax.transaction.api:main",
+                "org.global:main", "org.handler:main")), remaining);
+        Assert.assertFalse(Files.exists(jbossHome.resolve("modules").resolve("system").resolve("layers").resolve("base").
+                resolve("org").resolve("unused")));
+    }
+
+    @Test
+    public void testLoggingDeploymentModules() throws Exception {
+        Path jbossHome = dir.resolve("server");
+        FootprintAnalyzerTestCase.addModule(jbossHome, "org.jboss.as.standalone", 10);
+        FootprintAnalyzerTestCase.addModule(jbossHome, "org.jboss.as.logging", 100, "org.jboss.logmanager");
+        FootprintAnalyzerTestCase.addModule(jbossHome, "org.jboss.logmanager", 10);
+        // Not dependencies of the logging extension, added to the deployments by the subsystem.
+        FootprintAnalyzerTestCase.addModule(jbossHome, "org.apache.commons.logging", 10);
+        FootprintAnalyzerTestCase.addModule(jbossHome, "org.apache.log4j", 10);
+        FootprintAnalyzerTestCase.addModule(jbossHome, "org.slf4j", 10);
+        FootprintAnalyzerTestCase.addModule(jbossHome, "org.jboss.logging.jul-to-slf4j-stub", 10);
+        FootprintAnalyzerTestCase.addModule(jbossHome, "org.unused", 10);
+        Path config = jbossHome.resolve("standalone").resolve("configuration").resolve("standalone.xml");
+        Files.createDirectories(config.getParent());
+        Files.write(config, "<server><extensions><extension module=\"org.jboss.as.logging\"/></extensions></server>".
+                getBytes(StandardCharsets.UTF_8));
+
+        ModulePruner.Result result = ModulePruner.prune(jbossHome, Collections.emptyList(), ModulePruner.DEFAULT_ALLOW_LIST);
+        Assert.assertEquals(Collections.singleton("org.unused:main"), result.getRemovedModules());
+        Assert.assertTrue(FootprintAnalyzer.scanModules(jbossHome).keySet().containsAll(Arrays.asList("org.apache.commons.logging:main",
+                "org.apache.log4j:main", "org.slf4j:main", "org.jboss.logging.jul-to-slf4j-stub:main")));
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.common;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author jdenise
+ */
+public class PropertiesParserTestCase {
+
+    private static final String CONTENT = "# comment\n"
+            + "! other comment \\\n"
+            + "\n"
+            + "   \t\n"
+            + "simple=value\n"
+            + "  leading.whitespace = value with trailing space \n"
+            + "colon:value\n"
+            + "space value\n"
+            + "mixed   :  = value\n"
+            + "no.value\n"
+            + "empty=\n"
+            + "escaped\\=key\\:with\\ separators=escaped\\tvalue\\n\n"
+            + "unicode=caf\\u00e9 \u00e9t\u00e9\n"
+            + "continuation=first \\\n"
+            + "      second \\\r\n"
+            + "\tthird\n"
+            + "windows=value\r\n"
+            + "old.mac=value\r"
+            + "double.backslash=C:\\\\tmp\\\\\n"
+            + "#not.a.property=value\n"
+            + "continued.into.comment=value\\\n"
+            + "# part of the value\n"
+            + "duplicate=first\n"
+            + "jakarta.transform.artifacts.suffix=-ee9\n"
+            + "duplicate=last\n"
+            + "at.eof=value\\";
+
+    private Path file;
+
+    @Before
+    public void before() throws Exception {
+        file = Files.createTempFile("properties-parser", ".properties");
+        Files.write(file, CONTENT.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @After
+    public void after() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testParse() throws Exception {
+        Properties expected = new Properties();
+        expected.load(new StringReader(CONTENT));
+        Map<String, String> parsed = new LinkedHashMap<>();
+        PropertiesParser.parse(file, StandardCharsets.UTF_8, PropertiesParser.Syntax.PROPERTIES, parsed::put);
+        Assert.assertEquals(expected.size(), parsed.size());
+        for (String key : expected.stringPropertyNames()) {
+            Assert.assertEquals(key, expected.getProperty(key), parsed.get(key));
+        }
+        Assert.assertEquals("value with trailing space ", parsed.get("leading.whitespace"));
+        Assert.assertEquals("first second third", parsed.get("continuation"));
+        Assert.assertEquals("last", parsed.get("duplicate"));
+    }
+
+    @Test
+    public void testReadProperties() throws Exception {
+        String content = "#Feature-pack artifact versions\n"
+                + "\n"
+                + "  org.wildfly.core:wildfly-cli::client=org.wildfly.core:wildfly-cli:15.0.0.Final:client:jar  \r\n"
+                + "org.jboss:jboss-vfs=org.jboss:jboss-vfs:3.2.15.Final::jar\r"
+                + "key with spaces = value=with=equals\n"
+                + "escaped\\u00e9=C:\\tmp\n"
+                + "empty=\n"
+                + "   # indented comment\n"
+                + "unicode=caf\u00e9";
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        Map<String, String> map = new HashMap<>();
+        Utils.readProperties(file, map);
+        Assert.assertEquals(readLines(content), map);
+        Assert.assertEquals("org.wildfly.core:wildfly-cli:15.0.0.Final:client:jar", map.get("org.wildfly.core:wildfly-cli::client"));
+        Assert.assertEquals("caf\u00e9", map.get("unicode"));
+        Assert.assertEquals("C:\\tmp", map.get("escaped\\u00e9"));
+        Assert.assertEquals("org.jboss:jboss-vfs:3.2.15.Final::jar", PropertiesParser.lookup(file, StandardCharsets.UTF_8,
+                PropertiesParser.Syntax.KEY_VALUE_LINES, "org.jboss:jboss-vfs"));
+
+        Files.write(file, "valid=value\ninvalid\n".getBytes(StandardCharsets.UTF_8));
+        try {
+            Utils.readProperties(file, map);
+            Assert.fail("Invalid line");
+        } catch (Exception ex) {
+            Assert.assertTrue(ex.getMessage(), ex.getMessage().contains("invalid"));
+        }
+    }
+
+    @Test
+    public void testLookup() throws Exception {
+        Assert.assertEquals("-ee9", PropertiesParser.lookup(file, StandardCharsets.UTF_8, PropertiesParser.Syntax.PROPERTIES, "jakarta.transform.artifacts.suffix"));
+        Assert.assertEquals("last", PropertiesParser.lookup(file, StandardCharsets.UTF_8, PropertiesParser.Syntax.PROPERTIES, "duplicate"));
+        Assert.assertEquals("escaped\tvalue\n", PropertiesParser.lookup(file, StandardCharsets.UTF_8, PropertiesParser.Syntax.PROPERTIES, "escaped=key:with separators"));
+        Assert.assertNull(PropertiesParser.lookup(file, StandardCharsets.UTF_8, PropertiesParser.Syntax.PROPERTIES, "not.a.property"));
+        Assert.assertEquals(Collections.singletonMap("colon", "value"),
+                PropertiesParser.lookup(file, StandardCharsets.UTF_8, PropertiesParser.Syntax.PROPERTIES, Collections.singleton("colon")));
+    }
+
+    @Test
+    public void testLargeFile() throws Exception {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            builder.append("org.group").append(i).append(":artifact").append(i).append('=').
+                    append("org.group").append(i).append(":artifact").append(i).append(":1.0.\u00e9").append(i).append("::jar\n");
+        }
+        Files.write(file, builder.toString().getBytes(StandardCharsets.UTF_8));
+        Map<String, String> parsed = new HashMap<>();
+        PropertiesParser.parse(file, StandardCharsets.UTF_8, PropertiesParser.Syntax.KEY_VALUE_LINES, parsed::put);
+        Assert.assertEquals(readLines(builder.toString()), parsed);
+
+        Properties expected = new Properties();
+        expected.load(new StringReader(builder.toString()));
+        parsed.clear();
+        PropertiesParser.parse(file, StandardCharsets.UTF_8, PropertiesParser.Syntax.PROPERTIES, parsed::put);
+        Assert.assertEquals(expected.size(), parsed.size());
+        for (String key : expected.stringPropertyNames()) {
+            Assert.assertEquals(key, expected.getProperty(key), parsed.get(key));
+        }
+        // Not locked once parsed, the file can be replaced (the feature-pack is provisioned again).
+        Files.delete(file);
+    }
+
+    // The key=value lines format, as read by the feature-pack tooling.
+    private static Map<String, String> readLines(String content) throws Exception {
+        Map<String, String> map = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(new StringReader(content))) {
+            String line = reader.readLine();
+            while (line != null) {
+                line = line.trim();
+                if (!line.isEmpty() && line.charAt(0) != '#') {
+                    final int i = line.indexOf('=');
+                    map.put(line.substring(0, i), line.substring(i + 1));
+                }
+                line = reader.readLine();
+            }
+        }
+        return map;
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.common;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author jdenise
+ */
+public class ServerArchiveTestCase {
+
+    private Path dir;
+    private Path home;
+    private byte[] large;
+
+    @Before
+    public void before() throws Exception {
+        dir = Files.createTempDirectory("server-archive");
+        home = dir.resolve("server");
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            builder.append("<property name=\"p").append(i).append("\"/>\n");
+        }
+        large = builder.toString().getBytes(StandardCharsets.UTF_8);
+        write("standalone/configuration/standalone.xml", large);
+        write("modules/system/layers/base/org/foo/main/module.xml", "<module/>".getBytes(StandardCharsets.UTF_8));
+        write("modules/system/layers/base/org/foo/main/foo.jar", large);
+        write("standalone/deployments/README.txt", new byte[0]);
+        Files.createDirectories(home.resolve("standalone/data/empty"));
+    }
+
+    @After
+    public void after() throws Exception {
+        Utils.deleteDir(dir);
+    }
+
+    private void write(String path, byte[] content) throws Exception {
+        Path file = home.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.write(file, content);
+    }
+
+    @Test
+    public void testLayouts() throws Exception {
+        for (ServerArchive.Layout layout : ServerArchive.Layout.values()) {
+            Path zip = dir.resolve(layout + ".zip");
+            List<ServerArchive.Entry> entries = ServerArchive.write(new TestPluginContext(), home, zip, layout, ZipWriter.DEFAULT_TIMESTAMP);
+            try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+                Assert.assertEquals(entries.size(), zipFile.size());
+                ZipEntry jar = zipFile.getEntry("modules/system/layers/base/org/foo/main/foo.jar");
+                ZipEntry xml = zipFile.getEntry("standalone/configuration/standalone.xml");
+                Assert.assertEquals(layout == ServerArchive.Layout.DEFLATED ? ZipEntry.DEFLATED : ZipEntry.STORED, jar.getMethod());
+                Assert.assertEquals(layout == ServerArchive.Layout.STORED ? ZipEntry.STORED : ZipEntry.DEFLATED, xml.getMethod());
+                Assert.assertNotNull(zipFile.getEntry("standalone/data/empty/"));
+            }
+            Path manifest = dir.resolve(layout + ".manifest");
+            ServerArchive.writeManifest(entries, manifest);
+            List<ServerArchive.Entry> read = ServerArchive.readManifest(manifest);
+            Assert.assertEquals(entries.size(), read.size());
+            Path target = dir.resolve(layout + "-extracted");
+            ServerArchive.extract(new TestPluginContext(), zip, read, target);
+            Assert.assertArrayEquals(large, Files.readAllBytes(target.resolve("standalone/configuration/standalone.xml")));
+            Assert.assertArrayEquals(large, Files.readAllBytes(target.resolve("modules/system/layers/base/org/foo/main/foo.jar")));
+            Assert.assertEquals(0, Files.size(target.resolve("standalone/deployments/README.txt")));
+            Assert.assertTrue(Files.isDirectory(target.resolve("standalone/data/empty")));
+        }
+    }
+
+    private void assertInvalidArchive(Path zip, List<ServerArchive.Entry> entries) throws Exception {
+        try {
+            ServerArchive.extract(new TestPluginContext(), zip, entries, dir.resolve("invalid-extracted"));
+            Assert.fail("Invalid archive extracted");
+        } catch (ZipException ex) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void testInvalidArchive() throws Exception {
+        for (ServerArchive.Layout layout : ServerArchive.Layout.values()) {
+            Path zip = dir.resolve(layout + ".zip");
+            List<ServerArchive.Entry> entries = ServerArchive.write(new TestPluginContext(), home, zip, layout, ZipWriter.DEFAULT_TIMESTAMP);
+            ServerArchive.Entry jar = null;
+            List<ServerArchive.Entry> invalidCrc = new ArrayList<>();
+            for (ServerArchive.Entry entry : entries) {
+                if (entry.getPath().endsWith("foo.jar")) {
+                    jar = entry;
+                    entry = new ServerArchive.Entry(entry.getPath(), entry.getMethod(), entry.getOffset(),
+                            entry.getCompressedSize(), entry.getSize(), entry.getCrc() ^ 1);
+                }
+                invalidCrc.add(entry);
+            }
+            assertInvalidArchive(zip, invalidCrc);
+
+            Path truncated = dir.resolve(layout + "-truncated.zip");
+            try (FileChannel in = FileChannel.open(zip); FileChannel out = FileChannel.open(truncated,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                in.transferTo(0, jar.getOffset() + 100, out);
+            }
+            assertInvalidArchive(truncated, entries);
+        }
+    }
+
+    @Test
+    public void testInvalidManifest() throws Exception {
+        Path manifest = dir.resolve("manifest");
+        Files.write(manifest, "foo".getBytes(StandardCharsets.UTF_8));
+        try {
+            ServerArchive.readManifest(manifest);
+            Assert.fail("Invalid manifest accepted");
+        } catch (IOException ex) {
+            // Expected.
+        }
+    }
+}
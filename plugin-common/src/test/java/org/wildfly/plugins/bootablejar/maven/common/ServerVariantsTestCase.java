@@ -0,0 +1,89 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.common;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author jdenise
+ */
+public class ServerVariantsTestCase {
+
+    private Path dir;
+
+    @Before
+    public void before() throws Exception {
+        dir = Files.createTempDirectory("server-variants");
+    }
+
+    @After
+    public void after() throws Exception {
+        Utils.deleteDir(dir);
+    }
+
+    private static void write(Path file, String content) throws Exception {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(Path file) throws Exception {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testClone() throws Exception {
+        Path server = dir.resolve("server");
+        Path module = server.resolve("modules").resolve("module.xml");
+        Path config = server.resolve("standalone").resolve("configuration").resolve("standalone.xml");
+        write(module, "module");
+        write(config, "config");
+        Path clone = dir.resolve("clone");
+        ServerVariants.cloneServer(server, clone);
+        Assert.assertEquals("module", read(clone.resolve("modules").resolve("module.xml")));
+        // The configuration is copied, it is updated in place by the server.
+        write(clone.resolve("standalone").resolve("configuration").resolve("standalone.xml"), "updated");
+        Assert.assertEquals("config", read(config));
+        // Replacing a linked file doesn't change the cloned server.
+        Path extra = dir.resolve("extra");
+        write(extra, "extra");
+        Files.copy(extra, clone.resolve("modules").resolve("module.xml"), StandardCopyOption.REPLACE_EXISTING);
+        Assert.assertEquals("module", read(module));
+    }
+
+    @Test
+    public void testVariant() {
+        ServerVariants.Variant variant = new ServerVariants.Variant("cloud",
+                Collections.singleton("microprofile-health"), null, Arrays.asList("extra"));
+        Assert.assertEquals("cloud", variant.getName());
+        Assert.assertTrue(variant.getExcludedLayers().isEmpty());
+        try {
+            variant.getExtraLayers().add("other");
+            Assert.fail("Variant should be immutable");
+        } catch (UnsupportedOperationException ex) {
+            // Expected.
+        }
+    }
+}
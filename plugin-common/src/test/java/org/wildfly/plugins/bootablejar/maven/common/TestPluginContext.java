@@ -0,0 +1,89 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.common;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * A plugin context without project, paths must be absolute.
+ *
+ * @author jdenise
+ */
+public class TestPluginContext implements PluginContext {
+
+    private final Path jbossHome;
+    private final BuildMetrics metrics = new BuildMetrics();
+    private final Log log = new SystemStreamLog();
+
+    public TestPluginContext() {
+        this(null);
+    }
+
+    public TestPluginContext(Path jbossHome) {
+        this.jbossHome = jbossHome;
+    }
+
+    @Override
+    public MavenProject getProject() {
+        return null;
+    }
+
+    @Override
+    public Path getJBossHome() {
+        return jbossHome;
+    }
+
+    @Override
+    public boolean isContextRoot() {
+        return false;
+    }
+
+    @Override
+    public boolean isHollow() {
+        return false;
+    }
+
+    @Override
+    public Log getLog() {
+        return log;
+    }
+
+    @Override
+    public boolean isDisplayCliScriptsOutputEnabled() {
+        return false;
+    }
+
+    @Override
+    public List<String> getExtraServerContentDirs() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public BuildMetrics getInstrumentation() {
+        return metrics;
+    }
+
+    @Override
+    public long getArchiveTimestamp() {
+        return ZipWriter.DEFAULT_TIMESTAMP;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author jdenise
+ */
+public class ZipWriterTestCase {
+
+    private Path dir;
+
+    @Before
+    public void before() throws Exception {
+        dir = Files.createTempDirectory("zip-writer");
+    }
+
+    @After
+    public void after() throws Exception {
+        Utils.deleteDir(dir);
+    }
+
+    private List<ZipWriter.Source> createSources() throws Exception {
+        List<ZipWriter.Source> sources = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            text.append("line ").append(i).append('\n');
+            Path file = dir.resolve("file" + i + ".txt");
+            Files.write(file, text.toString().getBytes(StandardCharsets.UTF_8));
+            sources.add(new ZipWriter.Source("files/file" + i + ".txt", file, false));
+        }
+        ByteArrayOutputStream jar = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(jar)) {
+            out.putNextEntry(new ZipEntry("Foo.class"));
+            out.write(text.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        Path jarFile = dir.resolve("foo.jar");
+        Files.write(jarFile, jar.toByteArray());
+        sources.add(new ZipWriter.Source("modules/foo.jar", jarFile, false));
+        byte[] random = new byte[100000];
+        new Random(1).nextBytes(random);
+        Path randomFile = dir.resolve("random.bin");
+        Files.write(randomFile, random);
+        sources.add(new ZipWriter.Source("random.bin", randomFile, false));
+        Path empty = dir.resolve("empty.txt");
+        Files.write(empty, new byte[0]);
+        sources.add(new ZipWriter.Source("empty.txt", empty, false));
+        sources.add(new ZipWriter.Source("files/", null, true));
+        sources.add(new ZipWriter.Source("modules/", null, true));
+        return sources;
+    }
+
+    @Test
+    public void testReproducible() throws Exception {
+        List<ZipWriter.Source> sources = createSources();
+        Path zip1 = dir.resolve("1.zip");
+        new ZipWriter(new TestPluginContext(), ZipWriter.DEFAULT_TIMESTAMP).write(zip1, sources);
+        for (Path file : Files.newDirectoryStream(dir, "*.txt")) {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 100000));
+        }
+        Collections.reverse(sources);
+        Path zip2 = dir.resolve("2.zip");
+        List<ZipWriter.Entry> entries = new ZipWriter(new TestPluginContext(), ZipWriter.DEFAULT_TIMESTAMP).write(zip2, sources);
+        Assert.assertArrayEquals(Files.readAllBytes(zip1), Files.readAllBytes(zip2));
+        for (int i = 1; i < entries.size(); i++) {
+            Assert.assertTrue(entries.get(i - 1).getName().compareTo(entries.get(i).getName()) < 0);
+        }
+    }
+
+    @Test
+    public void testContent() throws Exception {
+        List<ZipWriter.Source> sources = createSources();
+        Path zip = dir.resolve("content.zip");
+        new ZipWriter(new TestPluginContext(), ZipWriter.DEFAULT_TIMESTAMP).write(zip, sources);
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            Assert.assertEquals(sources.size(), zipFile.size());
+            for (ZipWriter.Source source : sources) {
+                ZipEntry entry = zipFile.getEntry(source.getName());
+                Assert.assertNotNull(source.getName(), entry);
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                Path file = dir.resolve(source.getName().substring(source.getName().lastIndexOf('/') + 1));
+                try (InputStream in = zipFile.getInputStream(entry)) {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    byte[] buffer = new byte[8192];
+                    int read;
+                    while ((read = in.read(buffer)) >= 0) {
+                        out.write(buffer, 0, read);
+                    }
+                    Assert.assertArrayEquals(source.getName(), Files.readAllBytes(file), out.toByteArray());
+                }
+            }
+            Assert.assertEquals(ZipEntry.DEFLATED, zipFile.getEntry("files/file999.txt").getMethod());
+            Assert.assertEquals(ZipEntry.STORED, zipFile.getEntry("modules/foo.jar").getMethod());
+            Assert.assertEquals(ZipEntry.STORED, zipFile.getEntry("random.bin").getMethod());
+            Assert.assertEquals(ZipEntry.STORED, zipFile.getEntry("empty.txt").getMethod());
+        }
+    }
+
+    @Test
+    public void testZip64() throws Exception {
+        List<ZipWriter.Source> sources = new ArrayList<>();
+        for (int i = 0; i < 70000; i++) {
+            sources.add(new ZipWriter.Source("dir" + i + "/", null, true));
+        }
+        Path zip = dir.resolve("zip64.zip");
+        new ZipWriter(new TestPluginContext(), ZipWriter.DEFAULT_TIMESTAMP).write(zip, sources);
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            Assert.assertEquals(70000, zipFile.size());
+            Assert.assertNotNull(zipFile.getEntry("dir69999/"));
+        }
+    }
+
+    @Test
+    public void testDuplicate() throws Exception {
+        try {
+            new ZipWriter(new TestPluginContext(), ZipWriter.DEFAULT_TIMESTAMP).write(dir.resolve("duplicate.zip"),
+                    Arrays.asList(new ZipWriter.Source("a/", null, true), new ZipWriter.Source("a/", null, true)));
+            Assert.fail("Duplicate entries accepted");
+        } catch (IllegalArgumentException ex) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void testTimestamp() throws Exception {
+        Assert.assertEquals(ZipWriter.DEFAULT_TIMESTAMP, ZipWriter.parseTimestamp(null));
+        Assert.assertEquals(ZipWriter.DEFAULT_TIMESTAMP, ZipWriter.parseTimestamp("a"));
+        Assert.assertEquals(ZipWriter.DEFAULT_TIMESTAMP, ZipWriter.parseTimestamp("not a date"));
+        Assert.assertEquals(1262304000000L, ZipWriter.parseTimestamp("1262304000"));
+        Assert.assertEquals(1262304000000L, ZipWriter.parseTimestamp("2010-01-01T00:00:00Z"));
+        Assert.assertEquals(1262304000000L, ZipWriter.parseTimestamp("2010-01-01T01:00:00+01:00"));
+        // 2010-01-01 00:00:00
+        Assert.assertEquals((30 << 25) | (1 << 21) | (1 << 16), ZipWriter.toDosTime(ZipWriter.DEFAULT_TIMESTAMP));
+        Assert.assertEquals((1 << 21) | (1 << 16), ZipWriter.toDosTime(0));
+    }
+}
@@ -19,6 +19,7 @@ package org.wildfly.plugins.bootablejar.maven.test;
 import java.io.File;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
@@ -29,8 +30,10 @@ import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import org.apache.http.HttpEntity;
 
@@ -81,6 +84,8 @@ public abstract class AbstractBootableJarMojoTestCase extends AbstractConfigured
     public static final String TEST_FILE = "test-" + Constants.BOOTABLE_SUFFIX + ".jar";
     public static final String HEALTH = System.getProperty("test.health");
     public static final String SERVER_DEFAULT_DIR_NAME ="server";
+    private static final ServerPool SERVER_POOL = new ServerPool(TestEnvironment.getServerPoolSize(), TestEnvironment.getServerPoolPortOffset());
+    private static final ProvisionedServerCache PROVISIONING_CACHE = new ProvisionedServerCache(TestEnvironment.getProvisioningCacheDir());
     private final String projectFile;
     private final boolean copyWar;
     private final String provisioning;
@@ -156,6 +161,40 @@ public abstract class AbstractBootableJarMojoTestCase extends AbstractConfigured
         return (T) lookupConfiguredMojo(pomFile.toFile(), goal);
     }
 
+    /**
+     * Execute a Mojo that builds a bootable jar or a server, the outputs are
+     * only built once per suite for a given project content. Later test cases
+     * get the cached outputs.
+     *
+     * @param mojo The Mojo to execute.
+     * @param discriminator Value that identifies the Mojo configuration set
+     * programmatically, null if the Mojo is only configured from the pom.xml file.
+     * @param outputs The outputs (e.g. {@code TEST_FILE} or
+     * {@code SERVER_DEFAULT_DIR_NAME}) names, relative to the target directory.
+     * @throws Exception
+     */
+    public void executeOnce(Mojo mojo, String discriminator, String... outputs) throws Exception {
+        if (!TestEnvironment.isProvisioningCacheEnabled()) {
+            mojo.execute();
+            return;
+        }
+        Path target = testDir.resolve("target");
+        Set<Path> excluded = new HashSet<>();
+        for (String output : outputs) {
+            excluded.add(Paths.get("target", output));
+        }
+        excluded.add(Paths.get("target", "bootable-jar-build-artifacts"));
+        String key = ProvisionedServerCache.computeKey(testDir, excluded, mojo.getClass().getName(),
+                discriminator == null ? "" : discriminator, System.getProperty(WILDFLY_FPL, ""),
+                System.getProperty(PLUGIN_VERSION, ""), ProvisionedServerCache.getCodeHash(mojo.getClass(), Utils.class));
+        if (PROVISIONING_CACHE.contains(key, outputs)) {
+            PROVISIONING_CACHE.materialize(key, target, outputs);
+        } else {
+            mojo.execute();
+            PROVISIONING_CACHE.store(key, target, outputs);
+        }
+    }
+
     @Override
     public Mojo lookupConfiguredMojo(File pom, String goal) throws Exception {
         patchPomFile(pom);
@@ -371,6 +410,10 @@ public abstract class AbstractBootableJarMojoTestCase extends AbstractConfigured
         checkURL(true, dir, fileName, url, start, args);
     }
     public void checkURL(boolean isJar, Path dir, String fileName, String url, boolean start, String... args) throws Exception {
+        if (isJar && start && SERVER_POOL.isEnabled()) {
+            checkPooledURL(dir, fileName, url, args);
+            return;
+        }
         Process process = null;
         int timeout = TestEnvironment.getTimeout() * 1000;
         long sleep = 1000;
@@ -416,6 +459,60 @@ public abstract class AbstractBootableJarMojoTestCase extends AbstractConfigured
         }
     }
 
+    /**
+     * Check an URL against a pooled server. The server is kept running and
+     * reused by the next checks done on a jar with the same content and the
+     * same arguments, including the jars built by other tests.
+     */
+    private void checkPooledURL(Path dir, String fileName, String url, String... args) throws Exception {
+        Path jar = dir.resolve("target").resolve(fileName == null ? TEST_FILE : fileName);
+        String key = ServerPool.computeKey(jar, args);
+        ServerPool.PooledServer server = SERVER_POOL.acquire(key, (portOffsetArg) -> {
+            List<String> cmd = new ArrayList<>();
+            cmd.add(getJavaCommand());
+            cmd.addAll(getJvmArgs());
+            cmd.add(portOffsetArg);
+            cmd.add("-jar");
+            cmd.add(jar.toAbsolutePath().toString());
+            cmd.addAll(Arrays.asList(args));
+            return createProcess(cmd);
+        });
+        boolean success = false;
+        try {
+            if (url == null) {
+                // Checking for the server state is enough, done when acquiring the server.
+                success = true;
+            } else {
+                String pooledUrl = offsetURL(url, server.getPortOffset());
+                int timeout = TestEnvironment.getTimeout() * 1000;
+                long sleep = 1000;
+                while (timeout > 0) {
+                    if (checkURL(pooledUrl)) {
+                        System.out.println("Successfully connected to " + pooledUrl);
+                        success = true;
+                        break;
+                    }
+                    Thread.sleep(sleep);
+                    timeout -= sleep;
+                }
+            }
+        } finally {
+            if (success) {
+                SERVER_POOL.release(server);
+            } else {
+                SERVER_POOL.discard(server);
+            }
+        }
+        if (!success) {
+            throw new Exception("Unable to interact with deployed application");
+        }
+    }
+
+    private static String offsetURL(String url, int portOffset) throws Exception {
+        URL u = new URL(url);
+        return new URL(u.getProtocol(), u.getHost(), u.getPort() + portOffset, u.getFile()).toString();
+    }
+
     public String getContent(String url) throws Exception {
         int timeout = TestEnvironment.getTimeout() * 1000;
         long sleep = 1000;
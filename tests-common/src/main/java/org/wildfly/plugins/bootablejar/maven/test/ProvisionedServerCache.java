@@ -0,0 +1,341 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.wildfly.plugins.bootablejar.maven.common.Constants;
+import org.wildfly.plugins.bootablejar.maven.common.Utils;
+
+/**
+ * Suite level cache of provisioned servers and packaged bootable jars. An
+ * entry is keyed by the content of the test project directory (pom.xml,
+ * provisioning.xml, CLI scripts, deployment) and by the plugin code so that
+ * test cases sharing the same provisioning configuration only build the
+ * server once per suite.
+ *
+ * Cached files are materialized in the test project using hard links when
+ * possible. They are read-only, an in place write of a materialized file fails
+ * instead of corrupting the cache, only replacing it is possible. The
+ * {@code standalone} directory of a cached server is always copied, it is
+ * written by a started server and must not be shared.
+ *
+ * @author jdenise
+ */
+public class ProvisionedServerCache {
+
+    private static final byte[] SEPARATOR = {0};
+    private static final Map<Class<?>, String> CODE_HASHES = new HashMap<>();
+
+    private final Path cacheDir;
+
+    public ProvisionedServerCache(Path cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * Compute the cache key of a test project.
+     *
+     * @param projectDir The test project directory.
+     * @param excluded Relative paths (from the project directory) to ignore, typically the built outputs.
+     * @param discriminators Extra values that impact the build but are not part of the project files.
+     * @return The key.
+     * @throws IOException
+     */
+    public static String computeKey(Path projectDir, Set<Path> excluded, String... discriminators) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException(ex);
+        }
+        for (String d : discriminators) {
+            digest.update(d.getBytes(StandardCharsets.UTF_8));
+            digest.update(SEPARATOR);
+        }
+        digestFiles(digest, projectDir, excluded);
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Compute the hash of the code of a set of classes: the content of the
+     * jars or class directories they are loaded from. Part of the cache key,
+     * a rebuilt plugin never reuses the servers built by a previous plugin.
+     *
+     * @param classes The classes.
+     * @return The hash.
+     * @throws IOException
+     */
+    public static synchronized String getCodeHash(Class<?>... classes) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException(ex);
+        }
+        for (Class<?> clazz : classes) {
+            String hash = CODE_HASHES.get(clazz);
+            if (hash == null) {
+                MessageDigest classDigest;
+                try {
+                    classDigest = MessageDigest.getInstance("SHA-1");
+                } catch (NoSuchAlgorithmException ex) {
+                    throw new IOException(ex);
+                }
+                Path location;
+                try {
+                    location = Paths.get(clazz.getProtectionDomain().getCodeSource().getLocation().toURI());
+                } catch (URISyntaxException | NullPointerException | SecurityException ex) {
+                    throw new IOException("Can't locate the code of " + clazz.getName(), ex);
+                }
+                if (Files.isDirectory(location)) {
+                    digestFiles(classDigest, location, Collections.emptySet());
+                } else {
+                    digestFile(classDigest, location);
+                }
+                hash = toHex(classDigest.digest());
+                CODE_HASHES.put(clazz, hash);
+            }
+            digest.update(hash.getBytes(StandardCharsets.UTF_8));
+            digest.update(SEPARATOR);
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Compute the hash of the content of a file.
+     *
+     * @param file The file.
+     * @return The hash.
+     * @throws IOException
+     */
+    public static String computeHash(Path file) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException(ex);
+        }
+        digestFile(digest, file);
+        return toHex(digest.digest());
+    }
+
+    private static void digestFiles(MessageDigest digest, Path root, Set<Path> excluded) throws IOException {
+        List<Path> files = new ArrayList<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                return excluded.contains(root.relativize(dir)) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (!excluded.contains(root.relativize(file))) {
+                    files.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        // Make the key independent of the file system iteration order.
+        Collections.sort(files);
+        for (Path file : files) {
+            digest.update(root.relativize(file).toString().replace('\\', '/').getBytes(StandardCharsets.UTF_8));
+            digest.update(SEPARATOR);
+            digestFile(digest, file);
+            digest.update(SEPARATOR);
+        }
+    }
+
+    private static void digestFile(MessageDigest digest, Path file) throws IOException {
+        byte[] buffer = new byte[8192];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder();
+        for (byte b : bytes) {
+            builder.append(String.format("%02x", b));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Check that all the outputs of a build are cached.
+     *
+     * @param key The cache key.
+     * @param outputs The outputs names.
+     * @return true if all the outputs are present in the cache.
+     */
+    public boolean contains(String key, String... outputs) {
+        Path entry = cacheDir.resolve(key);
+        for (String output : outputs) {
+            if (Files.notExists(entry.resolve(output))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Store the outputs of a build. The entry is first copied in a temporary
+     * directory then atomically moved, an entry concurrently stored by another
+     * test is kept.
+     *
+     * @param key The cache key.
+     * @param sourceDir The directory that contains the outputs.
+     * @param outputs The outputs names.
+     * @throws IOException
+     */
+    public void store(String key, Path sourceDir, String... outputs) throws IOException {
+        Files.createDirectories(cacheDir);
+        Path entry = cacheDir.resolve(key);
+        if (contains(key, outputs)) {
+            return;
+        }
+        Path tmp = Files.createTempDirectory(cacheDir, key + "-tmp");
+        try {
+            for (String output : outputs) {
+                copy(sourceDir.resolve(output), tmp.resolve(output));
+                markReadOnly(tmp.resolve(output));
+            }
+            try {
+                Files.move(tmp, entry, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException | DirectoryNotEmptyException ex) {
+                // Stored concurrently.
+            }
+        } finally {
+            Utils.deleteDir(tmp);
+        }
+    }
+
+    /**
+     * Materialize cached outputs in a target directory.
+     *
+     * @param key The cache key.
+     * @param targetDir The directory in which outputs are created.
+     * @param outputs The outputs names.
+     * @throws IOException
+     */
+    public void materialize(String key, Path targetDir, String... outputs) throws IOException {
+        Path entry = cacheDir.resolve(key);
+        for (String output : outputs) {
+            Path target = targetDir.resolve(output);
+            Utils.deleteDir(target);
+            link(entry.resolve(output), target);
+        }
+    }
+
+    private static void copy(Path source, Path target) throws IOException {
+        if (Files.isDirectory(source)) {
+            Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    Files.createDirectories(target.resolve(source.relativize(dir).toString()));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Files.copy(file, target.resolve(source.relativize(file).toString()), StandardCopyOption.COPY_ATTRIBUTES);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } else {
+            Files.createDirectories(target.getParent());
+            Files.copy(source, target, StandardCopyOption.COPY_ATTRIBUTES);
+        }
+    }
+
+    private static void markReadOnly(Path output) throws IOException {
+        Path mutable = output.resolve(Constants.STANDALONE);
+        Files.walkFileTree(output, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                return dir.equals(mutable) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (!file.toFile().setWritable(false, false)) {
+                    throw new IOException("Can't make cached file " + file + " read-only");
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static void link(Path source, Path target) throws IOException {
+        if (Files.isDirectory(source)) {
+            Path mutable = source.resolve(Constants.STANDALONE);
+            Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    Path targetDir = target.resolve(source.relativize(dir).toString());
+                    if (dir.equals(mutable)) {
+                        copy(dir, targetDir);
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    Files.createDirectories(targetDir);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    linkFile(file, target.resolve(source.relativize(file).toString()));
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } else {
+            Files.createDirectories(target.getParent());
+            linkFile(source, target);
+        }
+    }
+
+    private static void linkFile(Path source, Path target) throws IOException {
+        try {
+            Files.createLink(target, source);
+        } catch (IOException | UnsupportedOperationException ex) {
+            // Cache and test directories on different file systems, the copy can be written.
+            Files.copy(source, target, StandardCopyOption.COPY_ATTRIBUTES);
+            target.toFile().setWritable(true);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2021 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.plugins.bootablejar.maven.test;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import org.jboss.as.controller.client.ModelControllerClient;
+import org.wildfly.core.launcher.ProcessHelper;
+import org.wildfly.plugin.core.ServerHelper;
+
+/**
+ * A bounded pool of started bootable jar servers, keyed by the jar content and
+ * the server arguments. Each pooled server is started with its own port offset so
+ * that idle servers can be kept running next to each other. Servers are
+ * health checked when handed out again and the least recently used idle
+ * server is stopped when the pool is full.
+ *
+ * @author jdenise
+ */
+public class ServerPool {
+
+    public static final String PORT_OFFSET_PROPERTY = "jboss.socket.binding.port-offset";
+
+    /**
+     * A started server, owned by a test until released to the pool.
+     */
+    public static class PooledServer {
+
+        private final String key;
+        private final Process process;
+        private final int slot;
+        private final int portOffset;
+
+        private PooledServer(String key, Process process, int slot, int portOffset) {
+            this.key = key;
+            this.process = process;
+            this.slot = slot;
+            this.portOffset = portOffset;
+        }
+
+        public Process getProcess() {
+            return process;
+        }
+
+        public int getPortOffset() {
+            return portOffset;
+        }
+    }
+
+    /**
+     * Creates the server process for a given port offset.
+     */
+    public interface ServerStarter {
+
+        Process start(String portOffsetArg) throws Exception;
+    }
+
+    private final int maxSize;
+    private final int portOffsetIncrement;
+    private final TreeSet<Integer> freeSlots = new TreeSet<>();
+    // Access ordered, the first entry is the least recently used idle server.
+    private final LinkedHashMap<String, PooledServer> idle = new LinkedHashMap<>(16, 0.75f, true);
+
+    public ServerPool(int maxSize, int portOffsetIncrement) {
+        this.maxSize = maxSize;
+        this.portOffsetIncrement = portOffsetIncrement;
+        for (int i = 0; i < maxSize; i++) {
+            freeSlots.add(i);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * Compute the key of a server. The key is the hash of the jar content, a
+     * server is reused by the tests that build the same jar in their own
+     * directory, a jar with another content never reuses a server started
+     * from a previous build.
+     *
+     * @param jar The bootable jar.
+     * @param args The server arguments.
+     * @return The key.
+     * @throws Exception
+     */
+    public static String computeKey(Path jar, String... args) throws Exception {
+        StringBuilder builder = new StringBuilder();
+        builder.append(ProvisionedServerCache.computeHash(jar));
+        for (String arg : args) {
+            builder.append('|').append(arg);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Get a running server for the key, starting a new one if no healthy
+     * idle server exists.
+     *
+     * @param key The server key.
+     * @param starter Used to start a new server.
+     * @return The server.
+     * @throws Exception
+     */
+    public synchronized PooledServer acquire(String key, ServerStarter starter) throws Exception {
+        PooledServer server = idle.remove(key);
+        if (server != null) {
+            if (isHealthy(server)) {
+                return server;
+            }
+            destroy(server);
+        }
+        if (freeSlots.isEmpty()) {
+            Iterator<PooledServer> it = idle.values().iterator();
+            if (!it.hasNext()) {
+                throw new IllegalStateException("All the " + maxSize + " pooled servers are in use");
+            }
+            PooledServer eldest = it.next();
+            it.remove();
+            destroy(eldest);
+        }
+        int slot = freeSlots.pollFirst();
+        int offset = (slot + 1) * portOffsetIncrement;
+        Process process;
+        try {
+            process = starter.start("-D" + PORT_OFFSET_PROPERTY + "=" + offset);
+        } catch (Exception ex) {
+            freeSlots.add(slot);
+            throw ex;
+        }
+        server = new PooledServer(key, process, slot, offset);
+        try (ModelControllerClient client = createClient(server)) {
+            ServerHelper.waitForStandalone(process, client, TestEnvironment.getTimeout());
+        } catch (Exception ex) {
+            try {
+                destroy(server);
+            } catch (IllegalStateException destroyEx) {
+                ex.addSuppressed(destroyEx);
+            }
+            throw ex;
+        }
+        return server;
+    }
+
+    /**
+     * Give a server back to the pool, a server that is not running anymore is
+     * discarded.
+     *
+     * @param server The server.
+     */
+    public synchronized void release(PooledServer server) {
+        if (server == null) {
+            return;
+        }
+        if (!server.process.isAlive()) {
+            destroy(server);
+            return;
+        }
+        PooledServer previous = idle.put(server.key, server);
+        if (previous != null && previous != server) {
+            destroy(previous);
+        }
+    }
+
+    /**
+     * Stop a server and free its slot, to be called when a test leaves the
+     * server in an unknown state.
+     *
+     * @param server The server.
+     */
+    public synchronized void discard(PooledServer server) {
+        if (server != null) {
+            destroy(server);
+        }
+    }
+
+    public synchronized void close() {
+        List<PooledServer> servers = new ArrayList<>(idle.values());
+        idle.clear();
+        IllegalStateException failure = null;
+        for (PooledServer server : servers) {
+            try {
+                destroy(server);
+            } catch (IllegalStateException ex) {
+                if (failure == null) {
+                    failure = ex;
+                } else {
+                    failure.addSuppressed(ex);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private boolean isHealthy(PooledServer server) {
+        if (!server.process.isAlive()) {
+            return false;
+        }
+        try (ModelControllerClient client = createClient(server)) {
+            return ServerHelper.isStandaloneRunning(client);
+        } catch (Exception ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Stop a server and free its slot.
+     *
+     * @throws IllegalStateException if the server doesn't stop once shut down.
+     */
+    private void destroy(PooledServer server) {
+        boolean stopped = true;
+        try {
+            try (ModelControllerClient client = createClient(server)) {
+                if (ServerHelper.isStandaloneRunning(client)) {
+                    ServerHelper.shutdownStandalone(client, TestEnvironment.getTimeout());
+                    stopped = server.process.waitFor(TestEnvironment.getTimeout(), TimeUnit.SECONDS);
+                }
+            }
+        } catch (Exception ex) {
+            // Will be destroyed.
+        } finally {
+            try {
+                ProcessHelper.destroyProcess(server.process);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            freeSlots.add(server.slot);
+        }
+        if (!stopped) {
+            throw new IllegalStateException("The process has failed to shutdown");
+        }
+    }
+
+    private static ModelControllerClient createClient(PooledServer server) throws Exception {
+        return ModelControllerClient.Factory.create(TestEnvironment.getHost(),
+                TestEnvironment.getManagementPort() + server.portOffset);
+    }
+}
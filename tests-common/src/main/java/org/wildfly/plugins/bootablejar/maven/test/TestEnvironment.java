@@ -32,6 +32,10 @@ public class TestEnvironment {
     private static final int HTTP_PORT = getProperty("ts.http.port", 8080);
     private static final int MGMT_PORT = getProperty("ts.mgmt.port", 9990);
     private static final String TMP_DIR = System.getProperty("java.io.tmpdir", "target");
+    private static final boolean PROVISIONING_CACHE = Boolean.parseBoolean(System.getProperty("ts.provisioning.cache", "true"));
+    private static final String PROVISIONING_CACHE_DIR = System.getProperty("ts.provisioning.cache.dir");
+    private static final int SERVER_POOL_SIZE = getProperty("ts.server.pool.size", 0);
+    private static final int SERVER_POOL_PORT_OFFSET = getProperty("ts.server.pool.port.offset", 100);
     private static final boolean IS_WINDOWS;
 
     static {
@@ -96,6 +100,55 @@ public class TestEnvironment {
         return IS_WINDOWS;
     }
 
+    /**
+     * Checks if provisioned servers and bootable jars can be shared between test cases.
+     * <p>
+     * The default is {@code true} and can be overridden via the {@code ts.provisioning.cache} system property.
+     * </p>
+     *
+     * @return {@code true} if the provisioning cache is enabled, otherwise {@code false}
+     */
+    public static boolean isProvisioningCacheEnabled() {
+        return PROVISIONING_CACHE;
+    }
+
+    /**
+     * Gets the directory in which provisioned servers and bootable jars are cached.
+     * <p>
+     * The default is a {@code wildfly-jar-provisioning-cache} directory located in the {@code java.io.tmpdir}
+     * directory and can be overridden via the {@code ts.provisioning.cache.dir} system property.
+     * </p>
+     *
+     * @return the cache directory
+     */
+    public static Path getProvisioningCacheDir() {
+        return PROVISIONING_CACHE_DIR == null ? createTempPath("wildfly-jar-provisioning-cache") : Paths.get(PROVISIONING_CACHE_DIR);
+    }
+
+    /**
+     * Gets the maximum number of started bootable jars kept for reuse by read-only checks.
+     * <p>
+     * The default is 0, disabling the pool, and can be overridden via the {@code ts.server.pool.size} system property.
+     * </p>
+     *
+     * @return the pool size
+     */
+    public static int getServerPoolSize() {
+        return SERVER_POOL_SIZE;
+    }
+
+    /**
+     * Gets the port offset increment between two pooled servers.
+     * <p>
+     * The default is 100 and can be overridden via the {@code ts.server.pool.port.offset} system property.
+     * </p>
+     *
+     * @return the port offset increment
+     */
+    public static int getServerPoolPortOffset() {
+        return SERVER_POOL_PORT_OFFSET;
+    }
+
     /**
      * Creates a temporary path based on the {@code java.io.tmpdir} system property.
      *